@@ -1,10 +1,30 @@
 package com.example.counter.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
+/**
+ * Scheduler for the {@code @Scheduled} jobs. Spring's default has a single
+ * thread, so a slow backup write would delay every other job; this one has
+ * a small pool and, on shutdown, lets running jobs finish before the
+ * services flush their last state.
+ */
 @Configuration
 @EnableScheduling
 public class SchedulingConfig {
-}
 
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduler.pool.size:3}") int poolSize,
+            @Value("${scheduler.shutdown.wait.s:30}") int shutdownWaitSeconds) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, poolSize));
+        scheduler.setThreadNamePrefix("scheduled-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(Math.max(0, shutdownWaitSeconds));
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
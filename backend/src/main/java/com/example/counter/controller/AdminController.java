@@ -41,10 +41,14 @@ public class AdminController {
     }
 
     @GetMapping("/tables")
-    public ResponseEntity<?> listTables(@RequestHeader(value = "X-Admin-Secret", required = false) String secret) {
+    public ResponseEntity<?> listTables(@RequestHeader(value = "X-Admin-Secret", required = false) String secret,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
         if (!isAdmin(secret))
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        return ResponseEntity.ok(Map.of(
+        String etag = ETagSupport.etag("tables", tablesService.getVersion());
+        if (ETagSupport.matches(ifNoneMatch, etag))
+            return ETagSupport.notModified(etag);
+        return ETagSupport.ok(etag, Map.of(
                 "register", tablesService.listRegister(),
                 "freegame", tablesService.listFreeGame(),
                 "qrFlags", buildQrFlags()));
@@ -431,8 +435,8 @@ public class AdminController {
             for (int i = 0; i < list.size(); i++) {
                 var pi = list.get(i);
                 heroDefeats = 0;
-                if (totales != null && totales.defeatedHeroes != null && pi != null && pi.character() != null) {
-                    heroDefeats = totales.defeatedHeroes.getOrDefault(pi.character(), 0);
+                if (totales != null && pi != null && pi.character() != null) {
+                    heroDefeats = totales.heroDefeats(pi.character());
                 }
                 Row row = sheet.createRow(rowNum++);
                 row.createCell(0).setCellValue(nullToEmpty(t.id()));
@@ -491,8 +495,8 @@ public class AdminController {
 
             // Build defeated heroes string
             String defeatedHeroesStr = "";
-            if (t != null && t.defeatedHeroes != null && !t.defeatedHeroes.isEmpty()) {
-                defeatedHeroesStr = t.defeatedHeroes.entrySet().stream()
+            if (t != null) {
+                defeatedHeroesStr = t.getDefeatedHeroes().entrySet().stream()
                         .map(e -> e.getKey() + " x" + e.getValue())
                         .reduce((a, b) -> a + ", " + b)
                         .orElse("");
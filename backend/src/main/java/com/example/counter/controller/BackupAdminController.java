@@ -1,7 +1,12 @@
 package com.example.counter.controller;
 
+import com.example.counter.service.scheduling.ScheduledJobs;
+import com.example.counter.service.snapshot.BackupIndex;
+import com.example.counter.service.snapshot.SnapshotReplicator;
 import com.example.counter.service.snapshot.SnapshotService;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -9,6 +14,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.nio.file.*;
@@ -16,6 +22,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/admin/backup")
@@ -23,11 +30,17 @@ import java.util.stream.Collectors;
 public class BackupAdminController {
 
     private final SnapshotService snapshotService;
+    private final SnapshotReplicator replicator;
+    private final ScheduledJobs jobs;
     private final String adminSecret;
 
     public BackupAdminController(SnapshotService snapshotService,
+                                 SnapshotReplicator replicator,
+                                 ScheduledJobs jobs,
                                  @Value("${admin.secret:}") String adminSecret) {
         this.snapshotService = snapshotService;
+        this.replicator = replicator;
+        this.jobs = jobs;
         this.adminSecret = adminSecret;
     }
 
@@ -36,32 +49,13 @@ public class BackupAdminController {
     }
 
     @GetMapping("/list")
-    public ResponseEntity<?> list(@RequestHeader(value = "X-Admin-Secret", required = false) String secret) throws IOException {
+    public ResponseEntity<?> list(@RequestParam(value = "refresh", defaultValue = "false") boolean refresh,
+                                  @RequestHeader(value = "X-Admin-Secret", required = false) String secret) throws IOException {
         if (!isAdmin(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         Path dir = snapshotService.getBackupDirPath();
-        if (dir == null || !Files.exists(dir)) {
-            return ResponseEntity.ok(Map.of(
-                    "dir", dir == null ? "" : dir.toString(),
-                    "writable", snapshotService.isBackupDirWritable(),
-                    "files", List.of()
-            ));
-        }
-        List<Map<String, Object>> files;
-        try (var s = Files.list(dir)) {
-            files = s.filter(p -> {
-                        String n = p.getFileName().toString();
-                        return n.startsWith("app-") && n.endsWith(".json");
-                    })
-                    .sorted(Comparator.comparingLong(this::mtimeSafe).reversed())
-                    .map(p -> {
-                        Map<String, Object> m = new LinkedHashMap<>();
-                        m.put("name", p.getFileName().toString());
-                        m.put("size", Long.valueOf(sizeSafe(p)));
-                        m.put("modified", Long.valueOf(mtimeSafe(p)));
-                        return m;
-                    })
-                    .collect(Collectors.toList());
-        }
+        List<Map<String, Object>> files = snapshotService.listBackups(refresh).stream()
+                .map(this::describe)
+                .collect(Collectors.toList());
         return ResponseEntity.ok(Map.of(
             "dir", dir.toString(),
             "writable", snapshotService.isBackupDirWritable(),
@@ -69,48 +63,159 @@ public class BackupAdminController {
         ));
     }
 
+    @GetMapping("/replication")
+    public ResponseEntity<?> replication(@RequestHeader(value = "X-Admin-Secret", required = false) String secret) {
+        if (!isAdmin(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        return ResponseEntity.ok(replicator.getStatus());
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<?> jobs(@RequestHeader(value = "X-Admin-Secret", required = false) String secret) {
+        if (!isAdmin(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        return ResponseEntity.ok(jobs.getStats());
+    }
+
     @PostMapping("/snapshot-now")
     public ResponseEntity<?> snapshotNow(@RequestHeader(value = "X-Admin-Secret", required = false) String secret) {
         if (!isAdmin(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         try {
             Path p = snapshotService.createSnapshotNow();
+            BackupIndex.Entry entry = p == null ? null : snapshotService.findBackup(p.getFileName().toString());
             return ResponseEntity.ok(Map.of(
                     "ok", true,
                     "path", p == null ? "" : p.toString(),
                     "name", p == null ? "" : p.getFileName().toString(),
-                    "modified", p == null ? 0L : mtimeSafe(p),
-                    "size", p == null ? 0L : sizeSafe(p)
+                    "modified", entry == null ? 0L : entry.modified(),
+                    "size", entry == null ? 0L : entry.size()
             ));
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("ok", false, "error", e.getMessage()));
         }
     }
 
+    /**
+     * Streams the file from disk, so heap use does not grow with the backup
+     * size. Whole downloads are gzip-encoded on the fly when the client
+     * accepts it and the file is not compressed already; range requests go to
+     * {@link #downloadRange}.
+     */
     @GetMapping("/download/{name}")
-    public ResponseEntity<byte[]> download(@PathVariable("name") String name,
-                                           @RequestHeader(value = "X-Admin-Secret", required = false) String secret) throws IOException {
+    public ResponseEntity<StreamingResponseBody> download(@PathVariable("name") String name,
+                                      @RequestParam(value = "format", required = false) String format,
+                                      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                      @RequestHeader(value = "X-Admin-Secret", required = false) String secret) throws IOException {
         if (!isAdmin(secret)) return new ResponseEntity<>(HttpStatus.FORBIDDEN);
-        if (name == null || !name.startsWith("app-") || !name.endsWith(".json")) {
+        if (!SnapshotService.isSnapshotFileName(name)) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
-        Path dir = snapshotService.getBackupDirPath();
-        if (dir == null) return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        Path file = dir.resolve(name).normalize();
-        if (!file.startsWith(dir.normalize()) || !Files.exists(file)) {
+        Path file = downloadable(name);
+        if (file == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        boolean gzip = acceptsGzip(acceptEncoding);
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if ("json".equalsIgnoreCase(format) && !name.endsWith(SnapshotService.JSON_SUFFIX)) {
+            // Binary backups can still be exported as the classic JSON document
+            String jsonName = name.substring(0, name.lastIndexOf('.')) + SnapshotService.JSON_SUFFIX;
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setContentDisposition(ContentDisposition.attachment().filename(jsonName).build());
+            return streamed(headers, gzip, out -> snapshotService.exportAsJson(file, out));
+        }
+        fileHeaders(headers, name);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (gzip && !SnapshotService.isCompressedSnapshot(file)) {
+            return streamed(headers, true, out -> Files.copy(file, out));
+        }
+        headers.setContentLength(Files.size(file));
+        return streamed(headers, false, out -> Files.copy(file, out));
+    }
+
+    /** Range requests for the stored file, served by Spring from the file resource. */
+    @GetMapping(value = "/download/{name}", headers = HttpHeaders.RANGE, params = "format!=json")
+    public ResponseEntity<Resource> downloadRange(@PathVariable("name") String name,
+                                      @RequestHeader(value = "X-Admin-Secret", required = false) String secret) {
+        if (!isAdmin(secret)) return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        if (!SnapshotService.isSnapshotFileName(name)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Path file = downloadable(name);
+        if (file == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
-        byte[] data = Files.readAllBytes(file);
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+        fileHeaders(headers, name);
+        return ResponseEntity.ok().headers(headers).body(new FileSystemResource(file));
+    }
+
+    // The backup file called name, or null if it is not there
+    private Path downloadable(String name) {
+        Path dir = snapshotService.getBackupDirPath();
+        if (dir == null) return null;
+        Path file = dir.resolve(name).normalize();
+        return file.startsWith(dir.normalize()) && Files.exists(file) ? file : null;
+    }
+
+    private static void fileHeaders(HttpHeaders headers, String name) {
+        headers.setContentType(name.endsWith(SnapshotService.JSON_SUFFIX)
+                ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_OCTET_STREAM);
         headers.setContentDisposition(ContentDisposition.attachment().filename(name).build());
-        return new ResponseEntity<>(data, headers, HttpStatus.OK);
+    }
+
+    // The body is written to the response stream once the headers are sent
+    private ResponseEntity<StreamingResponseBody> streamed(HttpHeaders headers, boolean gzip,
+            StreamingResponseBody body) {
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return ResponseEntity.ok().headers(headers).body(out -> {
+            if (gzip) {
+                GZIPOutputStream zip = new GZIPOutputStream(out, 64 * 1024);
+                body.writeTo(zip);
+                zip.finish();
+            } else {
+                body.writeTo(out);
+            }
+            out.flush();
+        });
+    }
+
+    // True if gzip is acceptable with a non-zero q-value, either by name or
+    // through "*" when gzip is not listed
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean any = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                return q > 0;
+            }
+            if (coding.equals("*")) {
+                any = q > 0;
+            }
+        }
+        return any;
     }
 
     @PostMapping("/restore/{name}")
     public ResponseEntity<?> restore(@PathVariable("name") String name,
                                      @RequestHeader(value = "X-Admin-Secret", required = false) String secret) {
         if (!isAdmin(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        if (name == null || !name.startsWith("app-") || !name.endsWith(".json")) {
+        if (!SnapshotService.isSnapshotFileName(name)) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("ok", false, "error", "Nombre inválido"));
         }
         boolean ok = snapshotService.restoreFromFileName(name);
@@ -122,17 +227,13 @@ public class BackupAdminController {
     public ResponseEntity<?> deleteOne(@PathVariable("name") String name,
                                        @RequestHeader(value = "X-Admin-Secret", required = false) String secret) throws IOException {
         if (!isAdmin(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        if (name == null || !name.startsWith("app-") || !name.endsWith(".json")) {
+        if (!SnapshotService.isSnapshotFileName(name)) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("ok", false, "error", "Nombre inválido"));
         }
-        Path dir = snapshotService.getBackupDirPath();
-        if (dir == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("ok", false));
-        Path file = dir.resolve(name).normalize();
-        if (!file.startsWith(dir.normalize()) || !Files.exists(file)) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("ok", false));
-        }
         try {
-            Files.deleteIfExists(file);
+            if (!snapshotService.deleteBackup(name)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("ok", false));
+            }
             return ResponseEntity.ok(Map.of("ok", true));
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("ok", false, "error", e.getMessage()));
@@ -144,20 +245,7 @@ public class BackupAdminController {
                                             @RequestHeader(value = "X-Admin-Secret", required = false) String secret) throws IOException {
         if (!isAdmin(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         if (minutes < 0) return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("ok", false, "error", "minutes >= 0"));
-        Path dir = snapshotService.getBackupDirPath();
-        if (dir == null || !Files.exists(dir)) return ResponseEntity.ok(Map.of("ok", true, "deleted", 0));
-        long cutoff = System.currentTimeMillis() - (minutes * 60L * 1000L);
-        int deleted = 0;
-        try (var s = Files.list(dir)) {
-            for (Path p : s.filter(p -> {
-                String n = p.getFileName().toString();
-                return n.startsWith("app-") && n.endsWith(".json");
-            }).collect(Collectors.toList())) {
-                if (mtimeSafe(p) < cutoff) {
-                    try { Files.deleteIfExists(p); deleted++; } catch (IOException ignored) {}
-                }
-            }
-        }
+        int deleted = snapshotService.purgeOlderThan(minutes);
         return ResponseEntity.ok(Map.of("ok", true, "deleted", deleted));
     }
 
@@ -172,20 +260,16 @@ public class BackupAdminController {
         if (dir == null) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("ok", false, "error", "Directorio de backups no disponible"));
         }
-        Files.createDirectories(dir);
         String original = Optional.ofNullable(file.getOriginalFilename()).orElse("").trim();
         String sanitized = sanitizeBackupName(original);
         Path target = dir.resolve(sanitized).normalize();
         if (!target.startsWith(dir.normalize())) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("ok", false, "error", "Ruta invalida"));
         }
+        BackupIndex.Entry entry;
         try (var in = file.getInputStream()) {
-            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
-        }
-        try {
-            snapshotService.validateSnapshotFile(target);
+            entry = snapshotService.importBackup(sanitized, in);
         } catch (IOException e) {
-            try { Files.deleteIfExists(target); } catch (IOException ignored) {}
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of(
                     "ok", false,
                     "error", "Backup inválido: " + (e.getMessage() == null ? "formato no reconocido" : e.getMessage())
@@ -194,19 +278,21 @@ public class BackupAdminController {
         Map<String, Object> payload = Map.of(
                 "ok", true,
                 "name", sanitized,
-                "size", sizeSafe(target),
-                "modified", mtimeSafe(target)
+                "size", entry == null ? 0L : entry.size(),
+                "modified", entry == null ? 0L : entry.modified()
         );
         return ResponseEntity.ok(payload);
     }
 
     private String sanitizeBackupName(String original) {
         String cleaned = original == null ? "" : original.replaceAll("[^a-zA-Z0-9_.-]", "_");
-        if (cleaned.startsWith("app-") && cleaned.endsWith(".json")) {
+        if (SnapshotService.isSnapshotFileName(cleaned)) {
             return cleaned;
         }
         String stamp = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").format(LocalDateTime.now());
-        return "app-uploaded-" + stamp + ".json";
+        String suffix = cleaned.endsWith(SnapshotService.BINARY_SUFFIX)
+                ? SnapshotService.BINARY_SUFFIX : SnapshotService.JSON_SUFFIX;
+        return "app-uploaded-" + stamp + suffix;
     }
 
     @PostMapping("/purge-keep-latest")
@@ -214,33 +300,15 @@ public class BackupAdminController {
                                              @RequestHeader(value = "X-Admin-Secret", required = false) String secret) throws IOException {
         if (!isAdmin(secret)) return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         if (keep < 0) return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("ok", false, "error", "keep >= 0"));
-        Path dir = snapshotService.getBackupDirPath();
-        if (dir == null || !Files.exists(dir)) return ResponseEntity.ok(Map.of("ok", true, "deleted", 0));
-        List<Path> files;
-        try (var s = Files.list(dir)) {
-            files = s.filter(p -> {
-                        String n = p.getFileName().toString();
-                        return n.startsWith("app-") && n.endsWith(".json");
-                    })
-                    .sorted(Comparator.comparingLong(this::mtimeSafe).reversed())
-                    .collect(Collectors.toList());
-        }
-        int deleted = 0;
-        for (int i = keep; i < files.size(); i++) {
-            try { Files.deleteIfExists(files.get(i)); deleted++; } catch (IOException ignored) {}
-        }
+        int deleted = snapshotService.purgeKeepLatest(keep);
         return ResponseEntity.ok(Map.of("ok", true, "deleted", deleted));
     }
 
-    private long mtimeSafe(Path p) {
-        try {
-            return Files.getLastModifiedTime(p).toMillis();
-        } catch (IOException e) { return 0L; }
-    }
-
-    private long sizeSafe(Path p) {
-        try {
-            return Files.size(p);
-        } catch (IOException e) { return 0L; }
+    private Map<String, Object> describe(BackupIndex.Entry e) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("name", e.name());
+        m.put("size", Long.valueOf(e.size()));
+        m.put("modified", Long.valueOf(e.modified()));
+        return m;
     }
 }
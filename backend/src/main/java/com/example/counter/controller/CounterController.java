@@ -2,9 +2,12 @@ package com.example.counter.controller;
 
 import com.example.counter.service.CounterService;
 import com.example.counter.service.TablesService;
+import com.example.counter.service.dedup.RequestDeduplicator;
 import com.example.counter.service.model.CounterState;
+import com.example.counter.service.stream.CounterStreamService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -12,6 +15,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.Map;
 
@@ -22,27 +26,37 @@ public class CounterController {
 
     private final CounterService counterService;
     private final TablesService tablesService;
+    private final CounterStreamService counterStreamService;
+    private final RequestDeduplicator deduplicator;
     private final String adminSecret;
 
     public CounterController(CounterService counterService,
             TablesService tablesService,
+            CounterStreamService counterStreamService,
+            RequestDeduplicator deduplicator,
             @Value("${admin.secret:}") String adminSecret) {
         this.counterService = counterService;
         this.tablesService = tablesService;
+        this.counterStreamService = counterStreamService;
+        this.deduplicator = deduplicator;
         this.adminSecret = adminSecret;
     }
 
     @GetMapping
-    public ResponseEntity<CounterState> getCurrentState() {
-        CounterState current = counterService.getState();
-        int currentPrimaryMax = current.primaryMax == null ? 0 : current.primaryMax;
-        if (current.primary == 4000 && currentPrimaryMax == 4000) {
-            int recommended = getRecommendedPrimaryMax();
-            if (recommended > 0 && recommended != 4000) {
-                return ResponseEntity.ok(counterService.setPrimaryMaxAndCurrent(recommended));
-            }
+    public ResponseEntity<CounterState> getCurrentState(
+            @org.springframework.web.bind.annotation.RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        // The recommended max depends on registered players, so tables count too
+        String etag = ETagSupport.etag("counter", counterService.getVersion(), tablesService.getVersion());
+        if (ETagSupport.matches(ifNoneMatch, etag)) {
+            return ETagSupport.notModified(etag);
         }
-        return ResponseEntity.ok(current);
+        return ETagSupport.ok(etag, currentStateWithRecommendedMax());
+    }
+
+    // Pushes the full state on connect and again whenever it changes
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        return counterStreamService.subscribe(currentStateWithRecommendedMax());
     }
 
     // --- Exact setters for Admin ---
@@ -86,29 +100,73 @@ public class CounterController {
     }
 
     @PostMapping("/primary/reduce")
-    public ResponseEntity<CounterState> reducePrimary(@RequestBody Map<String, Integer> payload) {
-        int delta = Math.max(0, payload.getOrDefault("delta", 0));
-        Integer mesaId = payload.get("mesaId");
-        if (!shouldApplyForMesa(mesaId)) {
+    public ResponseEntity<CounterState> reducePrimary(@RequestBody Map<String, Object> payload) {
+        int delta = sanitizeObjectValue(payload, "delta");
+        Integer mesaId = parseMesaId(payload);
+        String uuid = parseUuid(payload);
+        if (!shouldApplyForMesa(mesaId) || !deduplicator.firstSeen(mesaId, "primary-reduce", uuid)) {
             return ResponseEntity.ok(counterService.getState());
         }
-        return ResponseEntity.ok(counterService.reducePrimary(delta));
+        try {
+            return ResponseEntity.ok(counterService.reducePrimary(delta));
+        } catch (RuntimeException e) {
+            deduplicator.forget(mesaId, "primary-reduce", uuid);
+            throw e;
+        }
     }
 
     @PostMapping("/tertiary/increment")
-    public ResponseEntity<CounterState> incrementTertiary(@RequestBody Map<String, Integer> payload) {
-        int delta = Math.max(0, payload.getOrDefault("delta", 0));
-        Integer mesaId = payload.get("mesaId");
-        if (!shouldApplyForMesa(mesaId)) {
+    public ResponseEntity<CounterState> incrementTertiary(@RequestBody Map<String, Object> payload) {
+        int delta = sanitizeObjectValue(payload, "delta");
+        Integer mesaId = parseMesaId(payload);
+        String uuid = parseUuid(payload);
+        if (!shouldApplyForMesa(mesaId) || !deduplicator.firstSeen(mesaId, "tertiary-increment", uuid)) {
             return ResponseEntity.ok(counterService.getState());
         }
-        return ResponseEntity.ok(counterService.incrementTertiary(delta));
+        try {
+            return ResponseEntity.ok(counterService.incrementTertiary(delta));
+        } catch (RuntimeException e) {
+            deduplicator.forget(mesaId, "tertiary-increment", uuid);
+            throw e;
+        }
+    }
+
+    private CounterState currentStateWithRecommendedMax() {
+        CounterState current = counterService.getState();
+        int currentPrimaryMax = current.primaryMax == null ? 0 : current.primaryMax;
+        if (current.primary == 4000 && currentPrimaryMax == 4000) {
+            int recommended = getRecommendedPrimaryMax();
+            if (recommended > 0 && recommended != 4000) {
+                return counterService.setPrimaryMaxAndCurrent(recommended);
+            }
+        }
+        return current;
     }
 
     private boolean shouldApplyForMesa(Integer mesaId) {
         return mesaId == null || !tablesService.isRegisterTableDisconnected(mesaId);
     }
 
+    private Integer parseMesaId(Map<String, Object> payload) {
+        Object raw = payload == null ? null : payload.get("mesaId");
+        if (raw instanceof Number number) {
+            return number.intValue();
+        }
+        if (raw instanceof String str && !str.isBlank()) {
+            try {
+                return Integer.parseInt(str.trim());
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private String parseUuid(Map<String, Object> payload) {
+        Object raw = payload == null ? null : payload.get("uuid");
+        return raw == null ? null : String.valueOf(raw);
+    }
+
     private int getRecommendedPrimaryMax() {
         if (tablesService == null || tablesService.listRegister() == null) {
             return 0;
@@ -0,0 +1,75 @@
+package com.example.counter.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Conditional GET helpers for polled endpoints. ETags are built from the
+ * version counters kept by the services, so a matching If-None-Match can be
+ * answered with 304 before any state is copied or serialized.
+ * <p>
+ * Read the versions before building the body: a body newer than its ETag is
+ * harmless (the next poll just gets a 200), the reverse would hide changes.
+ * <p>
+ * The counters start over on every boot, so each tag also carries an epoch
+ * drawn once per process: a tag kept by a display across a restart never
+ * matches, even when the counters land on the same numbers again.
+ */
+final class ETagSupport {
+
+    private static final String EPOCH = newEpoch();
+
+    private ETagSupport() {
+    }
+
+    static String etag(String prefix, long... versions) {
+        return etagOf(EPOCH, prefix, versions);
+    }
+
+    // The tag a process with the given epoch builds for these versions
+    static String etagOf(String epoch, String prefix, long... versions) {
+        StringBuilder sb = new StringBuilder(epoch.length() + prefix.length() + 8 * versions.length + 3);
+        sb.append('"').append(epoch).append('-').append(prefix);
+        for (long v : versions) {
+            sb.append('-').append(v);
+        }
+        return sb.append('"').toString();
+    }
+
+    static String newEpoch() {
+        return Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36);
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.startsWith("W/")) {
+                c = c.substring(2);
+            }
+            if (c.equals("*") || c.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .build();
+    }
+
+    static <T> ResponseEntity<T> ok(String etag, T body) {
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .body(body);
+    }
+}
@@ -1,13 +1,14 @@
 package com.example.counter.controller;
 
+import com.example.counter.service.mesa.MesaAggregateService;
+import com.example.counter.service.mesa.MesaBatchService;
 import com.example.counter.service.mesa.MesaCounterService;
 import com.example.counter.service.TablesService;
-import com.example.counter.service.sector.SectorService;
-import com.example.counter.service.model.RegisterTable;
+import com.example.counter.service.dedup.RequestDeduplicator;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -15,66 +16,83 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class MesaCounterController {
 
+    private static final int DEFAULT_PAGE = 500;
+    private static final int MAX_PAGE = 5000;
+
     private final MesaCounterService mesaService;
     private final TablesService tablesService;
-    private final SectorService sectorService;
+    private final MesaAggregateService aggregates;
+    private final RequestDeduplicator deduplicator;
+    private final MesaBatchService batchService;
 
     public MesaCounterController(MesaCounterService mesaService, TablesService tablesService,
-            SectorService sectorService) {
+            MesaAggregateService aggregates, RequestDeduplicator deduplicator, MesaBatchService batchService) {
         this.mesaService = mesaService;
         this.tablesService = tablesService;
-        this.sectorService = sectorService;
+        this.aggregates = aggregates;
+        this.deduplicator = deduplicator;
+        this.batchService = batchService;
     }
 
     @GetMapping("/summary")
-    public ResponseEntity<Map<Integer, MesaCounterService.TotalesMesa>> summary() {
-        Map<Integer, MesaCounterService.TotalesMesa> totales = mesaService.getTotalesSnapshot();
-
-        // Enrich with table information and sector if services are available
-        try {
-            if (tablesService != null) {
-                List<RegisterTable> tables = tablesService.listRegister();
-                if (tables != null) {
-                    for (RegisterTable table : tables) {
-                        if (totales.containsKey(table.tableNumber())) {
-                            MesaCounterService.TotalesMesa t = totales.get(table.tableNumber());
-                            t.tableName = table.tableName();
-                            t.realityName = table.realityName();
-                        }
-                    }
-                }
-            }
-
-            // Enrich with sector information
-            if (sectorService != null) {
-                for (Map.Entry<Integer, MesaCounterService.TotalesMesa> entry : totales.entrySet()) {
-                    int mesaId = entry.getKey();
-                    MesaCounterService.TotalesMesa t = entry.getValue();
-                    t.sectorId = sectorService.getSectorIdForMesa(mesaId);
-                }
-            }
-        } catch (Exception e) {
-            // Log error but don't fail the request
-            System.err.println("Error enriching mesa summary: " + e.getMessage());
-            e.printStackTrace();
+    public ResponseEntity<Map<Integer, MesaCounterService.TotalesMesa>> summary(
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        MesaAggregateService.Aggregates current = aggregates.get();
+        String etag = ETagSupport.etag("summary", current.version);
+        if (ETagSupport.matches(ifNoneMatch, etag)) {
+            return ETagSupport.notModified(etag);
         }
+        return ETagSupport.ok(etag, current.mesas);
+    }
 
-        return ResponseEntity.ok(totales);
+    // Per-mesa totals plus sector, reality and global sums and the hero leaderboard
+    @GetMapping("/aggregates")
+    public ResponseEntity<MesaAggregateService.Aggregates> aggregates(
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        MesaAggregateService.Aggregates current = aggregates.get();
+        String etag = ETagSupport.etag("aggregates", current.version);
+        if (ETagSupport.matches(ifNoneMatch, etag)) {
+            return ETagSupport.notModified(etag);
+        }
+        return ETagSupport.ok(etag, current);
     }
 
     @GetMapping("/last-avatar-defeats")
-    public ResponseEntity<List<MesaCounterService.AvatarDefeat>> lastAvatarDefeats() {
-        return ResponseEntity.ok(mesaService.getAvatarDefeatsLatestFirst());
+    public ResponseEntity<?> lastAvatarDefeats(
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        return avatarDefeats(null, DEFAULT_PAGE, ifNoneMatch);
     }
 
+    // Without since: the whole list, latest first. With since: a page of the
+    // defeats after that cursor, oldest first, for incremental polling.
     @GetMapping("/avatar-defeats")
-    public ResponseEntity<List<MesaCounterService.AvatarDefeat>> avatarDefeats() {
-        return ResponseEntity.ok(mesaService.getAvatarDefeatsLatestFirst());
+    public ResponseEntity<?> avatarDefeats(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE) int limit,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        if (since != null) {
+            return ResponseEntity.ok(mesaService.getAvatarDefeatsSince(since, pageLimit(limit)));
+        }
+        String etag = ETagSupport.etag("defeats", mesaService.getVersion());
+        if (ETagSupport.matches(ifNoneMatch, etag)) {
+            return ETagSupport.notModified(etag);
+        }
+        return ETagSupport.ok(etag, mesaService.getAvatarDefeatsLatestFirst());
     }
 
     @GetMapping("/special-defeats")
-    public ResponseEntity<List<MesaCounterService.SpecialDefeat>> specialDefeats() {
-        return ResponseEntity.ok(mesaService.getSpecialDefeatsLatestFirst());
+    public ResponseEntity<?> specialDefeats(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE) int limit,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        if (since != null) {
+            return ResponseEntity.ok(mesaService.getSpecialDefeatsSince(since, pageLimit(limit)));
+        }
+        String etag = ETagSupport.etag("special", mesaService.getVersion());
+        if (ETagSupport.matches(ifNoneMatch, etag)) {
+            return ETagSupport.notModified(etag);
+        }
+        return ETagSupport.ok(etag, mesaService.getSpecialDefeatsLatestFirst());
     }
 
     @PostMapping("/{mesaId}/avatar-defeat")
@@ -92,8 +110,10 @@ public class MesaCounterController {
                 return ResponseEntity.badRequest()
                         .body(Map.of("error", "Invalid avatar index. Must be 0-3."));
             }
-
-            mesaService.recordAvatarDefeat(mesaId, avatarIndex, rupturaAmount);
+            if (!applyOnce(mesaId, "avatar-defeat", payload,
+                    () -> mesaService.recordAvatarDefeat(mesaId, avatarIndex, rupturaAmount))) {
+                return ResponseEntity.ok(Map.of("status", "ok", "message", "duplicate"));
+            }
             return ResponseEntity.ok(Map.of("status", "ok", "message", "Avatar defeat recorded"));
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
@@ -116,8 +136,10 @@ public class MesaCounterController {
                 return ResponseEntity.badRequest()
                         .body(Map.of("error", "Hero name is required"));
             }
-
-            mesaService.recordHeroDefeat(mesaId, heroName, threatAmount);
+            if (!applyOnce(mesaId, "hero-defeat", payload,
+                    () -> mesaService.recordHeroDefeat(mesaId, heroName, threatAmount))) {
+                return ResponseEntity.ok(Map.of("status", "ok", "message", "duplicate"));
+            }
             return ResponseEntity.ok(Map.of("status", "ok", "message", "Hero defeat recorded"));
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
@@ -134,8 +156,10 @@ public class MesaCounterController {
                 return ResponseEntity.ok(Map.of("status", "ok", "message", "mocked"));
             }
             Integer threatAmount = (Integer) payload.getOrDefault("threatAmount", 0);
-
-            mesaService.recordPlanCompletion(mesaId, threatAmount);
+            if (!applyOnce(mesaId, "plan-completion", payload,
+                    () -> mesaService.recordPlanCompletion(mesaId, threatAmount))) {
+                return ResponseEntity.ok(Map.of("status", "ok", "message", "duplicate"));
+            }
             return ResponseEntity.ok(Map.of("status", "ok", "message", "Plan completion recorded"));
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
@@ -143,6 +167,46 @@ public class MesaCounterController {
         }
     }
 
+    /**
+     * Apply several mesa actions in one round-trip. Body:
+     * {@code { uuid, ts, operations: [{ type, ... }] }} where type is one of
+     * avatarDefeat, heroDefeat, planCompletion, primaryReduce,
+     * tertiaryIncrement or sectorDelta.
+     */
+    @PostMapping("/{mesaId}/batch")
+    public ResponseEntity<?> applyBatch(
+            @PathVariable int mesaId,
+            @RequestBody MesaBatchService.BatchRequest request) {
+        try {
+            return ResponseEntity.ok(batchService.apply(mesaId, request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Runs the action unless the payload's uuid was already applied. The uuid
+    // is forgotten again if the action fails, so the client can retry it.
+    private boolean applyOnce(int mesaId, String scope, Map<String, Object> payload, Runnable action) {
+        Object raw = payload.get("uuid");
+        String uuid = raw == null ? null : String.valueOf(raw);
+        if (!deduplicator.firstSeen(mesaId, scope, uuid)) {
+            return false;
+        }
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            deduplicator.forget(mesaId, scope, uuid);
+            throw e;
+        }
+        return true;
+    }
+
+    private static int pageLimit(int limit) {
+        return Math.min(MAX_PAGE, Math.max(1, limit));
+    }
+
     private boolean isMesaDisconnected(int mesaId) {
         return tablesService != null && tablesService.isRegisterTableDisconnected(mesaId);
     }
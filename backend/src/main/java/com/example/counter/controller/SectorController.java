@@ -1,5 +1,6 @@
 package com.example.counter.controller;
 
+import com.example.counter.service.TablesService;
 import com.example.counter.service.sector.SectorService;
 import com.example.counter.service.sector.SectorService.SectorStatus;
 import org.springframework.http.HttpStatus;
@@ -9,6 +10,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -20,14 +22,22 @@ import java.util.Map;
 public class SectorController {
 
     private final SectorService sectorService;
+    private final TablesService tablesService;
 
-    public SectorController(SectorService sectorService) {
+    public SectorController(SectorService sectorService, TablesService tablesService) {
         this.sectorService = sectorService;
+        this.tablesService = tablesService;
     }
 
     @GetMapping("/{mesaId}")
-    public ResponseEntity<SectorStatus> getSector(@PathVariable("mesaId") int mesaId) {
-        return ResponseEntity.ok(sectorService.getStatusForMesa(mesaId));
+    public ResponseEntity<SectorStatus> getSector(@PathVariable("mesaId") int mesaId,
+                                                  @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        // Visible mesas depend on registration and connection state as well
+        String etag = ETagSupport.etag("sector" + mesaId, sectorService.getVersion(), tablesService.getVersion());
+        if (ETagSupport.matches(ifNoneMatch, etag)) {
+            return ETagSupport.notModified(etag);
+        }
+        return ETagSupport.ok(etag, sectorService.getStatusForMesa(mesaId));
     }
 
     @PostMapping("/{mesaId}/indicator/{indicator}/active")
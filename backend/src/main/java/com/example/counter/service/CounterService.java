@@ -1,79 +1,149 @@
 package com.example.counter.service;
 
+import com.example.counter.service.journal.MutationJournal;
 import com.example.counter.service.model.CounterState;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Global event counters. The whole state lives in one immutable
+ * {@link CounterState} swapped with compare-and-set, so concurrent updates
+ * never block each other and readers always see a consistent set of values.
+ */
 @Service
 public class CounterService {
     private static final int PRIMARY_DEFAULT_VALUE = 4000;
     private static final int TERTIARY_DEFAULT_VALUE = 0;
     public static final int TERTIARY_MAX_DEFAULT_VALUE = 100;
 
-    private int primary = PRIMARY_DEFAULT_VALUE;
-    private int primaryMax = PRIMARY_DEFAULT_VALUE;
-    private int tertiary = TERTIARY_DEFAULT_VALUE;
-    private int tertiaryMax = TERTIARY_MAX_DEFAULT_VALUE;
-    private int secondaryHeroes = 0;
-    private int secondaryPlan = 0;
+    private final AtomicReference<CounterState> state = new AtomicReference<>(
+            new CounterState(PRIMARY_DEFAULT_VALUE, PRIMARY_DEFAULT_VALUE, TERTIARY_DEFAULT_VALUE,
+                    TERTIARY_MAX_DEFAULT_VALUE, 0, 0));
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final List<Consumer<CounterState>> listeners = new CopyOnWriteArrayList<>();
+
+    private final MutationJournal journal;
+    private final Supplier<CounterState> journalSource = this::getState;
+
+    public CounterService(MutationJournal journal) {
+        this.journal = journal;
+    }
 
-    public synchronized CounterState getState() {
-        return snapshot();
+    /**
+     * Register a callback invoked with the latest state after every mutation.
+     * Listeners run on the mutating thread and must return quickly.
+     */
+    public void addListener(Consumer<CounterState> listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    public CounterState getState() {
+        return state.get();
+    }
+
+    /**
+     * Monotonic counter bumped on every change, for cheap change detection.
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     // New setters for exact values (used by Admin)
-    public synchronized CounterState setPrimary(int value) {
+    public CounterState setPrimary(int value) {
         int normalized = Math.max(0, value);
-        primary = primaryMax > 0 ? Math.min(normalized, primaryMax) : normalized;
-        return snapshot();
+        return update(s -> with(s, s.primaryMax > 0 ? Math.min(normalized, s.primaryMax) : normalized,
+                s.primaryMax, s.tertiary, s.tertiaryMax, s.secondaryHeroes, s.secondaryPlan));
     }
 
-    public synchronized CounterState setPrimaryMax(int value) {
-        primaryMax = Math.max(0, value);
-        if (primary > primaryMax) {
-            primary = primaryMax;
-        }
-        return snapshot();
+    public CounterState setPrimaryMax(int value) {
+        int max = Math.max(0, value);
+        return update(s -> with(s, Math.min(s.primary, max), max, s.tertiary, s.tertiaryMax,
+                s.secondaryHeroes, s.secondaryPlan));
     }
 
-    public synchronized CounterState setPrimaryMaxAndCurrent(int value) {
-        primaryMax = Math.max(0, value);
-        primary = primaryMax;
-        return snapshot();
+    public CounterState setPrimaryMaxAndCurrent(int value) {
+        int max = Math.max(0, value);
+        return update(s -> with(s, max, max, s.tertiary, s.tertiaryMax, s.secondaryHeroes, s.secondaryPlan));
     }
 
-    public synchronized CounterState setTertiary(int value) {
-        tertiary = Math.max(0, value);
-        return snapshot();
+    public CounterState setTertiary(int value) {
+        int normalized = Math.max(0, value);
+        return update(s -> with(s, s.primary, s.primaryMax, normalized, s.tertiaryMax, s.secondaryHeroes,
+                s.secondaryPlan));
     }
 
-    public synchronized CounterState setTertiaryMax(int value) {
-        tertiaryMax = Math.max(0, value);
-        return snapshot();
+    public CounterState setTertiaryMax(int value) {
+        int max = Math.max(0, value);
+        return update(s -> with(s, s.primary, s.primaryMax, s.tertiary, max, s.secondaryHeroes, s.secondaryPlan));
     }
 
-    public synchronized CounterState setSecondaryHeroes(int value) {
-        secondaryHeroes = Math.max(0, value);
-        return snapshot();
+    public CounterState setSecondaryHeroes(int value) {
+        int normalized = Math.max(0, value);
+        return update(s -> with(s, s.primary, s.primaryMax, s.tertiary, s.tertiaryMax, normalized,
+                s.secondaryPlan));
     }
 
-    public synchronized CounterState setSecondaryPlan(int value) {
-        secondaryPlan = Math.max(0, value);
-        return snapshot();
+    public CounterState setSecondaryPlan(int value) {
+        int normalized = Math.max(0, value);
+        return update(s -> with(s, s.primary, s.primaryMax, s.tertiary, s.tertiaryMax, s.secondaryHeroes,
+                normalized));
     }
 
-    public synchronized CounterState reducePrimary(int delta) {
-        primary = Math.max(0, primary - delta);
-        return snapshot();
+    public CounterState reducePrimary(int delta) {
+        return update(s -> with(s, Math.max(0, s.primary - delta), s.primaryMax, s.tertiary, s.tertiaryMax,
+                s.secondaryHeroes, s.secondaryPlan));
     }
 
-    public synchronized CounterState incrementTertiary(int delta) {
+    public CounterState incrementTertiary(int delta) {
         int safeDelta = Math.max(0, delta);
-        int next = tertiary + safeDelta;
-        tertiary = tertiaryMax > 0 ? Math.min(next, tertiaryMax) : Math.max(0, next);
-        return snapshot();
+        return update(s -> {
+            int next = s.tertiary + safeDelta;
+            int tertiary = s.tertiaryMax > 0 ? Math.min(next, s.tertiaryMax) : Math.max(0, next);
+            return with(s, s.primary, s.primaryMax, tertiary, s.tertiaryMax, s.secondaryHeroes, s.secondaryPlan);
+        });
     }
 
-    private CounterState snapshot() {
+    private CounterState update(UnaryOperator<CounterState> fn) {
+        CounterState prev;
+        CounterState next;
+        do {
+            prev = state.get();
+            next = fn.apply(prev);
+            if (next == prev) {
+                return prev;
+            }
+        } while (!state.compareAndSet(prev, next));
+        version.incrementAndGet();
+        journal.counterChanged(journalSource);
+        // Listeners always receive the newest value, even if another update
+        // landed between our CAS and this notification.
+        CounterState latest = state.get();
+        for (Consumer<CounterState> listener : listeners) {
+            listener.accept(latest);
+        }
+        return next;
+    }
+
+    // Reuses the current instance when nothing changed so no-op updates stay
+    // allocation free.
+    private static CounterState with(CounterState current, int primary, int primaryMax, int tertiary,
+            int tertiaryMax, int secondaryHeroes, int secondaryPlan) {
+        if (current.primary == primary && current.primaryMax == primaryMax && current.tertiary == tertiary
+                && current.tertiaryMax == tertiaryMax && current.secondaryHeroes == secondaryHeroes
+                && current.secondaryPlan == secondaryPlan) {
+            return current;
+        }
         return new CounterState(primary, primaryMax, tertiary, tertiaryMax, secondaryHeroes, secondaryPlan);
     }
 
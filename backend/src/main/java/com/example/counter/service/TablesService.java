@@ -1,5 +1,7 @@
 package com.example.counter.service;
 
+import com.example.counter.service.journal.MutationJournal;
+import com.example.counter.service.mesa.HeroRoster;
 import com.example.counter.service.model.FreeGameTable;
 import com.example.counter.service.model.PlayerInfo;
 import com.example.counter.service.model.RegisterTable;
@@ -8,87 +10,55 @@ import org.springframework.stereotype.Service;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 import java.util.UUID;
 
+/**
+ * Registered event tables and free-game tables.
+ * <p>
+ * Both lists are published as immutable {@link TableView} snapshots held in
+ * volatile fields. Readers (every poll, sector lookup and disconnected check)
+ * use the current snapshot without locking or copying; writers serialize on
+ * this instance, build a new snapshot and swap it in.
+ */
 @Service
 public class TablesService {
-    private final List<RegisterTable> registerTables = new ArrayList<>();
-    private final List<FreeGameTable> freeGameTables = new ArrayList<>();
+    private volatile TableView<RegisterTable> registerView = TableView.empty();
+    private volatile TableView<FreeGameTable> freeGameView = TableView.empty();
     private final List<String> registerCharacters;
     private final List<String> registerAspects;
     private final List<String> registerSpiderwomanAspects;
-    private boolean eventQrEnabled;
-    private boolean freegameQrEnabled;
-
-    public TablesService() {
-        registerCharacters = List.of(
-                "Spiderman (Peter Parker)",
-                "Capitana Marvel",
-                "Hulka",
-                "Iron Man",
-                "Pantera Negra (T'Challa)",
-                "Capitán América",
-                "Ms. Marvel",
-                "Thor",
-                "Viuda Negra",
-                "Dr. Extraño",
-                "Hulk",
-                "Ojo de Halcón",
-                "Spiderwoman",
-                "Hombre Hormiga",
-                "Avispa",
-                "Mercurio",
-                "Bruja Escarlata",
-                "Groot",
-                "Mapache Cohete",
-                "Starlord",
-                "Gamora",
-                "Drax",
-                "Veneno",
-                "Spectrum",
-                "Adam Warlock",
-                "Nébula",
-                "Máquina de Guerra",
-                "Valquiria",
-                "Vision",
-                "Ghost-Spider",
-                "Spiderman (Miles Morales)",
-                "Nova",
-                "Ironheart",
-                "Spidercerdo",
-                "SP//dr",
-                "Coloso",
-                "Gatasombra",
-                "Cíclope",
-                "Fénix",
-                "Lobezno",
-                "Tormenta",
-                "Gambito",
-                "Pícara",
-                "Cable",
-                "Dominó",
-                "Mariposa Mental",
-                "Ángel",
-                "X-23",
-                "Masacre",
-                "Bishop",
-                "Magik",
-                "Hombre de Hielo",
-                "Júbilo",
-                "Rondador Nocturno",
-                "Magneto",
-                "María Hill",
-                "Nick Furia",
-                "Pantera Negra (Shuri)",
-                "Seda",
-                "Halcón",
-                "Soldado de Invierno",
-                "Tigra",
-                "Hulkling",
-                "Hércules",
-                "Hombre Maravilla");
+    private volatile boolean eventQrEnabled;
+    private volatile boolean freegameQrEnabled;
+    private final AtomicLong version = new AtomicLong();
+    private final List<RegisterListener> registerListeners = new CopyOnWriteArrayList<>();
+    private final MutationJournal journal;
+
+    /**
+     * Callback for registered-table changes, invoked while the writer lock is
+     * held so listeners observe changes in order. {@code before} is null for a
+     * new table and {@code after} is null for a deleted one.
+     */
+    public interface RegisterListener {
+        void onRegisterChanged(RegisterTable before, RegisterTable after);
+
+        /**
+         * The whole list was replaced (restore) or the listener was just added.
+         */
+        void onRegisterReset(List<RegisterTable> tables);
+    }
+
+    public TablesService(MutationJournal journal) {
+        this.journal = journal;
+        registerCharacters = HeroRoster.CHARACTERS;
         registerAspects = List.of(
                 "Agresividad",
                 "Justicia",
@@ -108,6 +78,26 @@ public class TablesService {
                 "Masacrismo-Protección");
     }
 
+    /**
+     * Monotonic counter bumped whenever a table or QR flag changes, readable
+     * without locking.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Register a listener and immediately hand it the current table list, so
+     * no change can slip in between reading the list and subscribing.
+     */
+    public synchronized void addRegisterListener(RegisterListener listener) {
+        if (listener == null) {
+            return;
+        }
+        registerListeners.add(listener);
+        listener.onRegisterReset(registerView.list);
+    }
+
     public synchronized RegisterTable createRegister(int tableNumber, String tableName, String difficulty, int players,
             List<PlayerInfo> playersInfo, String realityId, String realityName) {
         String id = UUID.randomUUID().toString();
@@ -119,12 +109,16 @@ public class TablesService {
         String avatar = String.valueOf(ThreadLocalRandom.current().nextInt(4));
         RegisterTable t = new RegisterTable(id, tn, tableName, difficulty, Math.max(0, players), sanitized, code,
                 Instant.now(), avatar, realityId, realityName, false);
-        registerTables.add(t);
+        List<RegisterTable> next = new ArrayList<>(registerView.list);
+        next.add(t);
+        publishRegister(next);
+        fireRegisterChanged(null, t);
+        journal.registerTableChanged(t);
         return t;
     }
 
-    public synchronized boolean joinRegister(String code) {
-        return registerTables.stream().anyMatch(t -> t.code().equalsIgnoreCase(code));
+    public boolean joinRegister(String code) {
+        return code != null && registerView.byCode.containsKey(normalizeCode(code));
     }
 
     public synchronized com.example.counter.service.model.FreeGameTable createFreeGame(int tableNumber, String name,
@@ -151,149 +145,292 @@ public class TablesService {
                 0,
                 normalizedScenario,
                 Instant.now());
-        freeGameTables.add(t);
+        List<FreeGameTable> next = new ArrayList<>(freeGameView.list);
+        next.add(t);
+        publishFreeGame(next);
+        journal.freeGameTableChanged(t);
         return t;
     }
 
-    public synchronized boolean joinFreeGame(String code) {
-        return freeGameTables.stream().anyMatch(t -> t.code().equalsIgnoreCase(code));
+    public boolean joinFreeGame(String code) {
+        return code != null && freeGameView.byCode.containsKey(normalizeCode(code));
     }
 
     public synchronized boolean setFreeGameVictoryPoints(String id, int victoryPoints, Boolean scenarioCleared) {
-        for (int i = 0; i < freeGameTables.size(); i++) {
-            var t = freeGameTables.get(i);
-            if (t.id().equals(id)) {
-                boolean cleared = scenarioCleared == null ? t.scenarioCleared() : scenarioCleared.booleanValue();
-                boolean hasChallenge = t.inevitableChallenge() != null
-                        && !t.inevitableChallenge().isBlank()
-                        && !"(Ninguno)".equalsIgnoreCase(t.inevitableChallenge());
-                boolean normalizedScenario = hasChallenge && cleared;
-                freeGameTables.set(i, new com.example.counter.service.model.FreeGameTable(
-                        t.id(), t.tableNumber(), t.name(), t.difficulty(), t.inevitableChallenge(), t.players(),
-                        t.playersInfo(), t.code(), Math.max(0, victoryPoints), normalizedScenario, t.createdAt()));
-                return true;
-            }
+        TableView<FreeGameTable> view = freeGameView;
+        Integer pos = id == null ? null : view.posById.get(id);
+        if (pos == null) {
+            return false;
         }
-        return false;
+        var t = view.list.get(pos);
+        boolean cleared = scenarioCleared == null ? t.scenarioCleared() : scenarioCleared.booleanValue();
+        boolean hasChallenge = t.inevitableChallenge() != null
+                && !t.inevitableChallenge().isBlank()
+                && !"(Ninguno)".equalsIgnoreCase(t.inevitableChallenge());
+        boolean normalizedScenario = hasChallenge && cleared;
+        List<FreeGameTable> next = new ArrayList<>(view.list);
+        FreeGameTable updated = new FreeGameTable(
+                t.id(), t.tableNumber(), t.name(), t.difficulty(), t.inevitableChallenge(), t.players(),
+                t.playersInfo(), t.code(), Math.max(0, victoryPoints), normalizedScenario, t.createdAt());
+        next.set(pos, updated);
+        publishFreeGame(next);
+        journal.freeGameTableChanged(updated);
+        return true;
     }
 
-    public synchronized List<RegisterTable> listRegister() {
-        return Collections.unmodifiableList(new ArrayList<>(registerTables));
+    /**
+     * Current registered tables. The returned list is an immutable snapshot
+     * shared between callers; it never changes after being returned.
+     */
+    public List<RegisterTable> listRegister() {
+        return registerView.list;
     }
 
-    public synchronized RegisterTable findRegisterByNumber(int tableNumber) {
-        int tn = Math.max(0, tableNumber);
-        for (RegisterTable t : registerTables) {
-            if (t.tableNumber() == tn) {
-                return t;
-            }
-        }
-        return null;
+    public RegisterTable findRegisterByNumber(int tableNumber) {
+        return registerView.byNumber.get(Math.max(0, tableNumber));
     }
 
-    public synchronized boolean isRegisterTableDisconnected(int tableNumber) {
+    public boolean isRegisterTableDisconnected(int tableNumber) {
         RegisterTable t = findRegisterByNumber(tableNumber);
         return t != null && t.disconnected();
     }
 
-    public synchronized RegisterTable findRegisterById(String id) {
-        for (RegisterTable t : registerTables) {
-            if (t.id().equals(id)) {
-                return t;
-            }
-        }
-        return null;
+    public RegisterTable findRegisterById(String id) {
+        TableView<RegisterTable> view = registerView;
+        Integer pos = id == null ? null : view.posById.get(id);
+        return pos == null ? null : view.list.get(pos);
     }
 
     public synchronized boolean updateRegisterTable(String id, int tableNumber, String tableName, String difficulty,
             int players, List<PlayerInfo> playersInfo, String realityId, String realityName, boolean disconnected) {
-        for (int i = 0; i < registerTables.size(); i++) {
-            RegisterTable t = registerTables.get(i);
-            if (t.id().equals(id)) {
-                List<PlayerInfo> sanitized = sanitizeRegisterPlayers(playersInfo == null ? List.of() : playersInfo);
-                int tn = Math.max(0, tableNumber);
-                RegisterTable updated = new RegisterTable(
-                        t.id(),
-                        tn,
-                        tableName,
-                        difficulty,
-                        Math.max(0, players),
-                        sanitized,
-                        t.code(),
-                        t.createdAt(),
-                        t.avatar(),
-                        realityId,
-                        realityName,
-                        disconnected);
-                registerTables.set(i, updated);
-                return true;
-            }
+        TableView<RegisterTable> view = registerView;
+        Integer pos = id == null ? null : view.posById.get(id);
+        if (pos == null) {
+            return false;
         }
-        return false;
+        RegisterTable t = view.list.get(pos);
+        List<PlayerInfo> sanitized = sanitizeRegisterPlayers(playersInfo == null ? List.of() : playersInfo);
+        int tn = Math.max(0, tableNumber);
+        RegisterTable updated = new RegisterTable(
+                t.id(),
+                tn,
+                tableName,
+                difficulty,
+                Math.max(0, players),
+                sanitized,
+                t.code(),
+                t.createdAt(),
+                t.avatar(),
+                realityId,
+                realityName,
+                disconnected);
+        List<RegisterTable> next = new ArrayList<>(view.list);
+        next.set(pos, updated);
+        publishRegister(next);
+        fireRegisterChanged(t, updated);
+        journal.registerTableChanged(updated);
+        return true;
     }
 
     public synchronized boolean deleteRegisterTable(String id) {
-        return registerTables.removeIf(t -> t.id().equals(id));
+        boolean removed = removeRegister(id);
+        if (removed) {
+            journal.registerTableDeleted(id);
+        }
+        return removed;
     }
 
-    public synchronized List<FreeGameTable> listFreeGame() {
-        return Collections.unmodifiableList(new ArrayList<>(freeGameTables));
+    private boolean removeRegister(String id) {
+        List<RegisterTable> next = new ArrayList<>(registerView.list);
+        List<RegisterTable> removedTables = new ArrayList<>();
+        boolean removed = next.removeIf(t -> {
+            if (t.id().equals(id)) {
+                removedTables.add(t);
+                return true;
+            }
+            return false;
+        });
+        if (removed) {
+            publishRegister(next);
+            for (RegisterTable t : removedTables) {
+                fireRegisterChanged(t, null);
+            }
+        }
+        return removed;
     }
 
-    public synchronized FreeGameTable findFreeGameByNumber(int tableNumber) {
-        int tn = Math.max(0, tableNumber);
-        for (FreeGameTable t : freeGameTables) {
-            if (t.tableNumber() == tn)
-                return t;
-        }
-        return null;
+    /**
+     * Current free-game tables as an immutable snapshot.
+     */
+    public List<FreeGameTable> listFreeGame() {
+        return freeGameView.list;
+    }
+
+    public FreeGameTable findFreeGameByNumber(int tableNumber) {
+        return freeGameView.byNumber.get(Math.max(0, tableNumber));
     }
 
     public synchronized void restore(List<RegisterTable> reg, List<FreeGameTable> free) {
-        registerTables.clear();
-        freeGameTables.clear();
-        if (reg != null)
-            registerTables.addAll(reg);
-        if (free != null)
-            freeGameTables.addAll(free);
+        registerView = TableView.of(reg == null ? List.of() : reg,
+                RegisterTable::tableNumber, RegisterTable::id, RegisterTable::code);
+        freeGameView = TableView.of(free == null ? List.of() : free,
+                FreeGameTable::tableNumber, FreeGameTable::id, FreeGameTable::code);
+        version.incrementAndGet();
+        List<RegisterTable> current = registerView.list;
+        for (RegisterListener listener : registerListeners) {
+            listener.onRegisterReset(current);
+        }
     }
 
-    public synchronized boolean isRegisterTableNumberUsed(int tableNumber) {
-        int tn = Math.max(0, tableNumber);
-        return registerTables.stream().anyMatch(t -> t.tableNumber() == tn);
+    public boolean isRegisterTableNumberUsed(int tableNumber) {
+        return registerView.byNumber.containsKey(Math.max(0, tableNumber));
     }
 
-    public synchronized boolean isFreeGameTableNumberUsed(int tableNumber) {
-        int tn = Math.max(0, tableNumber);
-        return freeGameTables.stream().anyMatch(t -> t.tableNumber() == tn);
+    public boolean isFreeGameTableNumberUsed(int tableNumber) {
+        return freeGameView.byNumber.containsKey(Math.max(0, tableNumber));
     }
 
-    public synchronized List<String> getRegisterCharacters() {
-        return Collections.unmodifiableList(new ArrayList<>(registerCharacters));
+    public List<String> getRegisterCharacters() {
+        return registerCharacters;
     }
 
-    public synchronized List<String> getRegisterAspects() {
-        return Collections.unmodifiableList(new ArrayList<>(registerAspects));
+    public List<String> getRegisterAspects() {
+        return registerAspects;
     }
 
-    public synchronized List<String> getRegisterSpiderwomanAspects() {
-        return Collections.unmodifiableList(new ArrayList<>(registerSpiderwomanAspects));
+    public List<String> getRegisterSpiderwomanAspects() {
+        return registerSpiderwomanAspects;
     }
 
-    public synchronized boolean isEventQrEnabled() {
+    public boolean isEventQrEnabled() {
         return eventQrEnabled;
     }
 
-    public synchronized boolean isFreegameQrEnabled() {
+    public boolean isFreegameQrEnabled() {
         return freegameQrEnabled;
     }
 
     public synchronized void setEventQrEnabled(boolean enabled) {
         this.eventQrEnabled = enabled;
+        version.incrementAndGet();
+        journal.qrFlagsChanged(eventQrEnabled, freegameQrEnabled);
     }
 
     public synchronized void setFreegameQrEnabled(boolean enabled) {
         this.freegameQrEnabled = enabled;
+        version.incrementAndGet();
+        journal.qrFlagsChanged(eventQrEnabled, freegameQrEnabled);
+    }
+
+    // --- Journal replay: apply recorded tables without journaling them again ---
+
+    public synchronized void replayRegister(RegisterTable table) {
+        if (table == null || table.id() == null) {
+            return;
+        }
+        TableView<RegisterTable> view = registerView;
+        Integer pos = view.posById.get(table.id());
+        List<RegisterTable> next = new ArrayList<>(view.list);
+        RegisterTable before = null;
+        if (pos == null) {
+            next.add(table);
+        } else {
+            before = next.set(pos, table);
+        }
+        publishRegister(next);
+        fireRegisterChanged(before, table);
+    }
+
+    public synchronized void replayRegisterDelete(String id) {
+        if (id != null) {
+            removeRegister(id);
+        }
+    }
+
+    public synchronized void replayFreeGame(FreeGameTable table) {
+        if (table == null || table.id() == null) {
+            return;
+        }
+        TableView<FreeGameTable> view = freeGameView;
+        Integer pos = view.posById.get(table.id());
+        List<FreeGameTable> next = new ArrayList<>(view.list);
+        if (pos == null) {
+            next.add(table);
+        } else {
+            next.set(pos, table);
+        }
+        publishFreeGame(next);
+    }
+
+    private void publishRegister(List<RegisterTable> tables) {
+        registerView = TableView.of(tables, RegisterTable::tableNumber, RegisterTable::id, RegisterTable::code);
+        version.incrementAndGet();
+    }
+
+    private void fireRegisterChanged(RegisterTable before, RegisterTable after) {
+        for (RegisterListener listener : registerListeners) {
+            listener.onRegisterChanged(before, after);
+        }
+    }
+
+    private void publishFreeGame(List<FreeGameTable> tables) {
+        freeGameView = TableView.of(tables, FreeGameTable::tableNumber, FreeGameTable::id, FreeGameTable::code);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Immutable table list plus its lookup indexes. Number lookups keep
+     * first-match semantics in case a restored backup has duplicate numbers.
+     */
+    private static final class TableView<T> {
+        private static final TableView<?> EMPTY = new TableView<>(List.of(), Map.of(), Map.of(), Map.of());
+
+        final List<T> list;
+        final Map<Integer, T> byNumber;
+        final Map<String, Integer> posById;
+        final Map<String, T> byCode;
+
+        private TableView(List<T> list, Map<Integer, T> byNumber, Map<String, Integer> posById,
+                Map<String, T> byCode) {
+            this.list = list;
+            this.byNumber = byNumber;
+            this.posById = posById;
+            this.byCode = byCode;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> TableView<T> empty() {
+            return (TableView<T>) EMPTY;
+        }
+
+        static <T> TableView<T> of(List<T> source, ToIntFunction<T> number, Function<T, String> id,
+                Function<T, String> code) {
+            List<T> list = new ArrayList<>(source.size());
+            Map<Integer, T> byNumber = new HashMap<>();
+            Map<String, Integer> posById = new HashMap<>();
+            Map<String, T> byCode = new HashMap<>();
+            for (T t : source) {
+                if (t == null) {
+                    continue;
+                }
+                int pos = list.size();
+                list.add(t);
+                byNumber.putIfAbsent(number.applyAsInt(t), t);
+                String tid = id.apply(t);
+                if (tid != null) {
+                    posById.putIfAbsent(tid, pos);
+                }
+                String tcode = code.apply(t);
+                if (tcode != null) {
+                    byCode.putIfAbsent(normalizeCode(tcode), t);
+                }
+            }
+            return new TableView<>(Collections.unmodifiableList(list), byNumber, posById, byCode);
+        }
+    }
+
+    private static String normalizeCode(String code) {
+        return code.trim().toUpperCase(Locale.ROOT);
     }
 
     private List<PlayerInfo> sanitizeRegisterPlayers(List<PlayerInfo> playersInfo) {
@@ -0,0 +1,104 @@
+package com.example.counter.service.dedup;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers recently applied client request ids so retried mesa deltas are
+ * applied only once.
+ * <p>
+ * Each mesa keeps its own insertion-ordered window bounded both by age
+ * ({@code dedup.window.ms}) and by size ({@code dedup.max.per.mesa}), so
+ * lookups and evictions are O(1) and memory stays bounded however long the
+ * event runs.
+ */
+@Service
+public class RequestDeduplicator {
+
+    private static final int GLOBAL_KEY = -1;
+
+    private final long windowMs;
+    private final int maxPerMesa;
+    private final Map<Integer, Window> windows = new ConcurrentHashMap<>();
+
+    public RequestDeduplicator(@Value("${dedup.window.ms:600000}") long windowMs,
+            @Value("${dedup.max.per.mesa:256}") int maxPerMesa) {
+        this.windowMs = Math.max(1000, windowMs);
+        this.maxPerMesa = Math.max(16, maxPerMesa);
+    }
+
+    /**
+     * Record a request and report whether it should be applied.
+     *
+     * @param mesaId mesa that sent the request, or null for global requests
+     * @param scope  operation name, so one client id can tag several calls
+     * @param uuid   client generated request id; requests without one are
+     *               always applied
+     * @return false if the same scope/uuid was already seen inside the window
+     */
+    public boolean firstSeen(Integer mesaId, String scope, String uuid) {
+        if (uuid == null || uuid.isBlank()) {
+            return true;
+        }
+        String key = (scope == null ? "" : scope) + ':' + uuid.trim();
+        Window window = windows.computeIfAbsent(mesaId == null ? GLOBAL_KEY : mesaId, k -> new Window(maxPerMesa));
+        long now = System.currentTimeMillis();
+        synchronized (window) {
+            window.evictOlderThan(now - windowMs);
+            if (window.containsKey(key)) {
+                return false;
+            }
+            window.put(key, now);
+            return true;
+        }
+    }
+
+    /**
+     * Drop a recorded request id, e.g. when applying it failed and the client
+     * should be allowed to retry.
+     */
+    public void forget(Integer mesaId, String scope, String uuid) {
+        if (uuid == null || uuid.isBlank()) {
+            return;
+        }
+        Window window = windows.get(mesaId == null ? GLOBAL_KEY : mesaId);
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            window.remove((scope == null ? "" : scope) + ':' + uuid.trim());
+        }
+    }
+
+    public void clear() {
+        windows.clear();
+    }
+
+    private static final class Window extends LinkedHashMap<String, Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        private Window(int maxEntries) {
+            super(32, 0.75f, false);
+            this.maxEntries = maxEntries;
+        }
+
+        private void evictOlderThan(long cutoff) {
+            Iterator<Long> it = values().iterator();
+            while (it.hasNext() && it.next() < cutoff) {
+                it.remove();
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
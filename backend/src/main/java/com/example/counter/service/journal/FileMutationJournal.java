@@ -0,0 +1,530 @@
+package com.example.counter.service.journal;
+
+import com.example.counter.service.mesa.MesaCounterService.AvatarDefeat;
+import com.example.counter.service.mesa.MesaCounterService.SpecialDefeat;
+import com.example.counter.service.mesa.MesaCounterService.TotalesMesa;
+import com.example.counter.service.model.CounterState;
+import com.example.counter.service.model.FreeGameTable;
+import com.example.counter.service.model.RegisterTable;
+import com.example.counter.service.sector.SectorService.MesaIndicators;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Append-only journal of state mutations, stored as JSON lines in
+ * {@code journal-<n>.log} segments next to the snapshots.
+ * <p>
+ * Request threads only enqueue an entry. A single writer thread drains
+ * everything queued so far, writes it in one call and fsyncs once (group
+ * commit), so a burst of mutations costs one sync. Callers do not wait for
+ * that sync: a change acknowledged to the client is only durable once the
+ * next group commit lands, so a crash loses at most the last
+ * {@code journal.flush.ms} plus one write of changes. A batch that fails to
+ * write stays queued and is retried. The snapshot service
+ * rotates to a new segment before capturing state and deletes the older
+ * segments once the snapshot is on disk; on startup the remaining segments
+ * are replayed over the latest snapshot.
+ */
+@Service
+public class FileMutationJournal implements MutationJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(FileMutationJournal.class);
+
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".log";
+    // Entries recorded before open() are kept so startup traffic is not lost,
+    // but only up to this many.
+    private static final int MAX_PENDING_BEFORE_OPEN = 100_000;
+    // Pause before retrying a batch that failed to write
+    private static final long RETRY_MS = 1000;
+
+    public static final String COUNTER = "counter";
+    public static final String MESA_TOTALS = "mesa";
+    public static final String AVATAR_DEFEAT = "avatar-defeat";
+    public static final String SPECIAL_DEFEAT = "special-defeat";
+    public static final String MESA_CLEAR = "mesa-clear";
+    public static final String SECTOR = "sector";
+    public static final String REGISTER = "register";
+    public static final String REGISTER_DELETE = "register-delete";
+    public static final String FREEGAME = "freegame";
+    public static final String QR = "qr";
+
+    /**
+     * One journal line as read back during replay.
+     */
+    public static class Record {
+        public final long seq;
+        public final String type;
+        public final String key;
+        public final JsonNode value;
+
+        Record(long seq, String type, String key, JsonNode value) {
+            this.seq = seq;
+            this.type = type;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Entry {
+        final String type;
+        final String key;
+        final Object value;
+        final Supplier<?> source;
+
+        Entry(String type, String key, Object value, Supplier<?> source) {
+            this.type = type;
+            this.key = key;
+            this.value = value;
+            this.source = source;
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final boolean enabled;
+    private final long flushMs;
+    private final ThreadLocal<Boolean> suppressed = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final Object lock = new Object();
+    private List<Entry> pending = new ArrayList<>();
+    private boolean counterPending;
+    private boolean open;
+    private boolean running;
+
+    // Segment state, guarded by writeLock. Taking the pending batch while
+    // holding it keeps entries in order across rotations.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private Path dir;
+    private FileChannel channel;
+    private long segment;
+    private long seq;
+    private Thread writer;
+
+    public FileMutationJournal(@Value("${journal.enabled:true}") boolean enabled,
+            @Value("${journal.flush.ms:20}") long flushMs) {
+        this.enabled = enabled;
+        this.flushMs = Math.max(0, flushMs);
+    }
+
+    // --- MutationJournal ---
+
+    @Override
+    public void counterChanged(Supplier<CounterState> current) {
+        if (!accepting()) {
+            return;
+        }
+        synchronized (lock) {
+            // One pending counter entry is enough: it reads the latest state
+            if (!counterPending) {
+                counterPending = true;
+                enqueue(new Entry(COUNTER, null, null, current));
+            }
+        }
+    }
+
+    @Override
+    public void mesaTotalsChanged(int mesaId, TotalesMesa totals) {
+        record(MESA_TOTALS, String.valueOf(mesaId), totals);
+    }
+
+    @Override
+    public void avatarDefeatAdded(AvatarDefeat defeat) {
+        record(AVATAR_DEFEAT, null, defeat);
+    }
+
+    @Override
+    public void specialDefeatAdded(SpecialDefeat defeat) {
+        record(SPECIAL_DEFEAT, null, defeat);
+    }
+
+    @Override
+    public void mesaCountersCleared() {
+        record(MESA_CLEAR, null, null);
+    }
+
+    @Override
+    public void sectorIndicatorsChanged(int mesaId, MesaIndicators indicators) {
+        record(SECTOR, String.valueOf(mesaId), indicators);
+    }
+
+    @Override
+    public void registerTableChanged(RegisterTable table) {
+        record(REGISTER, table.id(), table);
+    }
+
+    @Override
+    public void registerTableDeleted(String id) {
+        record(REGISTER_DELETE, id, null);
+    }
+
+    @Override
+    public void freeGameTableChanged(FreeGameTable table) {
+        record(FREEGAME, table.id(), table);
+    }
+
+    @Override
+    public void qrFlagsChanged(boolean eventEnabled, boolean freegameEnabled) {
+        record(QR, null, Map.of("event", eventEnabled, "freegame", freegameEnabled));
+    }
+
+    // --- Lifecycle, used by the snapshot service ---
+
+    /**
+     * Run {@code action} without journaling the mutations it performs on this
+     * thread. Used while applying snapshots and replaying the journal itself.
+     */
+    public void withoutRecording(Runnable action) {
+        boolean previous = suppressed.get();
+        suppressed.set(Boolean.TRUE);
+        try {
+            action.run();
+        } finally {
+            suppressed.set(previous);
+        }
+    }
+
+    /**
+     * Start writing into a fresh segment in {@code directory}. Existing
+     * segments are left untouched for {@link #replay}.
+     *
+     * @return index of the new segment, or -1 if journaling is disabled
+     */
+    public long open(Path directory) throws IOException {
+        if (!enabled) {
+            return -1;
+        }
+        writeLock.lock();
+        try {
+            if (channel != null) {
+                return segment;
+            }
+            dir = directory;
+            Files.createDirectories(dir);
+            long last = 0;
+            for (long index : segmentIndexes(dir)) {
+                last = Math.max(last, index);
+            }
+            openSegment(last + 1);
+        } finally {
+            writeLock.unlock();
+        }
+        synchronized (lock) {
+            open = true;
+            running = true;
+            writer = new Thread(this::writeLoop, "journal-writer");
+            writer.setDaemon(true);
+            writer.start();
+            lock.notifyAll();
+        }
+        log.info("Journal open at {} (segment {}, flush.ms={})", dir, segment, flushMs);
+        return segment;
+    }
+
+    /**
+     * Flush everything queued so far, close the current segment and continue
+     * in a new one. Entries recorded before this call end up in segments with
+     * an index lower or equal to the returned one.
+     *
+     * @return index of the closed segment, or -1 if the journal is not open
+     */
+    public long rotate() throws IOException {
+        writeLock.lock();
+        try {
+            if (channel == null) {
+                return -1;
+            }
+            writeBatch(takePending());
+            long closed = segment;
+            channel.close();
+            channel = null;
+            openSegment(closed + 1);
+            return closed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Delete segments up to and including {@code index}, once a snapshot
+     * covering them is safely on disk.
+     */
+    public void deleteSegmentsUpTo(Path directory, long index) {
+        if (index < 0) {
+            return;
+        }
+        for (long i : segmentIndexes(directory)) {
+            if (i <= index) {
+                try {
+                    Files.deleteIfExists(segmentPath(directory, i));
+                } catch (IOException e) {
+                    log.warn("Cannot delete journal segment {}: {}", i, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Feed every record of the segments in {@code directory} with an index
+     * lower than {@code belowSegment} to {@code consumer}, oldest first. A
+     * torn last line from a crash ends that segment's replay.
+     *
+     * @return number of records replayed
+     */
+    public int replay(Path directory, long belowSegment, Consumer<Record> consumer) {
+        int count = 0;
+        for (long index : segmentIndexes(directory)) {
+            if (belowSegment >= 0 && index >= belowSegment) {
+                continue;
+            }
+            Path file = segmentPath(directory, index);
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    Record record;
+                    try {
+                        JsonNode node = objectMapper.readTree(line);
+                        record = new Record(node.path("seq").asLong(), node.path("t").asText(null),
+                                node.hasNonNull("k") ? node.get("k").asText() : null, node.get("v"));
+                    } catch (IOException e) {
+                        log.warn("Journal segment {} truncated: {}", file.getFileName(), e.getMessage());
+                        break;
+                    }
+                    consumer.accept(record);
+                    count++;
+                }
+            } catch (IOException e) {
+                log.warn("Cannot read journal segment {}: {}", file.getFileName(), e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Thread w;
+        synchronized (lock) {
+            running = false;
+            w = writer;
+            lock.notifyAll();
+        }
+        if (w != null) {
+            try {
+                w.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writeLock.lock();
+        try {
+            if (channel != null) {
+                writeBatch(takePending());
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            log.warn("Journal close failed: {}", e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // --- internals ---
+
+    private boolean accepting() {
+        return enabled && !suppressed.get();
+    }
+
+    private void record(String type, String key, Object value) {
+        if (!accepting()) {
+            return;
+        }
+        synchronized (lock) {
+            enqueue(new Entry(type, key, value, null));
+        }
+    }
+
+    // Caller holds lock
+    private void enqueue(Entry entry) {
+        if (!open && pending.size() >= MAX_PENDING_BEFORE_OPEN) {
+            return;
+        }
+        pending.add(entry);
+        if (pending.size() == 1) {
+            lock.notifyAll();
+        }
+    }
+
+    // Puts a batch that could not be written back ahead of anything queued since
+    private void requeue(List<Entry> batch) {
+        synchronized (lock) {
+            List<Entry> merged = new ArrayList<>(batch.size() + pending.size());
+            merged.addAll(batch);
+            merged.addAll(pending);
+            pending = merged;
+            for (Entry entry : batch) {
+                counterPending |= COUNTER.equals(entry.type);
+            }
+        }
+    }
+
+    private List<Entry> takePending() {
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return List.of();
+            }
+            List<Entry> batch = pending;
+            pending = new ArrayList<>();
+            counterPending = false;
+            return batch;
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            synchronized (lock) {
+                while (running && pending.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+            }
+            long pause = flushMs;
+            writeLock.lock();
+            try {
+                if (channel != null) {
+                    writeBatch(takePending());
+                }
+            } catch (IOException e) {
+                log.warn("Journal write failed, retrying in {} ms: {}", RETRY_MS, e.getMessage());
+                pause = Math.max(flushMs, RETRY_MS);
+            } finally {
+                writeLock.unlock();
+            }
+            if (pause > 0) {
+                // Let the next group accumulate before the next fsync
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Caller holds writeLock. If the write or the fsync fails the segment is
+    // cut back to where the batch started and the batch is queued again, so
+    // the retry neither loses nor duplicates entries.
+    private void writeBatch(List<Entry> batch) throws IOException {
+        if (batch.isEmpty() || channel == null) {
+            return;
+        }
+        long firstSeq = seq;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(batch.size() * 128);
+        for (Entry entry : batch) {
+            Object value = entry.source != null ? entry.source.get() : entry.value;
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            try (JsonGenerator gen = objectMapper.getFactory().createGenerator(line)) {
+                gen.writeStartObject();
+                gen.writeNumberField("seq", seq + 1);
+                gen.writeStringField("t", entry.type);
+                if (entry.key != null) {
+                    gen.writeStringField("k", entry.key);
+                }
+                if (value != null) {
+                    gen.writeFieldName("v");
+                    objectMapper.writeValue(gen, value);
+                }
+                gen.writeEndObject();
+            } catch (IOException e) {
+                // Retrying would fail the same way
+                log.warn("Dropping unserializable journal entry {}: {}", entry.type, e.getMessage());
+                continue;
+            }
+            seq++;
+            line.writeTo(buf);
+            buf.write('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(buf.toByteArray());
+        long start = channel.size();
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            seq = firstSeq;
+            requeue(batch);
+            try {
+                channel.truncate(start);
+            } catch (IOException t) {
+                e.addSuppressed(t);
+            }
+            throw e;
+        }
+    }
+
+    // Caller holds writeLock
+    private void openSegment(long index) throws IOException {
+        segment = index;
+        channel = FileChannel.open(segmentPath(dir, index), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static Path segmentPath(Path directory, long index) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private static List<Long> segmentIndexes(Path directory) {
+        List<Long> indexes = new ArrayList<>();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return indexes;
+        }
+        try (var s = Files.list(directory)) {
+            s.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(SEGMENT_PREFIX) && n.endsWith(SEGMENT_SUFFIX))
+                    .forEach(n -> {
+                        try {
+                            indexes.add(Long.parseLong(
+                                    n.substring(SEGMENT_PREFIX.length(), n.length() - SEGMENT_SUFFIX.length())));
+                        } catch (NumberFormatException ignored) {
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("Cannot list journal segments in {}: {}", directory, e.getMessage());
+        }
+        indexes.sort(Comparator.naturalOrder());
+        return indexes;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.counter.service.journal;
+
+import com.example.counter.service.mesa.MesaCounterService.AvatarDefeat;
+import com.example.counter.service.mesa.MesaCounterService.SpecialDefeat;
+import com.example.counter.service.mesa.MesaCounterService.TotalesMesa;
+import com.example.counter.service.model.CounterState;
+import com.example.counter.service.model.FreeGameTable;
+import com.example.counter.service.model.RegisterTable;
+import com.example.counter.service.sector.SectorService.MesaIndicators;
+
+import java.util.function.Supplier;
+
+/**
+ * Receives every state mutation so it can be made durable between snapshots.
+ * <p>
+ * Entries carry the state <em>after</em> the change (or the appended event),
+ * never a delta, so replaying the tail of the journal over a snapshot that
+ * already contains some of it is harmless. Callers hand over objects that are
+ * not mutated afterwards; implementations must not block the caller.
+ */
+public interface MutationJournal {
+
+    MutationJournal NOOP = new MutationJournal() {
+    };
+
+    /**
+     * The global counters changed. The supplier is read when the entry is
+     * written, so the journal always ends with the newest value even when
+     * concurrent updates notify out of order.
+     */
+    default void counterChanged(Supplier<CounterState> current) {
+    }
+
+    default void mesaTotalsChanged(int mesaId, TotalesMesa totals) {
+    }
+
+    default void avatarDefeatAdded(AvatarDefeat defeat) {
+    }
+
+    default void specialDefeatAdded(SpecialDefeat defeat) {
+    }
+
+    default void mesaCountersCleared() {
+    }
+
+    default void sectorIndicatorsChanged(int mesaId, MesaIndicators indicators) {
+    }
+
+    default void registerTableChanged(RegisterTable table) {
+    }
+
+    default void registerTableDeleted(String id) {
+    }
+
+    default void freeGameTableChanged(FreeGameTable table) {
+    }
+
+    default void qrFlagsChanged(boolean eventEnabled, boolean freegameEnabled) {
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.counter.service.mesa;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned avatar names. Each distinct name gets a small code the first time
+ * it is seen, and whether it is a special avatar (Mangog, the Portal) is
+ * worked out once for it; defeat logs store the code instead of the string.
+ * <p>
+ * Known names are looked up without locking; a new name takes this object's
+ * lock to get its code. Codes are resolved back to names from any thread
+ * without locking.
+ */
+final class AvatarNames {
+    static final int NONE = -1;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    // Published before any log entry holding the new code
+    private volatile String[] names = new String[32];
+    private volatile String[] specialKeys = new String[32];
+    private int count;
+
+    AvatarNames(String... preset) {
+        for (String name : preset) {
+            code(name);
+        }
+    }
+
+    /** Code of {@code name}, assigning one if it is new; {@link #NONE} for null. */
+    int code(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer known = codes.get(name);
+        return known != null ? known : assign(name);
+    }
+
+    private synchronized int assign(String name) {
+        Integer known = codes.get(name);
+        if (known != null) {
+            return known;
+        }
+        int code = count;
+        String[] n = names;
+        String[] k = specialKeys;
+        if (code == n.length) {
+            n = Arrays.copyOf(n, code * 2);
+            k = Arrays.copyOf(k, code * 2);
+        }
+        n[code] = name;
+        k[code] = specialKeyOf(name);
+        specialKeys = k;
+        names = n;
+        count = code + 1;
+        codes.put(name, code);
+        return code;
+    }
+
+    String name(int code) {
+        return code == NONE ? null : names[code];
+    }
+
+    boolean isSpecial(int code) {
+        return code != NONE && specialKeys[code] != null;
+    }
+
+    /** Key of a special avatar ("mangog", "portal"), or "special" for any other name. */
+    String specialKey(int code) {
+        String key = code == NONE ? null : specialKeys[code];
+        return key == null ? "special" : key;
+    }
+
+    private static String specialKeyOf(String name) {
+        String normalized = name.trim().toLowerCase();
+        if ("mangog".equals(normalized))
+            return "mangog";
+        if ("portal entre dos mundos".equals(normalized))
+            return "portal";
+        return null;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.counter.service.mesa;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Append-only log of defeats, stored column by column in primitive arrays
+ * (mesa, mesa number, name code, key code, ruptura, timestamp, ready flag):
+ * 32 bytes per event, with no object or string kept per entry.
+ * <p>
+ * Columns live in fixed-size chunks that never move, so a view only needs the
+ * chunk table and the size at the time it was taken. Appends can run from
+ * several threads at once without a lock: each writer claims a slot with an
+ * atomic increment, fills it in and marks it ready, then moves the published
+ * size past every ready slot, so whichever writer completes the prefix
+ * publishes it and no writer ever waits for another. Readers only see that
+ * complete prefix. Views can be read from any thread without locking and
+ * build each element on access through the {@link Decoder}. Each entry has a
+ * sequence number, {@link #firstSeq()} plus its index, so readers can
+ * page through the log with a cursor.
+ */
+public final class DefeatLog<T> {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    @FunctionalInterface
+    public interface Decoder<T> {
+        T decode(int mesaId, int mesaNumber, int name, int key, int ruptura, long timestamp);
+    }
+
+    private static final class Chunk {
+        final int[] mesaId = new int[CHUNK_SIZE];
+        final int[] mesaNumber = new int[CHUNK_SIZE];
+        final int[] name = new int[CHUNK_SIZE];
+        final int[] key = new int[CHUNK_SIZE];
+        final int[] ruptura = new int[CHUNK_SIZE];
+        final long[] timestamp = new long[CHUNK_SIZE];
+        final AtomicIntegerArray ready = new AtomicIntegerArray(CHUNK_SIZE);
+    }
+
+    private final long firstSeq;
+    private final Decoder<T> decoder;
+    private final AtomicInteger claimed = new AtomicInteger();
+    // Grown under this object's lock, once per chunk
+    private volatile AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(4);
+    // Advanced past ready entries only: readers never see a half-added one
+    private final AtomicInteger size = new AtomicInteger();
+
+    public DefeatLog(long firstSeq, Decoder<T> decoder) {
+        this.firstSeq = firstSeq;
+        this.decoder = decoder;
+    }
+
+    /** Safe to call from several threads at once. */
+    public void add(int mesaId, int mesaNumber, int name, int key, int ruptura, long timestamp) {
+        int index = claimed.getAndIncrement();
+        Chunk chunk = chunk(index >>> CHUNK_BITS);
+        int i = index & CHUNK_MASK;
+        chunk.mesaId[i] = mesaId;
+        chunk.mesaNumber[i] = mesaNumber;
+        chunk.name[i] = name;
+        chunk.key[i] = key;
+        chunk.ruptura[i] = ruptura;
+        chunk.timestamp[i] = timestamp;
+        chunk.ready.set(i, 1);
+        publish();
+    }
+
+    // Whoever marks the slot right after the published size moves it along,
+    // also past later slots other writers finished first
+    private void publish() {
+        int n;
+        while (isReady(n = size.get())) {
+            size.compareAndSet(n, n + 1);
+        }
+    }
+
+    private boolean isReady(int index) {
+        AtomicReferenceArray<Chunk> table = chunks;
+        int c = index >>> CHUNK_BITS;
+        if (c >= table.length()) {
+            return false;
+        }
+        Chunk chunk = table.get(c);
+        return chunk != null && chunk.ready.get(index & CHUNK_MASK) == 1;
+    }
+
+    private Chunk chunk(int c) {
+        AtomicReferenceArray<Chunk> table = chunks;
+        Chunk chunk = c < table.length() ? table.get(c) : null;
+        return chunk != null ? chunk : addChunk(c);
+    }
+
+    private synchronized Chunk addChunk(int c) {
+        AtomicReferenceArray<Chunk> table = chunks;
+        if (c >= table.length()) {
+            AtomicReferenceArray<Chunk> bigger = new AtomicReferenceArray<>(Math.max(c + 1, table.length() * 2));
+            for (int k = 0; k < table.length(); k++) {
+                bigger.lazySet(k, table.get(k));
+            }
+            table = bigger;
+        }
+        Chunk chunk = table.get(c);
+        if (chunk == null) {
+            chunk = new Chunk();
+            table.set(c, chunk);
+        }
+        chunks = table;
+        return chunk;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long firstSeq() {
+        return firstSeq;
+    }
+
+    /** Sequence number of the last entry, {@code firstSeq() - 1} if empty. */
+    public long lastSeq() {
+        return firstSeq + size.get() - 1;
+    }
+
+    /**
+     * The entries added so far, oldest first, as an immutable list unaffected
+     * by later appends.
+     */
+    public List<T> view() {
+        int n = size.get();
+        return new View<>(chunks, n, decoder, false);
+    }
+
+    /** Like {@link #view()}, newest first. */
+    public List<T> viewLatestFirst() {
+        int n = size.get();
+        return new View<>(chunks, n, decoder, true);
+    }
+
+    /**
+     * Up to {@code limit} entries with a sequence number above {@code seq},
+     * oldest first, as an immutable view. {@code seq} must be within
+     * {@code [firstSeq() - 1, lastSeq()]}.
+     */
+    public List<T> after(long seq, int limit) {
+        List<T> all = view();
+        int from = (int) (seq - firstSeq + 1);
+        if (from < 0 || from > all.size()) {
+            throw new IllegalArgumentException("seq " + seq + " outside the log");
+        }
+        return all.subList(from, (int) Math.min(all.size(), from + (long) Math.max(0, limit)));
+    }
+
+    private static final class View<T> extends AbstractList<T> implements RandomAccess {
+        private final AtomicReferenceArray<Chunk> chunks;
+        private final int size;
+        private final Decoder<T> decoder;
+        private final boolean reversed;
+
+        View(AtomicReferenceArray<Chunk> chunks, int size, Decoder<T> decoder, boolean reversed) {
+            this.chunks = chunks;
+            this.size = size;
+            this.decoder = decoder;
+            this.reversed = reversed;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            int at = reversed ? size - 1 - index : index;
+            Chunk c = chunks.get(at >>> CHUNK_BITS);
+            int i = at & CHUNK_MASK;
+            return decoder.decode(c.mesaId[i], c.mesaNumber[i], c.name[i], c.key[i], c.ruptura[i], c.timestamp[i]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.counter.service.mesa;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The hero roster offered at registration. Roster heroes have ids 0..n-1 in
+ * roster order, used to count hero defeats per mesa in a plain array; names
+ * outside the roster have no id and are counted by name instead. The roster
+ * is fixed, so lookups need no locking.
+ */
+public final class HeroRoster {
+    public static final int NONE = -1;
+
+    public static final List<String> CHARACTERS = List.of(
+            "Spiderman (Peter Parker)",
+            "Capitana Marvel",
+            "Hulka",
+            "Iron Man",
+            "Pantera Negra (T'Challa)",
+            "Capitán América",
+            "Ms. Marvel",
+            "Thor",
+            "Viuda Negra",
+            "Dr. Extraño",
+            "Hulk",
+            "Ojo de Halcón",
+            "Spiderwoman",
+            "Hombre Hormiga",
+            "Avispa",
+            "Mercurio",
+            "Bruja Escarlata",
+            "Groot",
+            "Mapache Cohete",
+            "Starlord",
+            "Gamora",
+            "Drax",
+            "Veneno",
+            "Spectrum",
+            "Adam Warlock",
+            "Nébula",
+            "Máquina de Guerra",
+            "Valquiria",
+            "Vision",
+            "Ghost-Spider",
+            "Spiderman (Miles Morales)",
+            "Nova",
+            "Ironheart",
+            "Spidercerdo",
+            "SP//dr",
+            "Coloso",
+            "Gatasombra",
+            "Cíclope",
+            "Fénix",
+            "Lobezno",
+            "Tormenta",
+            "Gambito",
+            "Pícara",
+            "Cable",
+            "Dominó",
+            "Mariposa Mental",
+            "Ángel",
+            "X-23",
+            "Masacre",
+            "Bishop",
+            "Magik",
+            "Hombre de Hielo",
+            "Júbilo",
+            "Rondador Nocturno",
+            "Magneto",
+            "María Hill",
+            "Nick Furia",
+            "Pantera Negra (Shuri)",
+            "Seda",
+            "Halcón",
+            "Soldado de Invierno",
+            "Tigra",
+            "Hulkling",
+            "Hércules",
+            "Hombre Maravilla");
+
+    private static final Map<String, Integer> IDS = index();
+
+    private HeroRoster() {
+    }
+
+    /** Roster id of {@code name}, or {@link #NONE} if it is not a roster hero. */
+    static int id(String name) {
+        Integer id = name == null ? null : IDS.get(name);
+        return id == null ? NONE : id;
+    }
+
+    static String name(int id) {
+        return CHARACTERS.get(id);
+    }
+
+    static int size() {
+        return CHARACTERS.size();
+    }
+
+    private static Map<String, Integer> index() {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < CHARACTERS.size(); i++) {
+            ids.putIfAbsent(CHARACTERS.get(i), i);
+        }
+        return Map.copyOf(ids);
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.counter.service.mesa;
+
+import com.example.counter.service.TablesService;
+import com.example.counter.service.mesa.MesaCounterService.TotalesMesa;
+import com.example.counter.service.model.RegisterTable;
+import com.example.counter.service.sector.SectorTopology;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Event-wide totals for the admin dashboard: per mesa (with its table name,
+ * reality and sector), per sector, per reality, global, and a hero defeat
+ * leaderboard.
+ * <p>
+ * Totals are kept up to date from {@link MesaCounterService} and
+ * {@link TablesService} notifications, applying the difference between a
+ * mesa's old and new totals instead of summing every mesa again. Readers get
+ * an immutable {@link Aggregates} that is shared until something changes and
+ * then rebuilt from the running sums, copying only the mesas that changed.
+ * <p>
+ * Totals changes arrive concurrently from different mesas; they are only
+ * parked in {@link #pending} without locking and folded into the sums on the
+ * next {@link #get()}, so the listener never serializes event recording.
+ */
+@Service
+public class MesaAggregateService implements MesaCounterService.TotalsListener, TablesService.RegisterListener {
+
+    public static class Totals {
+        public int mesas; // Mesas with any totals
+        public int avatar0;
+        public int avatar1;
+        public int avatar2;
+        public int avatar3;
+        public int rupturaTotal;
+        public int threatFromHeroes;
+        public int threatFromPlan;
+        public int heroDefeats;
+
+        private void add(TotalesMesa t, int sign) {
+            mesas += sign;
+            avatar0 += sign * t.avatar0;
+            avatar1 += sign * t.avatar1;
+            avatar2 += sign * t.avatar2;
+            avatar3 += sign * t.avatar3;
+            rupturaTotal += sign * t.rupturaTotal;
+            threatFromHeroes += sign * t.threatFromHeroes;
+            threatFromPlan += sign * t.threatFromPlan;
+            for (int count : t.heroCounts) {
+                heroDefeats += sign * count;
+            }
+            for (int count : t.otherHeroes.values()) {
+                heroDefeats += sign * count;
+            }
+        }
+
+        private boolean isEmpty() {
+            return mesas == 0;
+        }
+
+        private Totals copy() {
+            Totals c = new Totals();
+            c.mesas = mesas;
+            c.avatar0 = avatar0;
+            c.avatar1 = avatar1;
+            c.avatar2 = avatar2;
+            c.avatar3 = avatar3;
+            c.rupturaTotal = rupturaTotal;
+            c.threatFromHeroes = threatFromHeroes;
+            c.threatFromPlan = threatFromPlan;
+            c.heroDefeats = heroDefeats;
+            return c;
+        }
+    }
+
+    public static class HeroCount {
+        public final String hero;
+        public final int defeats;
+
+        public HeroCount(String hero, int defeats) {
+            this.hero = hero;
+            this.defeats = defeats;
+        }
+    }
+
+    /**
+     * One consistent view of all the aggregates. Shared between requests:
+     * callers must not modify it.
+     */
+    public static final class Aggregates {
+        public final long version; // Bumped on every rebuild, so each distinct body has its own
+        public final Map<Integer, TotalesMesa> mesas;
+        public final Totals global;
+        public final Map<Integer, Totals> sectors;
+        public final Map<String, Totals> realities; // Mesas of unregistered tables are left out
+        public final List<HeroCount> heroLeaderboard; // Most defeated first
+
+        private Aggregates(long version, Map<Integer, TotalesMesa> mesas, Totals global,
+                Map<Integer, Totals> sectors, Map<String, Totals> realities, List<HeroCount> heroLeaderboard) {
+            this.version = version;
+            this.mesas = mesas;
+            this.global = global;
+            this.sectors = sectors;
+            this.realities = realities;
+            this.heroLeaderboard = heroLeaderboard;
+        }
+    }
+
+    private final SectorTopology topology;
+    // Latest totals per mesa not yet folded into the sums
+    private final Map<Integer, TotalesMesa> pending = new ConcurrentHashMap<>();
+
+    // Guarded by this. Totals objects are the read-only copies handed out by
+    // MesaCounterService.
+    private final Map<Integer, TotalesMesa> totals = new HashMap<>();
+    private final Map<Integer, RegisterTable> tables = new HashMap<>();
+    private Totals global = new Totals();
+    private final Map<Integer, Totals> sectors = new HashMap<>();
+    private final Map<String, Totals> realities = new HashMap<>();
+    // Defeats per HeroRoster id, and by name for heroes outside the roster,
+    // across all mesas
+    private int[] heroes = new int[0];
+    private final Map<String, Integer> otherHeroes = new HashMap<>();
+    private final Set<Integer> dirtyMesas = new HashSet<>();
+    private boolean allDirty = true;
+    private boolean heroesDirty = true;
+    private Aggregates cached;
+    private long rebuilds;
+
+    public MesaAggregateService(MesaCounterService mesaService, TablesService tablesService, SectorTopology topology) {
+        this.topology = topology;
+        tablesService.addRegisterListener(this);
+        mesaService.addTotalsListener(this);
+    }
+
+    /** The current aggregates, rebuilt only if something changed since the last call. */
+    public synchronized Aggregates get() {
+        drainPending();
+        if (cached != null && !allDirty && dirtyMesas.isEmpty()) {
+            return cached;
+        }
+        Map<Integer, TotalesMesa> mesas = new TreeMap<>();
+        for (Map.Entry<Integer, TotalesMesa> e : totals.entrySet()) {
+            int mesaId = e.getKey();
+            TotalesMesa previous = allDirty || dirtyMesas.contains(mesaId) ? null : cached.mesas.get(mesaId);
+            mesas.put(mesaId, previous != null ? previous : enriched(mesaId, e.getValue()));
+        }
+        Map<Integer, Totals> sectorCopy = new TreeMap<>();
+        sectors.forEach((id, t) -> sectorCopy.put(id, t.copy()));
+        Map<String, Totals> realityCopy = new TreeMap<>();
+        realities.forEach((name, t) -> realityCopy.put(name, t.copy()));
+        List<HeroCount> leaderboard = heroesDirty || cached == null ? leaderboard() : cached.heroLeaderboard;
+
+        cached = new Aggregates(++rebuilds, Collections.unmodifiableMap(mesas), global.copy(),
+                Collections.unmodifiableMap(sectorCopy), Collections.unmodifiableMap(realityCopy), leaderboard);
+        dirtyMesas.clear();
+        allDirty = false;
+        heroesDirty = false;
+        return cached;
+    }
+
+    @Override
+    public void onTotalsChanged(int mesaId, TotalesMesa t) {
+        pending.put(mesaId, t);
+    }
+
+    // Resets come with every mesa stripe held, so no change races with them
+    @Override
+    public synchronized void onTotalsReset(Map<Integer, TotalesMesa> all) {
+        pending.clear();
+        totals.clear();
+        totals.putAll(all);
+        recompute();
+    }
+
+    @Override
+    public synchronized void onRegisterChanged(RegisterTable before, RegisterTable after) {
+        drainPending();
+        if (before != null) {
+            moveReality(before.tableNumber(), tables.get(before.tableNumber()), null);
+        }
+        if (after != null) {
+            moveReality(after.tableNumber(), tables.get(after.tableNumber()), after);
+        }
+    }
+
+    @Override
+    public synchronized void onRegisterReset(List<RegisterTable> list) {
+        tables.clear();
+        for (RegisterTable table : list) {
+            tables.put(table.tableNumber(), table);
+        }
+        recompute();
+    }
+
+    // Moves a mesa's totals from the reality of one table record to another's
+    private void moveReality(int mesaId, RegisterTable from, RegisterTable to) {
+        TotalesMesa t = totals.get(mesaId);
+        if (t != null) {
+            addReality(from, t, -1);
+            addReality(to, t, 1);
+        }
+        if (to == null) {
+            tables.remove(mesaId);
+        } else {
+            tables.put(mesaId, to);
+        }
+        dirtyMesas.add(mesaId);
+    }
+
+    private void recompute() {
+        global = new Totals();
+        sectors.clear();
+        realities.clear();
+        heroes = new int[0];
+        otherHeroes.clear();
+        for (Map.Entry<Integer, TotalesMesa> e : totals.entrySet()) {
+            apply(e.getKey(), e.getValue(), tables.get(e.getKey()), 1);
+        }
+        allDirty = true;
+        heroesDirty = true;
+    }
+
+    private void apply(int mesaId, TotalesMesa t, RegisterTable table, int sign) {
+        global.add(t, sign);
+        Totals sector = sectors.computeIfAbsent(topology.sectorOf(mesaId), id -> new Totals());
+        sector.add(t, sign);
+        if (sector.isEmpty()) {
+            sectors.remove(topology.sectorOf(mesaId));
+        }
+        addReality(table, t, sign);
+        int[] counts = t.heroCounts;
+        if (counts.length > 0) {
+            if (counts.length > heroes.length) {
+                heroes = Arrays.copyOf(heroes, counts.length);
+            }
+            for (int id = 0; id < counts.length; id++) {
+                heroes[id] += sign * counts[id];
+            }
+            heroesDirty = true;
+        }
+        if (!t.otherHeroes.isEmpty()) {
+            t.otherHeroes.forEach((hero, count) ->
+                    otherHeroes.merge(hero, sign * count, (a, b) -> a + b == 0 ? null : a + b));
+            heroesDirty = true;
+        }
+    }
+
+    private void addReality(RegisterTable table, TotalesMesa t, int sign) {
+        if (table == null || table.realityName() == null) {
+            return;
+        }
+        Totals reality = realities.computeIfAbsent(table.realityName(), name -> new Totals());
+        reality.add(t, sign);
+        if (reality.isEmpty()) {
+            realities.remove(table.realityName());
+        }
+    }
+
+    private void drainPending() {
+        for (Integer mesaId : pending.keySet()) {
+            TotalesMesa t = pending.remove(mesaId);
+            if (t == null) {
+                continue;
+            }
+            TotalesMesa before = totals.put(mesaId, t);
+            if (before != null) {
+                apply(mesaId, before, tables.get(mesaId), -1);
+            }
+            apply(mesaId, t, tables.get(mesaId), 1);
+            dirtyMesas.add(mesaId);
+        }
+    }
+
+    private TotalesMesa enriched(int mesaId, TotalesMesa t) {
+        TotalesMesa copy = MesaCounterService.copyTotales(t);
+        RegisterTable table = tables.get(mesaId);
+        if (table != null) {
+            copy.tableName = table.tableName();
+            copy.realityName = table.realityName();
+        }
+        copy.sectorId = topology.sectorOf(mesaId);
+        return copy;
+    }
+
+    private List<HeroCount> leaderboard() {
+        List<HeroCount> list = new ArrayList<>();
+        for (int id = 0; id < heroes.length; id++) {
+            if (heroes[id] != 0) {
+                list.add(new HeroCount(HeroRoster.name(id), heroes[id]));
+            }
+        }
+        otherHeroes.forEach((hero, count) -> list.add(new HeroCount(hero, count)));
+        list.sort((a, b) -> a.defeats != b.defeats ? Integer.compare(b.defeats, a.defeats) : a.hero.compareTo(b.hero));
+        return Collections.unmodifiableList(list);
+    }
+}
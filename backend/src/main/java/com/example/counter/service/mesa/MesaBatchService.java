@@ -0,0 +1,195 @@
+package com.example.counter.service.mesa;
+
+import com.example.counter.service.CounterService;
+import com.example.counter.service.TablesService;
+import com.example.counter.service.dedup.RequestDeduplicator;
+import com.example.counter.service.model.CounterState;
+import com.example.counter.service.sector.SectorService;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Applies a list of mesa actions in one request, e.g. an avatar defeat
+ * together with the matching primary counter reduction.
+ * <p>
+ * Every operation is validated before anything is applied. Sector deltas,
+ * the only operations current state can reject, are then checked together
+ * and applied all or none before the rest, so a failed batch changes nothing.
+ * <p>
+ * A batch is applied under the shared side of {@link #exclusiveLock()}, which
+ * the snapshot capture holds while copying state, so a backup never contains
+ * part of a batch. Batches still run concurrently with each other. Live
+ * readers (polled endpoints, the counter stream) take no lock and can see the
+ * operations of a batch land one after another while it is being applied;
+ * their next read shows the whole batch.
+ */
+@Service
+public class MesaBatchService {
+
+    public static final String AVATAR_DEFEAT = "avatarDefeat";
+    public static final String HERO_DEFEAT = "heroDefeat";
+    public static final String PLAN_COMPLETION = "planCompletion";
+    public static final String PRIMARY_REDUCE = "primaryReduce";
+    public static final String TERTIARY_INCREMENT = "tertiaryIncrement";
+    public static final String SECTOR_DELTA = "sectorDelta";
+
+    public static class Operation {
+        public String type;
+        public Integer avatarIndex;
+        public Integer rupturaAmount;
+        public String heroName;
+        public Integer threatAmount;
+        public Integer delta;
+        public String indicator;
+        public Integer targetMesaId;
+    }
+
+    public static class BatchRequest {
+        public String uuid;
+        public Long ts;
+        public List<Operation> operations;
+    }
+
+    public static class BatchResult {
+        public boolean applied;
+        public boolean duplicate;
+        public CounterState counter;
+        public MesaCounterService.TotalesMesa totals;
+        public SectorService.SectorStatus sector;
+    }
+
+    private final MesaCounterService mesaService;
+    private final CounterService counterService;
+    private final SectorService sectorService;
+    private final TablesService tablesService;
+    private final RequestDeduplicator deduplicator;
+    private final ReentrantReadWriteLock applying = new ReentrantReadWriteLock();
+
+    public MesaBatchService(MesaCounterService mesaService,
+            CounterService counterService,
+            SectorService sectorService,
+            TablesService tablesService,
+            RequestDeduplicator deduplicator) {
+        this.mesaService = mesaService;
+        this.counterService = counterService;
+        this.sectorService = sectorService;
+        this.tablesService = tablesService;
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * Held while copying state that must not contain part of a batch. Batches
+     * wait while it is held, other writes do not.
+     */
+    public Lock exclusiveLock() {
+        return applying.writeLock();
+    }
+
+    /**
+     * @throws IllegalArgumentException if any operation is malformed
+     * @throws IllegalStateException    if a sector delta is rejected; nothing is applied then
+     */
+    public BatchResult apply(int mesaId, BatchRequest request) {
+        List<Operation> operations = request == null || request.operations == null ? List.of()
+                : request.operations;
+        for (Operation op : operations) {
+            validate(mesaId, op);
+        }
+
+        BatchResult result = new BatchResult();
+        String uuid = request == null ? null : request.uuid;
+        if (tablesService.isRegisterTableDisconnected(mesaId)) {
+            return fill(mesaId, result);
+        }
+        if (!deduplicator.firstSeen(mesaId, "batch", uuid)) {
+            result.duplicate = true;
+            return fill(mesaId, result);
+        }
+
+        applying.readLock().lock();
+        try {
+            applyValidated(mesaId, operations, uuid, result);
+        } finally {
+            applying.readLock().unlock();
+        }
+        result.applied = true;
+        return fill(mesaId, result);
+    }
+
+    private void applyValidated(int mesaId, List<Operation> operations, String uuid, BatchResult result) {
+        List<SectorService.Delta> sectorDeltas = new ArrayList<>();
+        for (Operation op : operations) {
+            if (SECTOR_DELTA.equals(op.type)) {
+                sectorDeltas.add(new SectorService.Delta(op.targetMesaId == null ? mesaId : op.targetMesaId,
+                        op.indicator, valueOrZero(op.delta)));
+            }
+        }
+        if (!sectorDeltas.isEmpty()) {
+            try {
+                result.sector = sectorService.applyDeltas(mesaId, sectorDeltas);
+            } catch (RuntimeException e) {
+                deduplicator.forget(mesaId, "batch", uuid);
+                throw e;
+            }
+        }
+
+        // Everything below was validated up front and cannot be rejected
+        for (Operation op : operations) {
+            switch (op.type) {
+                case AVATAR_DEFEAT ->
+                    mesaService.recordAvatarDefeat(mesaId, op.avatarIndex, valueOrZero(op.rupturaAmount));
+                case HERO_DEFEAT ->
+                    mesaService.recordHeroDefeat(mesaId, op.heroName.trim(), valueOrZero(op.threatAmount));
+                case PLAN_COMPLETION -> mesaService.recordPlanCompletion(mesaId, valueOrZero(op.threatAmount));
+                case PRIMARY_REDUCE -> counterService.reducePrimary(Math.max(0, valueOrZero(op.delta)));
+                case TERTIARY_INCREMENT -> counterService.incrementTertiary(Math.max(0, valueOrZero(op.delta)));
+                default -> {
+                }
+            }
+        }
+    }
+
+    private BatchResult fill(int mesaId, BatchResult result) {
+        result.counter = counterService.getState();
+        result.totals = mesaService.getTotalesForMesa(mesaId);
+        return result;
+    }
+
+    private void validate(int mesaId, Operation op) {
+        if (op == null || op.type == null) {
+            throw new IllegalArgumentException("operation type is required");
+        }
+        switch (op.type) {
+            case AVATAR_DEFEAT -> {
+                if (op.avatarIndex == null || op.avatarIndex < 0 || op.avatarIndex > 3) {
+                    throw new IllegalArgumentException("Invalid avatar index. Must be 0-3.");
+                }
+            }
+            case HERO_DEFEAT -> {
+                if (op.heroName == null || op.heroName.isBlank()) {
+                    throw new IllegalArgumentException("Hero name is required");
+                }
+            }
+            case SECTOR_DELTA -> {
+                if (!"mangog".equalsIgnoreCase(op.indicator) && !"gate".equalsIgnoreCase(op.indicator)) {
+                    throw new IllegalArgumentException("Invalid indicator: " + op.indicator);
+                }
+                int target = op.targetMesaId == null ? mesaId : op.targetMesaId;
+                if (sectorService.getSectorIdForMesa(target) != sectorService.getSectorIdForMesa(mesaId)) {
+                    throw new IllegalArgumentException("mesas not in same sector");
+                }
+            }
+            case PLAN_COMPLETION, PRIMARY_REDUCE, TERTIARY_INCREMENT -> {
+            }
+            default -> throw new IllegalArgumentException("unknown operation: " + op.type);
+        }
+    }
+
+    private int valueOrZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+}
@@ -1,12 +1,27 @@
 package com.example.counter.service.mesa;
 
+import com.example.counter.service.journal.MutationJournal;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Per-mesa totals and the avatar/special defeat logs.
+ * <p>
+ * Mesas are spread over {@value #STRIPES} lock stripes: events for mesas in
+ * different stripes run in parallel, and events for one mesa are applied,
+ * journaled and notified in order. Whole-state operations (totals snapshot,
+ * clear, restore, adding a listener) take every stripe in index order, so
+ * they see no event half-applied. Defeats go to logs that take no lock on
+ * append or read.
+ */
 @Service
 public class MesaCounterService {
 
@@ -29,6 +44,18 @@ public class MesaCounterService {
             this.rupturaAmount = rupturaAmount;
             this.timestamp = timestamp;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof AvatarDefeat d && mesaId == d.mesaId && mesaNumber == d.mesaNumber
+                    && rupturaAmount == d.rupturaAmount && timestamp == d.timestamp
+                    && Objects.equals(avatarName, d.avatarName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(avatarName, mesaId, mesaNumber, rupturaAmount, timestamp);
+        }
     }
 
     public static class SpecialDefeat {
@@ -53,6 +80,18 @@ public class MesaCounterService {
             this.rupturaAmount = rupturaAmount;
             this.timestamp = timestamp;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SpecialDefeat d && mesaId == d.mesaId && mesaNumber == d.mesaNumber
+                    && rupturaAmount == d.rupturaAmount && timestamp == d.timestamp
+                    && Objects.equals(key, d.key) && Objects.equals(avatarName, d.avatarName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, avatarName, mesaId, mesaNumber, rupturaAmount, timestamp);
+        }
     }
 
     public static class TotalesMesa {
@@ -64,160 +103,408 @@ public class MesaCounterService {
         public int rupturaTotal; // Total rupture counters
         public int threatFromHeroes; // Threat from hero defeats
         public int threatFromPlan; // Threat from main plan completion
-        public Map<String, Integer> defeatedHeroes; // Hero name -> defeat count
+        // Hero defeat counts indexed by HeroRoster id, plus any heroes outside
+        // the roster by name; serialized together as the defeatedHeroes
+        // name -> count map
+        int[] heroCounts = NO_HEROES;
+        Map<String, Integer> otherHeroes = Map.of();
         public String tableName; // Mesa name
         public String realityName; // Reality name
         public Integer sectorId; // Sector grouping ID
 
         public TotalesMesa() {
-            this.defeatedHeroes = new HashMap<>();
         }
+
+        /** Hero name -> defeat count, as a new map. */
+        public Map<String, Integer> getDefeatedHeroes() {
+            Map<String, Integer> heroes = new LinkedHashMap<>();
+            for (int id = 0; id < heroCounts.length; id++) {
+                if (heroCounts[id] != 0) {
+                    heroes.put(HeroRoster.name(id), heroCounts[id]);
+                }
+            }
+            heroes.putAll(otherHeroes);
+            return heroes;
+        }
+
+        public void setDefeatedHeroes(Map<String, Integer> heroes) {
+            heroCounts = NO_HEROES;
+            otherHeroes = Map.of();
+            if (heroes != null) {
+                heroes.forEach((hero, count) -> addHeroDefeats(hero, count == null ? 0 : count));
+            }
+        }
+
+        public void addHeroDefeats(String hero, int count) {
+            if (hero == null || count == 0) {
+                return;
+            }
+            int id = HeroRoster.id(hero);
+            if (id == HeroRoster.NONE) {
+                if (otherHeroes.isEmpty()) {
+                    otherHeroes = new LinkedHashMap<>();
+                }
+                otherHeroes.merge(hero, count, (a, b) -> a + b == 0 ? null : a + b);
+                return;
+            }
+            if (heroCounts.length == 0) {
+                heroCounts = new int[HeroRoster.size()];
+            }
+            heroCounts[id] += count;
+        }
+
+        public int heroDefeats(String hero) {
+            int id = HeroRoster.id(hero);
+            if (id == HeroRoster.NONE) {
+                return hero == null ? 0 : otherHeroes.getOrDefault(hero, 0);
+            }
+            return id < heroCounts.length ? heroCounts[id] : 0;
+        }
+    }
+
+    /**
+     * A page of a defeat log for cursor-based polling.
+     */
+    public static class DefeatPage<T> {
+        public List<T> events; // Oldest first
+        public long next; // Pass as since on the next call
+        public boolean reset; // The cursor predates a clear, restore or restart: events start over
     }
 
-    private final Map<Integer, TotalesMesa> totales = new HashMap<>();
-    private final List<AvatarDefeat> avatarDefeats = new ArrayList<>();
-    private final List<SpecialDefeat> specialDefeats = new ArrayList<>();
+    private static final int[] NO_HEROES = new int[0];
+
+    private static final int STRIPES = 64;
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    // Each mesa's totals are only touched under its stripe
+    private final Map<Integer, TotalesMesa> totales = new ConcurrentHashMap<>();
+
+    // Codes 0-3 are the avatar indexes of recordAvatarDefeat
+    private static final String[] AVATARS = { "Granuja", "Bribón", "Bellaco", "Canalla", "Unknown" };
+    private static final int UNKNOWN_AVATAR = 4;
+
+    private final AvatarNames names = new AvatarNames(AVATARS);
+    // Appended under the mesa's stripe, replaced on clear/restore (all
+    // stripes) and read without locking. Names are split at ingestion: special ones never
+    // enter avatarDefeats.
+    private volatile DefeatLog<AvatarDefeat> avatarDefeats = newAvatarLog(0);
+    private volatile DefeatLog<SpecialDefeat> specialDefeats = newSpecialLog(0);
+    private final AtomicLong version = new AtomicLong();
+    private final MutationJournal journal;
+    private final List<TotalsListener> totalsListeners = new CopyOnWriteArrayList<>();
 
-    public synchronized void clearAll() {
+    /**
+     * Notified of every change to a mesa's totals, under that mesa's stripe,
+     * so changes to different mesas may arrive concurrently; resets come with
+     * all stripes held. The totals passed are copies shared with other
+     * listeners: read only.
+     */
+    public interface TotalsListener {
+        void onTotalsChanged(int mesaId, TotalesMesa totals);
+
+        /**
+         * All totals were replaced (clear, restore) or the listener was just added.
+         */
+        void onTotalsReset(Map<Integer, TotalesMesa> totals);
+    }
+
+    public MesaCounterService(MutationJournal journal) {
+        this.journal = journal;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    private ReentrantLock stripe(int mesaId) {
+        return stripes[Math.max(0, mesaId) & (STRIPES - 1)];
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    /**
+     * Register a listener and immediately hand it the current totals, so no
+     * change can slip in between reading them and subscribing.
+     */
+    public void addTotalsListener(TotalsListener listener) {
+        if (listener == null) {
+            return;
+        }
+        lockAll();
+        try {
+            totalsListeners.add(listener);
+            listener.onTotalsReset(getTotalesSnapshot());
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Monotonic counter bumped on every change, readable without locking.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    public void clearAll() {
+        lockAll();
+        try {
+            clearState();
+            notifyReset();
+            journal.mesaCountersCleared();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void clearState() {
         totales.clear();
-        avatarDefeats.clear();
-        specialDefeats.clear();
-    }
-
-    public synchronized Map<Integer, TotalesMesa> getTotalesSnapshot() {
-        Map<Integer, TotalesMesa> copy = new HashMap<>();
-        for (var e : totales.entrySet()) {
-            TotalesMesa t = new TotalesMesa();
-            TotalesMesa src = e.getValue();
-            // Copy new structure
-            t.avatar0 = src.avatar0;
-            t.avatar1 = src.avatar1;
-            t.avatar2 = src.avatar2;
-            t.avatar3 = src.avatar3;
-            t.rupturaTotal = src.rupturaTotal;
-            t.threatFromHeroes = src.threatFromHeroes;
-            t.threatFromPlan = src.threatFromPlan;
-            t.defeatedHeroes = src.defeatedHeroes != null ? new HashMap<>(src.defeatedHeroes) : new HashMap<>();
-            t.tableName = src.tableName;
-            t.realityName = src.realityName;
-            t.sectorId = src.sectorId;
-            copy.put(e.getKey(), t);
-        }
-        return copy;
-    }
-
-    public synchronized List<AvatarDefeat> getAvatarDefeatsLatestFirst() {
-        List<AvatarDefeat> copy = new ArrayList<>(avatarDefeats);
-        Collections.reverse(copy); // Return in reverse order (most recent first)
-        // Exclude special named defeats from general avatar defeats (e.g., Mangog,
-        // Portal)
-        Set<String> special = new HashSet<>(Arrays.asList("Mangog", "Portal entre dos mundos"));
-        List<AvatarDefeat> filtered = new ArrayList<>();
-        for (AvatarDefeat a : copy) {
-            if (a == null || a.avatarName == null)
-                continue;
-            if (special.contains(a.avatarName.trim()))
-                continue;
-            filtered.add(a);
-        }
-        return filtered;
-    }
-
-    public synchronized List<AvatarDefeat> getAvatarDefeatsSnapshot() {
-        List<AvatarDefeat> copy = new ArrayList<>(avatarDefeats);
-        Set<String> special = new HashSet<>(Arrays.asList("Mangog", "Portal entre dos mundos"));
-        List<AvatarDefeat> filtered = new ArrayList<>();
-        for (AvatarDefeat a : copy) {
-            if (a == null || a.avatarName == null)
-                continue;
-            if (special.contains(a.avatarName.trim()))
-                continue;
-            filtered.add(a);
-        }
-        return filtered;
-    }
-
-    public synchronized List<SpecialDefeat> getSpecialDefeatsLatestFirst() {
-        List<SpecialDefeat> copy = new ArrayList<>(specialDefeats);
-        Collections.reverse(copy);
-        return copy;
-    }
-
-    public synchronized List<SpecialDefeat> getSpecialDefeatsSnapshot() {
-        return new ArrayList<>(specialDefeats);
-    }
-
-    private boolean isSpecialAvatarName(String avatarName) {
-        if (avatarName == null)
-            return false;
-        String normalized = avatarName.trim().toLowerCase();
-        return "mangog".equals(normalized) || "portal entre dos mundos".equals(normalized);
-    }
-
-    private String getSpecialKeyFromName(String avatarName) {
-        if (avatarName == null)
-            return "special";
-        String normalized = avatarName.trim().toLowerCase();
-        if ("mangog".equals(normalized))
-            return "mangog";
-        if ("portal entre dos mundos".equals(normalized))
-            return "portal";
-        return "special";
-    }
-
-    public synchronized void restore(Map<Integer, TotalesMesa> totalesRestored,
+        avatarDefeats = newAvatarLog(avatarDefeats.lastSeq());
+        specialDefeats = newSpecialLog(specialDefeats.lastSeq());
+        version.incrementAndGet();
+    }
+
+    private void notifyReset() {
+        if (totalsListeners.isEmpty()) {
+            return;
+        }
+        Map<Integer, TotalesMesa> snapshot = getTotalesSnapshot();
+        for (TotalsListener listener : totalsListeners) {
+            listener.onTotalsReset(snapshot);
+        }
+    }
+
+    // Journals the mesa's new totals and tells the listeners
+    private void totalsChanged(int mesaId, TotalesMesa t) {
+        TotalesMesa copy = copyTotales(t);
+        journal.mesaTotalsChanged(mesaId, copy);
+        for (TotalsListener listener : totalsListeners) {
+            listener.onTotalsChanged(mesaId, copy);
+        }
+    }
+
+    /**
+     * Copy of all the totals, taken with every stripe held.
+     */
+    public Map<Integer, TotalesMesa> getTotalesSnapshot() {
+        lockAll();
+        try {
+            Map<Integer, TotalesMesa> copy = new HashMap<>();
+            for (var e : totales.entrySet()) {
+                copy.put(e.getKey(), copyTotales(e.getValue()));
+            }
+            return copy;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Copy of a single mesa's totals, or empty totals if it has none yet.
+     */
+    public TotalesMesa getTotalesForMesa(int mesaId) {
+        ReentrantLock lock = stripe(mesaId);
+        lock.lock();
+        try {
+            TotalesMesa src = totales.get(Math.max(0, mesaId));
+            return src == null ? new TotalesMesa() : copyTotales(src);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static TotalesMesa copyTotales(TotalesMesa src) {
+        TotalesMesa t = new TotalesMesa();
+        if (src == null) {
+            return t;
+        }
+        t.avatar0 = src.avatar0;
+        t.avatar1 = src.avatar1;
+        t.avatar2 = src.avatar2;
+        t.avatar3 = src.avatar3;
+        t.rupturaTotal = src.rupturaTotal;
+        t.threatFromHeroes = src.threatFromHeroes;
+        t.threatFromPlan = src.threatFromPlan;
+        t.heroCounts = src.heroCounts.length == 0 ? NO_HEROES : src.heroCounts.clone();
+        t.otherHeroes = src.otherHeroes.isEmpty() ? Map.of() : new LinkedHashMap<>(src.otherHeroes);
+        t.tableName = src.tableName;
+        t.realityName = src.realityName;
+        t.sectorId = src.sectorId;
+        return t;
+    }
+
+    public List<AvatarDefeat> getAvatarDefeatsLatestFirst() {
+        return avatarDefeats.viewLatestFirst();
+    }
+
+    /**
+     * Avatar defeats in order, as an immutable view that takes no lock and
+     * copies nothing; later defeats do not show up in it.
+     */
+    public List<AvatarDefeat> getAvatarDefeatsSnapshot() {
+        return avatarDefeats.view();
+    }
+
+    public List<SpecialDefeat> getSpecialDefeatsLatestFirst() {
+        return specialDefeats.viewLatestFirst();
+    }
+
+    public List<SpecialDefeat> getSpecialDefeatsSnapshot() {
+        return specialDefeats.view();
+    }
+
+    /**
+     * Avatar defeats after the cursor {@code since}, oldest first; no lock and
+     * no copy. A cursor from an older log (or 0) starts from the beginning.
+     */
+    public DefeatPage<AvatarDefeat> getAvatarDefeatsSince(long since, int limit) {
+        return page(avatarDefeats, since, limit);
+    }
+
+    public DefeatPage<SpecialDefeat> getSpecialDefeatsSince(long since, int limit) {
+        return page(specialDefeats, since, limit);
+    }
+
+    private static <T> DefeatPage<T> page(DefeatLog<T> log, long since, int limit) {
+        DefeatPage<T> page = new DefeatPage<>();
+        page.reset = since < log.firstSeq() - 1 || since > log.lastSeq();
+        long from = page.reset ? log.firstSeq() - 1 : since;
+        page.events = log.after(from, limit);
+        page.next = from + page.events.size();
+        return page;
+    }
+
+    // Sequence numbers start above the previous log's and above the clock
+    // (in microseconds), so they keep growing across clears and restarts and
+    // an old cursor is always recognised.
+    private static long firstSeqAfter(long previousLastSeq) {
+        return Math.max(previousLastSeq + 1, System.currentTimeMillis() * 1000);
+    }
+
+    private DefeatLog<AvatarDefeat> newAvatarLog(long previousLastSeq) {
+        return new DefeatLog<>(firstSeqAfter(previousLastSeq), (mesaId, mesaNumber, name, key, ruptura,
+                timestamp) -> new AvatarDefeat(names.name(name), mesaId, mesaNumber, ruptura, timestamp));
+    }
+
+    private DefeatLog<SpecialDefeat> newSpecialLog(long previousLastSeq) {
+        return new DefeatLog<>(firstSeqAfter(previousLastSeq), (mesaId, mesaNumber, name, key, ruptura,
+                timestamp) -> new SpecialDefeat(names.name(key), names.name(name), mesaId, mesaNumber, ruptura,
+                        timestamp));
+    }
+
+    private void append(AvatarDefeat d, int name) {
+        avatarDefeats.add(d.mesaId, d.mesaNumber, name, AvatarNames.NONE, d.rupturaAmount, d.timestamp);
+    }
+
+    private void append(SpecialDefeat d) {
+        specialDefeats.add(d.mesaId, d.mesaNumber, names.code(d.avatarName), names.code(d.key), d.rupturaAmount,
+                d.timestamp);
+    }
+
+    public void restore(Map<Integer, TotalesMesa> totalesRestored,
             List<AvatarDefeat> avatarDefeatsRestored, List<SpecialDefeat> specialDefeatsRestored) {
-        clearAll();
-        if (totalesRestored != null) {
-            for (var e : totalesRestored.entrySet()) {
-                TotalesMesa t = new TotalesMesa();
-                TotalesMesa s = e.getValue();
-                if (s != null) {
-                    // Copy new structure
-                    t.avatar0 = s.avatar0;
-                    t.avatar1 = s.avatar1;
-                    t.avatar2 = s.avatar2;
-                    t.avatar3 = s.avatar3;
-                    t.rupturaTotal = s.rupturaTotal;
-                    t.threatFromHeroes = s.threatFromHeroes;
-                    t.threatFromPlan = s.threatFromPlan;
-                    t.defeatedHeroes = s.defeatedHeroes != null ? new HashMap<>(s.defeatedHeroes) : new HashMap<>();
-                    t.tableName = s.tableName;
-                    t.realityName = s.realityName;
-                    t.sectorId = s.sectorId;
+        lockAll();
+        try {
+            clearState();
+            if (totalesRestored != null) {
+                for (var e : totalesRestored.entrySet()) {
+                    totales.put(e.getKey(), copyTotales(e.getValue()));
                 }
-                totales.put(e.getKey(), t);
             }
-        }
-        if (avatarDefeatsRestored != null) {
-            for (AvatarDefeat defeat : avatarDefeatsRestored) {
-                if (defeat == null || defeat.avatarName == null) {
-                    continue;
+            if (avatarDefeatsRestored != null) {
+                for (AvatarDefeat defeat : avatarDefeatsRestored) {
+                    if (defeat == null || defeat.avatarName == null) {
+                        continue;
+                    }
+                    int name = names.code(defeat.avatarName);
+                    if (names.isSpecial(name)) {
+                        append(new SpecialDefeat(
+                                names.specialKey(name),
+                                defeat.avatarName,
+                                defeat.mesaId,
+                                defeat.mesaNumber,
+                                Math.max(1, defeat.rupturaAmount),
+                                defeat.timestamp));
+                    } else {
+                        defeat.rupturaAmount = Math.max(1, defeat.rupturaAmount);
+                        append(defeat, name);
+                    }
                 }
-                if (isSpecialAvatarName(defeat.avatarName)) {
-                    specialDefeats.add(new SpecialDefeat(
-                            getSpecialKeyFromName(defeat.avatarName),
-                            defeat.avatarName,
-                            defeat.mesaId,
-                            defeat.mesaNumber,
-                            Math.max(1, defeat.rupturaAmount),
-                            defeat.timestamp));
-                } else {
+            }
+            if (specialDefeatsRestored != null) {
+                for (SpecialDefeat defeat : specialDefeatsRestored) {
+                    if (defeat == null)
+                        continue;
                     defeat.rupturaAmount = Math.max(1, defeat.rupturaAmount);
-                    avatarDefeats.add(defeat);
+                    if (defeat.key == null || defeat.key.isBlank()) {
+                        defeat.key = names.specialKey(names.code(defeat.avatarName));
+                    }
+                    append(defeat);
                 }
             }
+            version.incrementAndGet();
+            notifyReset();
+        } finally {
+            unlockAll();
         }
-        if (specialDefeatsRestored != null) {
-            for (SpecialDefeat defeat : specialDefeatsRestored) {
-                if (defeat == null)
-                    continue;
-                defeat.rupturaAmount = Math.max(1, defeat.rupturaAmount);
-                if (defeat.key == null || defeat.key.isBlank()) {
-                    defeat.key = getSpecialKeyFromName(defeat.avatarName);
-                }
-                specialDefeats.add(defeat);
+    }
+
+    // --- Journal replay: apply recorded state without journaling it again ---
+
+    public void replayTotales(int mesaId, TotalesMesa totals) {
+        int id = Math.max(0, mesaId);
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            TotalesMesa t = copyTotales(totals);
+            totales.put(id, t);
+            version.incrementAndGet();
+            for (TotalsListener listener : totalsListeners) {
+                listener.onTotalsChanged(id, copyTotales(t));
             }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void replayAvatarDefeat(AvatarDefeat defeat) {
+        if (defeat == null || defeat.avatarName == null) {
+            return;
+        }
+        int name = names.code(defeat.avatarName);
+        if (names.isSpecial(name)) {
+            return;
+        }
+        ReentrantLock lock = stripe(defeat.mesaId);
+        lock.lock();
+        try {
+            append(defeat, name);
+            version.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void replaySpecialDefeat(SpecialDefeat defeat) {
+        if (defeat == null) {
+            return;
+        }
+        ReentrantLock lock = stripe(defeat.mesaId);
+        lock.lock();
+        try {
+            append(defeat);
+            version.incrementAndGet();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -229,37 +516,36 @@ public class MesaCounterService {
      *                      Canalla)
      * @param rupturaAmount The number of rupture counters on the avatar
      */
-    public synchronized void recordAvatarDefeat(int mesaId, int avatarIndex, int rupturaAmount) {
-        TotalesMesa t = totales.computeIfAbsent(Math.max(0, mesaId), k -> new TotalesMesa());
-
-        // Increment the specific avatar defeat counter
-        String avatarName = switch (avatarIndex) {
-            case 0 -> {
-                t.avatar0++;
-                yield "Granuja";
-            }
-            case 1 -> {
-                t.avatar1++;
-                yield "Bribón";
-            }
-            case 2 -> {
-                t.avatar2++;
-                yield "Bellaco";
-            }
-            case 3 -> {
-                t.avatar3++;
-                yield "Canalla";
+    public void recordAvatarDefeat(int mesaId, int avatarIndex, int rupturaAmount) {
+        ReentrantLock lock = stripe(mesaId);
+        lock.lock();
+        try {
+            TotalesMesa t = totales.computeIfAbsent(Math.max(0, mesaId), k -> new TotalesMesa());
+
+            // Increment the specific avatar defeat counter
+            switch (avatarIndex) {
+                case 0 -> t.avatar0++;
+                case 1 -> t.avatar1++;
+                case 2 -> t.avatar2++;
+                case 3 -> t.avatar3++;
+                default -> {
+                }
             }
-            default -> "Unknown";
-        };
+            int name = avatarIndex >= 0 && avatarIndex < UNKNOWN_AVATAR ? avatarIndex : UNKNOWN_AVATAR;
 
-        // Add rupture counters to total (minimum 1)
-        t.rupturaTotal += Math.max(1, rupturaAmount);
+            // Add rupture counters to total (minimum 1)
+            t.rupturaTotal += Math.max(1, rupturaAmount);
 
-        // Record individual defeat event (store rupturaAmount >= 1)
-        AvatarDefeat defeat = new AvatarDefeat(avatarName, mesaId, mesaId, Math.max(1, rupturaAmount),
-                Instant.now().toEpochMilli());
-        avatarDefeats.add(defeat);
+            // Record individual defeat event (store rupturaAmount >= 1)
+            AvatarDefeat defeat = new AvatarDefeat(names.name(name), mesaId, mesaId, Math.max(1, rupturaAmount),
+                    Instant.now().toEpochMilli());
+            append(defeat, name);
+            version.incrementAndGet();
+            totalsChanged(Math.max(0, mesaId), t);
+            journal.avatarDefeatAdded(defeat);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -270,28 +556,41 @@ public class MesaCounterService {
      * @param avatarName    The defeated avatar name
      * @param rupturaAmount The rupture amount to store with the event
      */
-    public synchronized void recordNamedAvatarDefeat(int mesaId, String avatarName, int rupturaAmount) {
+    public void recordNamedAvatarDefeat(int mesaId, String avatarName, int rupturaAmount) {
         if (avatarName == null || avatarName.isBlank()) {
             return;
         }
         int normalizedMesaId = Math.max(0, mesaId);
-        String cleanName = avatarName.trim();
-        if (isSpecialAvatarName(cleanName)) {
-            specialDefeats.add(new SpecialDefeat(
-                    getSpecialKeyFromName(cleanName),
+        int name = names.code(avatarName.trim());
+        String cleanName = names.name(name);
+        ReentrantLock lock = stripe(normalizedMesaId);
+        lock.lock();
+        try {
+            if (names.isSpecial(name)) {
+                SpecialDefeat special = new SpecialDefeat(
+                        names.specialKey(name),
+                        cleanName,
+                        normalizedMesaId,
+                        normalizedMesaId,
+                        Math.max(1, rupturaAmount),
+                        Instant.now().toEpochMilli());
+                append(special);
+                version.incrementAndGet();
+                journal.specialDefeatAdded(special);
+                return;
+            }
+            AvatarDefeat defeat = new AvatarDefeat(
                     cleanName,
                     normalizedMesaId,
                     normalizedMesaId,
                     Math.max(1, rupturaAmount),
-                    Instant.now().toEpochMilli()));
-            return;
+                    Instant.now().toEpochMilli());
+            append(defeat, name);
+            version.incrementAndGet();
+            journal.avatarDefeatAdded(defeat);
+        } finally {
+            lock.unlock();
         }
-        avatarDefeats.add(new AvatarDefeat(
-                cleanName,
-                normalizedMesaId,
-                normalizedMesaId,
-                Math.max(1, rupturaAmount),
-                Instant.now().toEpochMilli()));
     }
 
     /**
@@ -301,15 +600,23 @@ public class MesaCounterService {
      * @param heroName     The name of the defeated hero
      * @param threatAmount The threat contributed by the hero defeat
      */
-    public synchronized void recordHeroDefeat(int mesaId, String heroName, int threatAmount) {
-        TotalesMesa t = totales.computeIfAbsent(Math.max(0, mesaId), k -> new TotalesMesa());
+    public void recordHeroDefeat(int mesaId, String heroName, int threatAmount) {
+        ReentrantLock lock = stripe(mesaId);
+        lock.lock();
+        try {
+            TotalesMesa t = totales.computeIfAbsent(Math.max(0, mesaId), k -> new TotalesMesa());
 
-        // Add threat from hero defeats
-        t.threatFromHeroes += Math.max(0, threatAmount);
+            // Add threat from hero defeats
+            t.threatFromHeroes += Math.max(0, threatAmount);
 
-        // Track individual hero defeats
-        if (heroName != null && !heroName.isBlank()) {
-            t.defeatedHeroes.put(heroName, t.defeatedHeroes.getOrDefault(heroName, 0) + 1);
+            // Track individual hero defeats
+            if (heroName != null && !heroName.isBlank()) {
+                t.addHeroDefeats(heroName, 1);
+            }
+            version.incrementAndGet();
+            totalsChanged(Math.max(0, mesaId), t);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -319,10 +626,18 @@ public class MesaCounterService {
      * @param mesaId       The table number
      * @param threatAmount The threat contributed by the plan completion
      */
-    public synchronized void recordPlanCompletion(int mesaId, int threatAmount) {
-        TotalesMesa t = totales.computeIfAbsent(Math.max(0, mesaId), k -> new TotalesMesa());
+    public void recordPlanCompletion(int mesaId, int threatAmount) {
+        ReentrantLock lock = stripe(mesaId);
+        lock.lock();
+        try {
+            TotalesMesa t = totales.computeIfAbsent(Math.max(0, mesaId), k -> new TotalesMesa());
 
-        // Add threat from plan completion
-        t.threatFromPlan += Math.max(0, threatAmount);
+            // Add threat from plan completion
+            t.threatFromPlan += Math.max(0, threatAmount);
+            version.incrementAndGet();
+            totalsChanged(Math.max(0, mesaId), t);
+        } finally {
+            lock.unlock();
+        }
     }
 }
@@ -2,6 +2,8 @@ package com.example.counter.service.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Objects;
+
 public class CounterState {
     @JsonProperty("primary")
     public final int primary;
@@ -55,6 +57,18 @@ public class CounterState {
         return secondaryPlan;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CounterState s && primary == s.primary && tertiary == s.tertiary
+                && Objects.equals(primaryMax, s.primaryMax) && Objects.equals(tertiaryMax, s.tertiaryMax)
+                && Objects.equals(secondaryHeroes, s.secondaryHeroes) && Objects.equals(secondaryPlan, s.secondaryPlan);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(primary, primaryMax, tertiary, tertiaryMax, secondaryHeroes, secondaryPlan);
+    }
+
     @Override
     public String toString() {
         return "CounterState{" +
@@ -0,0 +1,108 @@
+package com.example.counter.service.scheduling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs scheduled jobs by name, skipping a run while the previous one of the
+ * same job is still going, and keeps per-job timing for the admin endpoint.
+ * <p>
+ * The scheduler has several threads, so a slow job no longer holds back the
+ * others; this guard keeps a single job from piling up on itself when it is
+ * also triggered by hand or its trigger fires faster than it completes.
+ */
+@Service
+public class ScheduledJobs {
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduledJobs.class);
+
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    public static class JobStats {
+        public long runs;
+        public long skipped;
+        public long failures;
+        public boolean running;
+        public long lastStartedAt;
+        public long lastDurationMs;
+        public long maxDurationMs;
+        public long avgDurationMs;
+        public String lastError;
+    }
+
+    private static final class Job {
+        final AtomicBoolean running = new AtomicBoolean();
+        final AtomicLong runs = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        volatile long lastStartedAt;
+        volatile long lastNanos;
+        volatile long maxNanos;
+        volatile String lastError;
+    }
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Run {@code task} as job {@code name} unless it is already running.
+     * Failures are logged and counted, never thrown, so a periodic trigger
+     * keeps firing. Returns whether the task ran.
+     */
+    public boolean run(String name, Task task) {
+        Job job = jobs.computeIfAbsent(name, k -> new Job());
+        if (!job.running.compareAndSet(false, true)) {
+            job.skipped.incrementAndGet();
+            log.debug("Job {} still running, skipping this run", name);
+            return false;
+        }
+        job.lastStartedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        try {
+            task.run();
+            job.lastError = null;
+        } catch (Exception e) {
+            job.failures.incrementAndGet();
+            job.lastError = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            log.warn("Job {} failed: {}", name, job.lastError);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            job.lastNanos = nanos;
+            if (nanos > job.maxNanos) {
+                job.maxNanos = nanos;
+            }
+            job.totalNanos.addAndGet(nanos);
+            job.runs.incrementAndGet();
+            job.running.set(false);
+        }
+        return true;
+    }
+
+    public Map<String, JobStats> getStats() {
+        Map<String, JobStats> out = new TreeMap<>();
+        jobs.forEach((name, job) -> {
+            JobStats s = new JobStats();
+            s.runs = job.runs.get();
+            s.skipped = job.skipped.get();
+            s.failures = job.failures.get();
+            s.running = job.running.get();
+            s.lastStartedAt = job.lastStartedAt;
+            s.lastDurationMs = job.lastNanos / 1_000_000;
+            s.maxDurationMs = job.maxNanos / 1_000_000;
+            s.avgDurationMs = s.runs == 0 ? 0 : job.totalNanos.get() / s.runs / 1_000_000;
+            s.lastError = job.lastError;
+            out.put(name, s);
+        });
+        return out;
+    }
+}
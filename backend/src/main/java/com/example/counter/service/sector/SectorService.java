@@ -1,19 +1,32 @@
 package com.example.counter.service.sector;
 
 import com.example.counter.service.TablesService;
+import com.example.counter.service.journal.MutationJournal;
 import com.example.counter.service.mesa.MesaCounterService;
+import com.example.counter.service.model.RegisterTable;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Sector indicators (Mangog, portal) shared by the mesas of a sector. The
+ * mesa layout comes from {@link SectorTopology}; the number of connected
+ * tables per sector is maintained incrementally from table changes instead of
+ * scanning the register list on every activation.
+ * <p>
+ * Sectors never interact ({@link #applyDelta} rejects cross-sector targets),
+ * so indicator state is partitioned per sector and each {@link SectorState}
+ * is its own lock: operations in different sectors run in parallel.
+ */
 @Service
 public class SectorService {
-    public static final int MESA_GROUP_START = 9;
-    public static final int MESA_GROUP_SIZE = 3;
-
     public static class IndicatorState {
         public String key;
         public Integer activeMesaId;
@@ -34,42 +47,66 @@ public class SectorService {
         public IndicatorState gate = new IndicatorState("gate");
     }
 
+    /** One indicator delta of a batch, applied to {@code targetMesaId}. */
+    public record Delta(int targetMesaId, String indicator, int delta) {
+    }
+
     public static class SectorStatus {
         public int sectorId;
         public List<Integer> mesas;
         public Map<Integer, Map<String, IndicatorState>> indicatorsByMesa;
     }
 
-    private final Map<Integer, MesaIndicators> mesaIndicators = new HashMap<>();
+    // Replaced wholesale on restore; operations reach a sector through
+    // inSector, so none can land in a map that was already replaced.
+    private volatile ConcurrentHashMap<Integer, SectorState> sectors = new ConcurrentHashMap<>();
     private final TablesService tablesService;
     private final MesaCounterService mesaCounterService;
-
-    public SectorService(TablesService tablesService, MesaCounterService mesaCounterService) {
+    private final SectorTopology topology;
+    private final ActiveTableCounter activeTables;
+    private final MutationJournal journal;
+    // Striped so writers in different sectors do not contend on one counter
+    private final LongAdder version = new LongAdder();
+
+    public SectorService(TablesService tablesService, MesaCounterService mesaCounterService,
+            SectorTopology topology, MutationJournal journal) {
         this.tablesService = tablesService;
         this.mesaCounterService = mesaCounterService;
+        this.topology = topology;
+        this.journal = journal;
+        this.activeTables = new ActiveTableCounter(topology);
+        tablesService.addRegisterListener(activeTables);
     }
 
-    public synchronized SectorStatus getStatusForMesa(int mesaId) {
+    /**
+     * Monotonic counter bumped whenever an indicator changes, readable without
+     * locking. Registration and connection changes are tracked by
+     * {@link TablesService#getVersion()}.
+     */
+    public long getVersion() {
+        return version.sum();
+    }
+
+    public SectorStatus getStatusForMesa(int mesaId) {
         SectorInfo info = resolveSector(mesaId);
-        mesaIndicators.computeIfAbsent(mesaId, id -> {
-            MesaIndicators m = new MesaIndicators();
-            m.mesaId = id;
-            return m;
+        return inSector(info.sectorId, state -> {
+            state.indicatorsFor(mesaId);
+            boolean viewerDisconnected = isMesaDisconnected(mesaId);
+            return buildStatus(state, info.sectorId, info.members, mesaId, viewerDisconnected);
         });
-        boolean viewerDisconnected = isMesaDisconnected(mesaId);
-        return buildStatus(info.sectorId, info.mesas, mesaId, viewerDisconnected);
     }
 
-    public synchronized SectorStatus setIndicatorActive(int mesaId, String indicatorKey, boolean active) {
+    public SectorStatus setIndicatorActive(int mesaId, String indicatorKey, boolean active) {
         if (isMesaDisconnected(mesaId)) {
             return getStatusForMesa(mesaId);
         }
         SectorInfo info = resolveSector(mesaId);
-        MesaIndicators indicators = mesaIndicators.computeIfAbsent(mesaId, id -> {
-            MesaIndicators m = new MesaIndicators();
-            m.mesaId = id;
-            return m;
-        });
+        return inSector(info.sectorId, state -> setIndicatorActive(state, info, mesaId, indicatorKey, active));
+    }
+
+    private SectorStatus setIndicatorActive(SectorState state, SectorInfo info, int mesaId, String indicatorKey,
+            boolean active) {
+        MesaIndicators indicators = state.indicatorsFor(mesaId);
         IndicatorState indicator = getIndicator(indicators, indicatorKey);
         if (indicator == null) {
             return null;
@@ -98,10 +135,12 @@ public class SectorService {
             }
             indicator.activeMesaId = null;
         }
-        return buildStatus(info.sectorId, info.mesas, mesaId, false);
+        version.increment();
+        journal.sectorIndicatorsChanged(mesaId, copyMesa(indicators));
+        return buildStatus(state, info.sectorId, info.members, mesaId, false);
     }
 
-    public synchronized SectorStatus applyDelta(int mesaId, int targetMesaId, String indicatorKey, int delta) {
+    public SectorStatus applyDelta(int mesaId, int targetMesaId, String indicatorKey, int delta) {
         boolean sourceDisconnected = isMesaDisconnected(mesaId);
         boolean targetDisconnected = isMesaDisconnected(targetMesaId);
         if (sourceDisconnected || targetDisconnected) {
@@ -115,34 +154,95 @@ public class SectorService {
             throw new IllegalStateException("mesas not in same sector");
         }
 
-        MesaIndicators targetIndicators = mesaIndicators.computeIfAbsent(targetMesaId, id -> {
-            MesaIndicators m = new MesaIndicators();
-            m.mesaId = id;
-            return m;
-        });
+        return inSector(targetInfo.sectorId,
+                state -> applyDelta(state, targetInfo, mesaId, targetMesaId, indicatorKey, delta));
+    }
+
+    private SectorStatus applyDelta(SectorState state, SectorInfo targetInfo, int mesaId, int targetMesaId,
+            String indicatorKey, int delta) {
+        MesaIndicators targetIndicators = state.indicatorsFor(targetMesaId);
         IndicatorState indicator = getIndicator(targetIndicators, indicatorKey);
         if (indicator == null) {
             return null;
         }
+        checkDelta(indicator);
+        if (step(indicator, delta)) {
+            String defeatedAvatarName = toSpecialAvatarName(indicatorKey);
+            if (defeatedAvatarName != null) {
+                mesaCounterService.recordNamedAvatarDefeat(targetMesaId, defeatedAvatarName, 0);
+            }
+        }
+        version.increment();
+        journal.sectorIndicatorsChanged(targetMesaId, copyMesa(targetIndicators));
+        return buildStatus(state, targetInfo.sectorId, targetInfo.members, mesaId, false);
+    }
+
+    /**
+     * Apply several deltas from {@code mesaId} at once. They are all checked
+     * under the sector lock against the state each one would see before any
+     * is applied, so a rejected delta leaves every indicator untouched.
+     *
+     * @return the sector status after the last delta, or {@code null} if none applied
+     * @throws IllegalStateException if any delta is rejected
+     */
+    public SectorStatus applyDeltas(int mesaId, List<Delta> deltas) {
+        if (isMesaDisconnected(mesaId)) {
+            return getStatusForMesa(mesaId);
+        }
+        SectorInfo info = resolveSector(mesaId);
+        List<Delta> applicable = new ArrayList<>(deltas.size());
+        for (Delta d : deltas) {
+            if (topology.sectorOf(d.targetMesaId()) != info.sectorId) {
+                throw new IllegalStateException("mesas not in same sector");
+            }
+            if (!isMesaDisconnected(d.targetMesaId())) {
+                applicable.add(d);
+            }
+        }
+        if (applicable.isEmpty()) {
+            return getStatusForMesa(mesaId);
+        }
+        return inSector(info.sectorId, state -> {
+            // Dry run on copies, so a later delta sees what the earlier ones did
+            Map<Integer, MesaIndicators> trial = new HashMap<>();
+            for (Delta d : applicable) {
+                MesaIndicators indicators = trial.computeIfAbsent(d.targetMesaId(),
+                        id -> copyMesa(state.indicatorsFor(id)));
+                IndicatorState indicator = getIndicator(indicators, d.indicator());
+                if (indicator != null) {
+                    checkDelta(indicator);
+                    step(indicator, d.delta());
+                }
+            }
+            SectorStatus status = null;
+            for (Delta d : applicable) {
+                SectorStatus next = applyDelta(state, info, mesaId, d.targetMesaId(), d.indicator(), d.delta());
+                if (next != null) {
+                    status = next;
+                }
+            }
+            return status;
+        });
+    }
+
+    private static void checkDelta(IndicatorState indicator) {
         if (indicator.defeated) {
             throw new IllegalStateException("indicator defeated");
         }
         if (indicator.activeMesaId == null) {
             throw new IllegalStateException("indicator not active");
         }
-        int next = indicator.value + delta;
-        if (next < 0) {
-            next = 0;
-        }
-        if (indicator.value > 0 && next == 0 && delta < 0) {
+    }
+
+    // Adds delta (never below zero); true if this took the indicator to zero
+    private static boolean step(IndicatorState indicator, int delta) {
+        int next = Math.max(0, indicator.value + delta);
+        boolean defeated = indicator.value > 0 && next == 0 && delta < 0;
+        if (defeated) {
             indicator.defeated = true;
-            String defeatedAvatarName = toSpecialAvatarName(indicatorKey);
-            if (defeatedAvatarName != null) {
-                mesaCounterService.recordNamedAvatarDefeat(targetMesaId, defeatedAvatarName, 0);
-            }
         }
         indicator.value = next;
-        return buildStatus(targetInfo.sectorId, targetInfo.mesas, mesaId, false);
+        return defeated;
     }
 
     private String toSpecialAvatarName(String indicatorKey) {
@@ -156,41 +256,89 @@ public class SectorService {
     }
 
     public int getSectorIdForMesa(int mesaId) {
-        SectorInfo info = resolveSector(mesaId);
-        return info.sectorId;
+        return topology.sectorOf(mesaId);
     }
 
-    public synchronized Map<Integer, MesaIndicators> getSnapshot() {
+    /**
+     * Copy of every mesa's indicators. Each sector is copied under its own
+     * lock; sectors are independent so no cross-sector atomicity is needed.
+     */
+    public Map<Integer, MesaIndicators> getSnapshot() {
         Map<Integer, MesaIndicators> copy = new HashMap<>();
-        for (var entry : mesaIndicators.entrySet()) {
-            MesaIndicators src = entry.getValue();
-            MesaIndicators dst = new MesaIndicators();
-            dst.mesaId = src.mesaId;
-            dst.mangog = copyIndicator(src.mangog);
-            dst.gate = copyIndicator(src.gate);
-            copy.put(entry.getKey(), dst);
+        for (SectorState state : sectors.values()) {
+            synchronized (state) {
+                for (var entry : state.mesas.entrySet()) {
+                    copy.put(entry.getKey(), copyMesa(entry.getValue()));
+                }
+            }
         }
         return copy;
     }
 
+    /**
+     * Replace every indicator. Writers that already hold a sector of the old
+     * state finish before this returns; later ones go to the new state.
+     */
     public synchronized void restore(Map<Integer, MesaIndicators> snapshot) {
-        mesaIndicators.clear();
-        if (snapshot == null) {
+        ConcurrentHashMap<Integer, SectorState> next = new ConcurrentHashMap<>();
+        if (snapshot != null) {
+            for (var entry : snapshot.entrySet()) {
+                MesaIndicators src = entry.getValue();
+                if (src == null) {
+                    continue;
+                }
+                next.computeIfAbsent(topology.sectorOf(entry.getKey()), id -> new SectorState())
+                        .mesas.put(entry.getKey(), copyMesa(src));
+            }
+        }
+        ConcurrentHashMap<Integer, SectorState> previous = sectors;
+        sectors = next;
+        // Wait out writers inside a sector of the old map: once they release
+        // it, the ones still to come see the new map and retry there
+        for (SectorState state : previous.values()) {
+            synchronized (state) {
+                state.retired = true;
+            }
+        }
+        version.increment();
+    }
+
+    /**
+     * Journal replay: put back one mesa's recorded indicators.
+     */
+    public void replayMesa(int mesaId, MesaIndicators indicators) {
+        if (indicators == null) {
             return;
         }
-        for (var entry : snapshot.entrySet()) {
-            MesaIndicators src = entry.getValue();
-            if (src == null) {
-                continue;
+        inSector(topology.sectorOf(mesaId), state -> state.mesas.put(mesaId, copyMesa(indicators)));
+        version.increment();
+    }
+
+    /**
+     * Run {@code action} holding the sector's lock, on the state that is still
+     * current once the lock is held: if a restore swapped the map meanwhile,
+     * the action runs on the new one instead.
+     */
+    private <T> T inSector(int sectorId, Function<SectorState, T> action) {
+        while (true) {
+            ConcurrentHashMap<Integer, SectorState> current = sectors;
+            SectorState state = current.computeIfAbsent(sectorId, id -> new SectorState());
+            synchronized (state) {
+                if (!state.retired && sectors == current) {
+                    return action.apply(state);
+                }
             }
-            MesaIndicators dst = new MesaIndicators();
-            dst.mesaId = src.mesaId;
-            dst.mangog = copyIndicator(src.mangog);
-            dst.gate = copyIndicator(src.gate);
-            mesaIndicators.put(entry.getKey(), dst);
         }
     }
 
+    private MesaIndicators copyMesa(MesaIndicators src) {
+        MesaIndicators dst = new MesaIndicators();
+        dst.mesaId = src.mesaId;
+        dst.mangog = copyIndicator(src.mangog);
+        dst.gate = copyIndicator(src.gate);
+        return dst;
+    }
+
     private IndicatorState copyIndicator(IndicatorState src) {
         IndicatorState dst = new IndicatorState(src == null ? null : src.key);
         if (src != null) {
@@ -211,7 +359,7 @@ public class SectorService {
         return null;
     }
 
-    private SectorStatus buildStatus(int sectorId, List<Integer> theoreticalMesas, int viewerMesaId,
+    private SectorStatus buildStatus(SectorState state, int sectorId, int[] theoreticalMesas, int viewerMesaId,
             boolean viewerDisconnected) {
         SectorStatus status = new SectorStatus();
         status.sectorId = sectorId;
@@ -239,7 +387,7 @@ public class SectorService {
         status.indicatorsByMesa = new HashMap<>();
 
         for (int mesaId : visibleMesas) {
-            MesaIndicators mesaInd = mesaIndicators.get(mesaId);
+            MesaIndicators mesaInd = state.mesas.get(mesaId);
             if (mesaInd == null) {
                 mesaInd = new MesaIndicators();
                 mesaInd.mesaId = mesaId;
@@ -254,28 +402,21 @@ public class SectorService {
     }
 
     private boolean isMesaRegistered(int mesaId) {
-        return tablesService.listRegister().stream()
-                .anyMatch(table -> table.tableNumber() == mesaId);
+        return tablesService.isRegisterTableNumberUsed(mesaId);
     }
 
     private int countActiveTablesInSector(int sectorId) {
-        SectorInfo info = null;
-        if (sectorId == 1) {
-            info = new SectorInfo(1, range(1, 4));
-        } else if (sectorId == 2) {
-            info = new SectorInfo(2, range(5, 8));
-        } else {
-            int group = sectorId - 3;
-            int start = MESA_GROUP_START + (group * MESA_GROUP_SIZE);
-            int end = start + (MESA_GROUP_SIZE - 1);
-            info = new SectorInfo(sectorId, range(start, end));
+        if (sectorId <= topology.precomputedSectorCount()) {
+            return activeTables.get(sectorId);
         }
-
-        List<Integer> mesasInSector = info.mesas;
-        return (int) tablesService.listRegister().stream()
-                .filter(table -> mesasInSector.contains(table.tableNumber()))
-                .filter(table -> !table.disconnected())
-                .count();
+        // Beyond the precomputed layout: count the few members directly
+        int count = 0;
+        for (RegisterTable table : tablesService.listRegister()) {
+            if (!table.disconnected() && topology.sectorOf(table.tableNumber()) == sectorId) {
+                count++;
+            }
+        }
+        return count;
     }
 
     private boolean isMesaDisconnected(int mesaId) {
@@ -283,36 +424,84 @@ public class SectorService {
     }
 
     private SectorInfo resolveSector(int mesaId) {
-        int safeMesaId = Math.max(1, mesaId);
-        if (safeMesaId <= 4) {
-            return new SectorInfo(1, range(1, 4));
-        }
-        if (safeMesaId <= 8) {
-            return new SectorInfo(2, range(5, 8));
-        }
-        int offset = safeMesaId - MESA_GROUP_START;
-        int group = Math.max(0, offset / MESA_GROUP_SIZE);
-        int sectorId = 3 + group;
-        int start = MESA_GROUP_START + (group * MESA_GROUP_SIZE);
-        int end = start + (MESA_GROUP_SIZE - 1);
-        return new SectorInfo(sectorId, range(start, end));
+        int sectorId = topology.sectorOf(mesaId);
+        return new SectorInfo(sectorId, topology.members(sectorId));
     }
 
-    private List<Integer> range(int start, int end) {
-        List<Integer> list = new ArrayList<>();
-        for (int i = start; i <= end; i++) {
-            list.add(i);
+    /**
+     * Indicators of the mesas in one sector. The instance doubles as the
+     * sector's lock.
+     */
+    private static final class SectorState {
+        private final Map<Integer, MesaIndicators> mesas = new HashMap<>();
+        // Set by restore once the state is replaced
+        private boolean retired;
+
+        MesaIndicators indicatorsFor(int mesaId) {
+            return mesas.computeIfAbsent(mesaId, id -> {
+                MesaIndicators m = new MesaIndicators();
+                m.mesaId = id;
+                return m;
+            });
         }
-        return list;
     }
 
     private static class SectorInfo {
         public final int sectorId;
-        public final List<Integer> mesas;
+        public final int[] members;
 
-        private SectorInfo(int sectorId, List<Integer> mesas) {
+        private SectorInfo(int sectorId, int[] members) {
             this.sectorId = sectorId;
-            this.mesas = mesas;
+            this.members = members;
+        }
+    }
+
+    /**
+     * Connected registered tables per precomputed sector. Updates arrive under
+     * the {@link TablesService} writer lock; a reset swaps in a fresh array so
+     * readers never see a half-rebuilt set of counts.
+     */
+    private static final class ActiveTableCounter implements TablesService.RegisterListener {
+        private final SectorTopology topology;
+        private volatile AtomicIntegerArray counts;
+
+        private ActiveTableCounter(SectorTopology topology) {
+            this.topology = topology;
+            this.counts = new AtomicIntegerArray(topology.precomputedSectorCount() + 1);
+        }
+
+        int get(int sectorId) {
+            AtomicIntegerArray current = counts;
+            return sectorId > 0 && sectorId < current.length() ? current.get(sectorId) : 0;
+        }
+
+        @Override
+        public void onRegisterChanged(RegisterTable before, RegisterTable after) {
+            AtomicIntegerArray current = counts;
+            if (before != null && !before.disconnected()) {
+                adjust(current, before.tableNumber(), -1);
+            }
+            if (after != null && !after.disconnected()) {
+                adjust(current, after.tableNumber(), 1);
+            }
+        }
+
+        @Override
+        public void onRegisterReset(List<RegisterTable> tables) {
+            AtomicIntegerArray next = new AtomicIntegerArray(topology.precomputedSectorCount() + 1);
+            for (RegisterTable table : tables) {
+                if (!table.disconnected()) {
+                    adjust(next, table.tableNumber(), 1);
+                }
+            }
+            counts = next;
+        }
+
+        private void adjust(AtomicIntegerArray target, int tableNumber, int delta) {
+            int sectorId = topology.sectorOf(tableNumber);
+            if (sectorId < target.length()) {
+                target.addAndGet(sectorId, delta);
+            }
         }
     }
 }
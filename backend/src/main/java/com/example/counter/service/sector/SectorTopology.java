@@ -0,0 +1,153 @@
+package com.example.counter.service.sector;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Static mapping of mesas to sectors, computed once at startup.
+ * <p>
+ * The layout is a list of explicit ranges ({@code sector.fixed}, default
+ * {@code 1-4,5-8}) that become sectors 1..n, followed by consecutive groups
+ * of {@code sector.group.size} mesas starting at {@code sector.group.start}.
+ * Mesas up to {@code sector.mesa.max} are resolved with a single array read;
+ * higher numbers fall back to the same arithmetic.
+ */
+@Component
+public class SectorTopology {
+    public static final int MESA_GROUP_START = 9;
+    public static final int MESA_GROUP_SIZE = 3;
+    public static final String DEFAULT_FIXED_RANGES = "1-4,5-8";
+    public static final int DEFAULT_MAX_MESA = 500;
+
+    private final int[][] fixedRanges;
+    private final int groupStart;
+    private final int groupSize;
+    private final int[] sectorByMesa;
+    private final int[][] membersBySector;
+
+    public SectorTopology(@Value("${sector.fixed:" + DEFAULT_FIXED_RANGES + "}") String fixed,
+            @Value("${sector.group.start:" + MESA_GROUP_START + "}") int groupStart,
+            @Value("${sector.group.size:" + MESA_GROUP_SIZE + "}") int groupSize,
+            @Value("${sector.mesa.max:" + DEFAULT_MAX_MESA + "}") int maxMesa) {
+        this.fixedRanges = parseRanges(fixed);
+        this.groupStart = Math.max(1, groupStart);
+        this.groupSize = Math.max(1, groupSize);
+        validate();
+
+        int max = Math.max(this.groupStart, maxMesa);
+        this.sectorByMesa = new int[max + 1];
+        for (int mesa = 0; mesa <= max; mesa++) {
+            sectorByMesa[mesa] = computeSector(mesa);
+        }
+        int lastSector = sectorByMesa[max];
+        this.membersBySector = new int[lastSector + 1][];
+        for (int sector = 1; sector <= lastSector; sector++) {
+            membersBySector[sector] = computeMembers(sector);
+        }
+    }
+
+    public static SectorTopology defaults() {
+        return new SectorTopology(DEFAULT_FIXED_RANGES, MESA_GROUP_START, MESA_GROUP_SIZE, DEFAULT_MAX_MESA);
+    }
+
+    public int sectorOf(int mesaId) {
+        int safeMesaId = Math.max(1, mesaId);
+        return safeMesaId < sectorByMesa.length ? sectorByMesa[safeMesaId] : computeSector(safeMesaId);
+    }
+
+    /**
+     * Mesa numbers belonging to a sector, in ascending order. The returned
+     * array is shared and must not be modified.
+     */
+    public int[] members(int sectorId) {
+        if (sectorId > 0 && sectorId < membersBySector.length) {
+            return membersBySector[sectorId];
+        }
+        return computeMembers(sectorId);
+    }
+
+    /**
+     * Number of sectors resolved from the precomputed table.
+     */
+    public int precomputedSectorCount() {
+        return membersBySector.length - 1;
+    }
+
+    private int computeSector(int mesaId) {
+        int safeMesaId = Math.max(1, mesaId);
+        for (int i = 0; i < fixedRanges.length; i++) {
+            if (safeMesaId >= fixedRanges[i][0] && safeMesaId <= fixedRanges[i][1]) {
+                return i + 1;
+            }
+        }
+        int group = Math.max(0, (safeMesaId - groupStart) / groupSize);
+        return fixedRanges.length + 1 + group;
+    }
+
+    private int[] computeMembers(int sectorId) {
+        if (sectorId >= 1 && sectorId <= fixedRanges.length) {
+            int[] range = fixedRanges[sectorId - 1];
+            return rangeArray(range[0], range[1]);
+        }
+        int group = Math.max(0, sectorId - fixedRanges.length - 1);
+        int start = groupStart + (group * groupSize);
+        return rangeArray(start, start + groupSize - 1);
+    }
+
+    private void validate() {
+        // Every mesa below the first group must belong to exactly one range
+        for (int mesa = 1; mesa < groupStart; mesa++) {
+            int matches = 0;
+            for (int[] range : fixedRanges) {
+                if (mesa >= range[0] && mesa <= range[1]) {
+                    matches++;
+                }
+            }
+            if (matches != 1) {
+                throw new IllegalArgumentException(
+                        "sector.fixed must cover mesas 1-" + (groupStart - 1) + " exactly once (mesa " + mesa + ")");
+            }
+        }
+        for (int[] range : fixedRanges) {
+            if (range[1] >= groupStart) {
+                throw new IllegalArgumentException("sector.fixed range overlaps sector.group.start: "
+                        + range[0] + "-" + range[1]);
+            }
+        }
+    }
+
+    private static int[][] parseRanges(String spec) {
+        List<int[]> ranges = new ArrayList<>();
+        if (spec != null) {
+            for (String part : spec.split(",")) {
+                String p = part.trim();
+                if (p.isEmpty()) {
+                    continue;
+                }
+                String[] bounds = p.split("-");
+                try {
+                    int start = Integer.parseInt(bounds[0].trim());
+                    int end = bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : start;
+                    if (start < 1 || end < start) {
+                        throw new IllegalArgumentException("Invalid sector range: " + p);
+                    }
+                    ranges.add(new int[] { start, end });
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid sector range: " + p, e);
+                }
+            }
+        }
+        return ranges.toArray(new int[0][]);
+    }
+
+    private static int[] rangeArray(int start, int end) {
+        int[] out = new int[end - start + 1];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = start + i;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.counter.service.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * In-memory index of the snapshot files of one directory, newest first.
+ * <p>
+ * Built from a single listing (one stat per file) the first time it is used
+ * and then kept current by {@link SnapshotService}'s own writes and deletes,
+ * so listing, finding the latest file and pruning make no further syscalls.
+ * Files copied in by hand show up after {@link #rescan()}. Delta files are
+ * tracked per base key instead of being listed.
+ */
+public final class BackupIndex {
+
+    public record Entry(String name, long size, long modified) {
+    }
+
+    private static final Comparator<Entry> NEWEST_FIRST = Comparator.comparingLong(Entry::modified).reversed()
+            .thenComparing(Entry::name);
+
+    private final Path dir;
+    private final Predicate<String> isSnapshot;
+    private final Function<String, String> deltaBaseKey;
+    private final NavigableSet<Entry> entries = new TreeSet<>(NEWEST_FIRST);
+    private final Map<String, Entry> byName = new HashMap<>();
+    private final Map<String, NavigableSet<String>> deltasByBase = new HashMap<>();
+    private boolean scanned;
+    private List<Entry> listed;
+
+    BackupIndex(Path dir, Predicate<String> isSnapshot, Function<String, String> deltaBaseKey) {
+        this.dir = dir;
+        this.isSnapshot = isSnapshot;
+        this.deltaBaseKey = deltaBaseKey;
+    }
+
+    Path dir() {
+        return dir;
+    }
+
+    /** Forget everything and list the directory again. */
+    synchronized void rescan() throws IOException {
+        entries.clear();
+        byName.clear();
+        deltasByBase.clear();
+        listed = null;
+        scanned = true;
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (var s = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                track(p);
+            }
+        }
+    }
+
+    /** Record a file just written (or replaced) in the directory. */
+    synchronized void added(Path file) throws IOException {
+        ensureScanned();
+        remove(file.getFileName().toString());
+        track(file);
+    }
+
+    /** Record a file just deleted from the directory. */
+    synchronized void removed(String name) {
+        if (scanned) {
+            remove(name);
+        }
+    }
+
+    /** Snapshot files, newest first, as an immutable list. */
+    synchronized List<Entry> list() throws IOException {
+        ensureScanned();
+        if (listed == null) {
+            listed = List.copyOf(entries);
+        }
+        return listed;
+    }
+
+    synchronized Entry find(String name) throws IOException {
+        ensureScanned();
+        return byName.get(name);
+    }
+
+    synchronized Entry latest() throws IOException {
+        ensureScanned();
+        return entries.isEmpty() ? null : entries.first();
+    }
+
+    /** Snapshot files modified before {@code cutoff}, oldest first. */
+    synchronized List<Entry> olderThan(long cutoff) throws IOException {
+        ensureScanned();
+        List<Entry> out = new ArrayList<>();
+        for (Entry e : entries.descendingSet()) {
+            if (e.modified() >= cutoff) {
+                break;
+            }
+            out.add(e);
+        }
+        return out;
+    }
+
+    /** Snapshot files past the newest {@code keep}, oldest first. */
+    synchronized List<Entry> beyond(int keep) throws IOException {
+        ensureScanned();
+        List<Entry> out = new ArrayList<>();
+        int excess = entries.size() - Math.max(0, keep);
+        for (Entry e : entries.descendingSet()) {
+            if (out.size() >= excess) {
+                break;
+            }
+            out.add(e);
+        }
+        return out;
+    }
+
+    /** Delta file names of a base, in name order. */
+    synchronized List<String> deltasOf(String baseKey) throws IOException {
+        ensureScanned();
+        NavigableSet<String> names = deltasByBase.get(baseKey);
+        return names == null ? List.of() : List.copyOf(names);
+    }
+
+    synchronized Set<String> deltaBaseKeys() throws IOException {
+        ensureScanned();
+        return Set.copyOf(deltasByBase.keySet());
+    }
+
+    private void ensureScanned() throws IOException {
+        if (!scanned) {
+            rescan();
+        }
+    }
+
+    private void track(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        if (isSnapshot.test(name)) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return;
+            }
+            Entry entry = new Entry(name, attrs.size(), attrs.lastModifiedTime().toMillis());
+            entries.add(entry);
+            byName.put(name, entry);
+            listed = null;
+            return;
+        }
+        String key = deltaBaseKey.apply(name);
+        if (key != null) {
+            deltasByBase.computeIfAbsent(key, k -> new TreeSet<>()).add(name);
+        }
+    }
+
+    private void remove(String name) {
+        Entry entry = byName.remove(name);
+        if (entry != null) {
+            entries.remove(entry);
+            listed = null;
+            return;
+        }
+        String key = deltaBaseKey.apply(name);
+        NavigableSet<String> names = key == null ? null : deltasByBase.get(key);
+        if (names != null && names.remove(name) && names.isEmpty()) {
+            deltasByBase.remove(key);
+        }
+    }
+}
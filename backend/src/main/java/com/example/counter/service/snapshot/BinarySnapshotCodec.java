@@ -0,0 +1,621 @@
+package com.example.counter.service.snapshot;
+
+import com.example.counter.service.mesa.MesaCounterService.AvatarDefeat;
+import com.example.counter.service.mesa.MesaCounterService.SpecialDefeat;
+import com.example.counter.service.mesa.MesaCounterService.TotalesMesa;
+import com.example.counter.service.model.CounterState;
+import com.example.counter.service.model.FreeGamePlayerInfo;
+import com.example.counter.service.model.FreeGameTable;
+import com.example.counter.service.model.PlayerInfo;
+import com.example.counter.service.model.RegisterTable;
+import com.example.counter.service.sector.SectorService.IndicatorState;
+import com.example.counter.service.sector.SectorService.MesaIndicators;
+import com.example.counter.service.snapshot.SnapshotService.SnapshotData;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Versioned binary encoding of {@link SnapshotData}.
+ * <p>
+ * Layout: the magic {@code LKSN}, a format version byte and a flags byte
+ * (bit 0: the rest is gzip-compressed), then the sections in a fixed order.
+ * Integers are LEB128 varints (zig-zag for signed values), nullable values
+ * carry a presence marker, and strings are interned: the first occurrence is
+ * written inline and later ones as a back-reference, so the few hero, avatar
+ * and difficulty names repeated across hundreds of defeats cost one or two
+ * bytes each. Defeat timestamps are delta-encoded against the previous one.
+ */
+final class BinarySnapshotCodec {
+
+    static final byte[] MAGIC = { 'L', 'K', 'S', 'N' };
+    static final int VERSION = 1;
+    private static final int FLAG_GZIP = 1;
+    // Bounds for untrusted input: uploads are parsed by this reader. A body
+    // that decodes past MAX_BODY_BYTES, or a count or string length larger
+    // than the bytes it could still be made of, is rejected as corrupt.
+    static final long MAX_BODY_BYTES = 64L * 1024 * 1024;
+    static final int MAX_COUNT = 1_000_000;
+
+    private BinarySnapshotCodec() {
+    }
+
+    /**
+     * True if {@code head} is the start of a gzip-compressed binary snapshot.
+     */
+    static boolean isCompressed(byte[] head, int length) {
+        return isBinary(head, length) && length >= MAGIC.length + 2 && (head[MAGIC.length + 1] & FLAG_GZIP) != 0;
+    }
+
+    /**
+     * True if {@code head} starts with the binary snapshot magic.
+     */
+    static boolean isBinary(byte[] head, int length) {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (head[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // --- writing ---
+
+    /**
+     * Writes sections in order. Callers fetch each section right before
+     * handing it over, as the JSON writer does.
+     */
+    static final class Writer implements AutoCloseable {
+        private final OutputStream raw;
+        private final GZIPOutputStream gzip;
+        private final Out out;
+
+        Writer(OutputStream os, boolean compress) throws IOException {
+            this.raw = os;
+            os.write(MAGIC);
+            os.write(VERSION);
+            os.write(compress ? FLAG_GZIP : 0);
+            this.gzip = compress ? new GZIPOutputStream(os, 64 * 1024) : null;
+            this.out = new Out(gzip != null ? gzip : os);
+        }
+
+        void header(long ts, boolean qrEvent, boolean qrFreegame) throws IOException {
+            out.varLong(ts);
+            out.bool(qrEvent);
+            out.bool(qrFreegame);
+        }
+
+        void counter(CounterState c) throws IOException {
+            out.bool(c != null);
+            if (c == null) {
+                return;
+            }
+            out.sInt(c.primary);
+            out.nullableInt(c.primaryMax);
+            out.sInt(c.tertiary);
+            out.nullableInt(c.tertiaryMax);
+            out.nullableInt(c.secondaryHeroes);
+            out.nullableInt(c.secondaryPlan);
+        }
+
+        void registerTables(List<RegisterTable> tables) throws IOException {
+            out.count(tables);
+            if (tables == null) {
+                return;
+            }
+            for (RegisterTable t : tables) {
+                out.str(t.id());
+                out.sInt(t.tableNumber());
+                out.str(t.tableName());
+                out.str(t.difficulty());
+                out.sInt(t.players());
+                out.count(t.playersInfo());
+                if (t.playersInfo() != null) {
+                    for (PlayerInfo p : t.playersInfo()) {
+                        out.str(p == null ? null : p.character());
+                        out.str(p == null ? null : p.aspect());
+                    }
+                }
+                out.str(t.code());
+                out.instant(t.createdAt());
+                out.str(t.avatar());
+                out.str(t.realityId());
+                out.str(t.realityName());
+                out.bool(t.disconnected());
+            }
+        }
+
+        void freeGameTables(List<FreeGameTable> tables) throws IOException {
+            out.count(tables);
+            if (tables == null) {
+                return;
+            }
+            for (FreeGameTable t : tables) {
+                out.str(t.id());
+                out.sInt(t.tableNumber());
+                out.str(t.name());
+                out.str(t.difficulty());
+                out.str(t.inevitableChallenge());
+                out.sInt(t.players());
+                out.count(t.playersInfo());
+                if (t.playersInfo() != null) {
+                    for (FreeGamePlayerInfo p : t.playersInfo()) {
+                        out.str(p == null ? null : p.character());
+                        out.str(p == null ? null : p.aspect());
+                        out.str(p == null ? null : p.legacy());
+                    }
+                }
+                out.str(t.code());
+                out.sInt(t.victoryPoints());
+                out.bool(t.scenarioCleared());
+                out.instant(t.createdAt());
+            }
+        }
+
+        void mesaTotals(Map<Integer, TotalesMesa> totals) throws IOException {
+            out.count(totals);
+            if (totals == null) {
+                return;
+            }
+            for (var e : totals.entrySet()) {
+                TotalesMesa t = e.getValue() == null ? new TotalesMesa() : e.getValue();
+                out.sInt(e.getKey());
+                out.sInt(t.avatar0);
+                out.sInt(t.avatar1);
+                out.sInt(t.avatar2);
+                out.sInt(t.avatar3);
+                out.sInt(t.rupturaTotal);
+                out.sInt(t.threatFromHeroes);
+                out.sInt(t.threatFromPlan);
+                Map<String, Integer> heroes = t.getDefeatedHeroes();
+                out.count(heroes);
+                for (var h : heroes.entrySet()) {
+                    out.str(h.getKey());
+                    out.sInt(h.getValue());
+                }
+                out.str(t.tableName);
+                out.str(t.realityName);
+                out.nullableInt(t.sectorId);
+            }
+        }
+
+        void avatarDefeats(List<AvatarDefeat> defeats) throws IOException {
+            out.count(defeats);
+            if (defeats == null) {
+                return;
+            }
+            long previous = 0;
+            for (AvatarDefeat d : defeats) {
+                out.str(d.avatarName);
+                out.sInt(d.mesaId);
+                out.sInt(d.mesaNumber);
+                out.sInt(d.rupturaAmount);
+                out.sLong(d.timestamp - previous);
+                previous = d.timestamp;
+            }
+        }
+
+        void specialDefeats(List<SpecialDefeat> defeats) throws IOException {
+            out.count(defeats);
+            if (defeats == null) {
+                return;
+            }
+            long previous = 0;
+            for (SpecialDefeat d : defeats) {
+                out.str(d.key);
+                out.str(d.avatarName);
+                out.sInt(d.mesaId);
+                out.sInt(d.mesaNumber);
+                out.sInt(d.rupturaAmount);
+                out.sLong(d.timestamp - previous);
+                previous = d.timestamp;
+            }
+        }
+
+        void sectorStates(Map<Integer, MesaIndicators> states) throws IOException {
+            out.count(states);
+            if (states == null) {
+                return;
+            }
+            for (var e : states.entrySet()) {
+                MesaIndicators m = e.getValue() == null ? new MesaIndicators() : e.getValue();
+                out.sInt(e.getKey());
+                out.sInt(m.mesaId);
+                indicator(m.mangog);
+                indicator(m.gate);
+            }
+        }
+
+        private void indicator(IndicatorState s) throws IOException {
+            out.bool(s != null);
+            if (s == null) {
+                return;
+            }
+            out.str(s.key);
+            out.nullableInt(s.activeMesaId);
+            out.sInt(s.value);
+            out.bool(s.defeated);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+            if (gzip != null) {
+                gzip.finish();
+            }
+            raw.flush();
+        }
+    }
+
+    // --- reading ---
+
+    static SnapshotData read(InputStream is) throws IOException {
+        return read(is, -1);
+    }
+
+    /**
+     * Read a binary snapshot. {@code length} is the size of the whole input
+     * if known (a file), -1 if not (an upload); it bounds an uncompressed
+     * body more tightly than {@link #MAX_BODY_BYTES}.
+     */
+    static SnapshotData read(InputStream is, long length) throws IOException {
+        byte[] head = is.readNBytes(MAGIC.length + 2);
+        if (!isBinary(head, head.length) || head.length < MAGIC.length + 2) {
+            throw new IOException("Not a binary snapshot");
+        }
+        int version = head[MAGIC.length] & 0xff;
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        int flags = head[MAGIC.length + 1] & 0xff;
+        boolean gzip = (flags & FLAG_GZIP) != 0;
+        InputStream body = gzip ? new GZIPInputStream(is, 64 * 1024) : is;
+        long limit = gzip || length < 0 ? MAX_BODY_BYTES : Math.min(MAX_BODY_BYTES, length - head.length);
+        In in = new In(new BufferedInputStream(body), limit);
+
+        SnapshotData data = new SnapshotData();
+        data.ts = in.varLong();
+        data.qrEventEnabled = in.bool();
+        data.qrFreegameEnabled = in.bool();
+
+        if (in.bool()) {
+            data.counter = new CounterState(in.sInt(), in.nullableInt(), in.sInt(), in.nullableInt(),
+                    in.nullableInt(), in.nullableInt());
+        }
+
+        int n = in.count();
+        if (n >= 0) {
+            data.registerTables = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                String id = in.str();
+                int tableNumber = in.sInt();
+                String tableName = in.str();
+                String difficulty = in.str();
+                int players = in.sInt();
+                List<PlayerInfo> playersInfo = null;
+                int p = in.count();
+                if (p >= 0) {
+                    playersInfo = new ArrayList<>();
+                    for (int j = 0; j < p; j++) {
+                        playersInfo.add(new PlayerInfo(in.str(), in.str()));
+                    }
+                }
+                data.registerTables.add(new RegisterTable(id, tableNumber, tableName, difficulty, players,
+                        playersInfo, in.str(), in.instant(), in.str(), in.str(), in.str(), in.bool()));
+            }
+        }
+
+        n = in.count();
+        if (n >= 0) {
+            data.freeGameTables = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                String id = in.str();
+                int tableNumber = in.sInt();
+                String name = in.str();
+                String difficulty = in.str();
+                String challenge = in.str();
+                int players = in.sInt();
+                List<FreeGamePlayerInfo> playersInfo = null;
+                int p = in.count();
+                if (p >= 0) {
+                    playersInfo = new ArrayList<>();
+                    for (int j = 0; j < p; j++) {
+                        playersInfo.add(new FreeGamePlayerInfo(in.str(), in.str(), in.str()));
+                    }
+                }
+                data.freeGameTables.add(new FreeGameTable(id, tableNumber, name, difficulty, challenge, players,
+                        playersInfo, in.str(), in.sInt(), in.bool(), in.instant()));
+            }
+        }
+
+        n = in.count();
+        if (n >= 0) {
+            data.mesaTotals = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                int key = in.sInt();
+                TotalesMesa t = new TotalesMesa();
+                t.avatar0 = in.sInt();
+                t.avatar1 = in.sInt();
+                t.avatar2 = in.sInt();
+                t.avatar3 = in.sInt();
+                t.rupturaTotal = in.sInt();
+                t.threatFromHeroes = in.sInt();
+                t.threatFromPlan = in.sInt();
+                int h = in.count();
+                for (int j = 0; j < h; j++) {
+                    t.addHeroDefeats(in.str(), in.sInt());
+                }
+                t.tableName = in.str();
+                t.realityName = in.str();
+                t.sectorId = in.nullableInt();
+                data.mesaTotals.put(key, t);
+            }
+        }
+
+        n = in.count();
+        if (n >= 0) {
+            data.avatarDefeats = new ArrayList<>();
+            long ts = 0;
+            for (int i = 0; i < n; i++) {
+                String name = in.str();
+                int mesaId = in.sInt();
+                int mesaNumber = in.sInt();
+                int ruptura = in.sInt();
+                ts += in.sLong();
+                data.avatarDefeats.add(new AvatarDefeat(name, mesaId, mesaNumber, ruptura, ts));
+            }
+        }
+
+        n = in.count();
+        if (n >= 0) {
+            data.specialDefeats = new ArrayList<>();
+            long ts = 0;
+            for (int i = 0; i < n; i++) {
+                String key = in.str();
+                String name = in.str();
+                int mesaId = in.sInt();
+                int mesaNumber = in.sInt();
+                int ruptura = in.sInt();
+                ts += in.sLong();
+                data.specialDefeats.add(new SpecialDefeat(key, name, mesaId, mesaNumber, ruptura, ts));
+            }
+        }
+
+        n = in.count();
+        if (n >= 0) {
+            data.sectorStates = new LinkedHashMap<>();
+            for (int i = 0; i < n; i++) {
+                int key = in.sInt();
+                MesaIndicators m = new MesaIndicators();
+                m.mesaId = in.sInt();
+                m.mangog = readIndicator(in);
+                m.gate = readIndicator(in);
+                data.sectorStates.put(key, m);
+            }
+        }
+        return data;
+    }
+
+    private static IndicatorState readIndicator(In in) throws IOException {
+        if (!in.bool()) {
+            return null;
+        }
+        IndicatorState s = new IndicatorState(in.str());
+        s.activeMesaId = in.nullableInt();
+        s.value = in.sInt();
+        s.defeated = in.bool();
+        return s;
+    }
+
+    // --- primitives ---
+
+    private static final class Out {
+        private final OutputStream os;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final byte[] buf = new byte[8192];
+        private int pos;
+
+        Out(OutputStream os) {
+            this.os = os;
+        }
+
+        void bool(boolean v) throws IOException {
+            rawByte(v ? 1 : 0);
+        }
+
+        void sInt(int v) throws IOException {
+            sLong(v);
+        }
+
+        void sLong(long v) throws IOException {
+            varLong((v << 1) ^ (v >> 63));
+        }
+
+        // 0 = null, otherwise zig-zag value + 1
+        void nullableInt(Integer v) throws IOException {
+            varLong(v == null ? 0 : ((((long) v) << 1) ^ (((long) v) >> 63)) + 1);
+        }
+
+        // -1 (written as 0) = null collection
+        void count(Collection<?> c) throws IOException {
+            varLong(c == null ? 0 : c.size() + 1L);
+        }
+
+        void count(Map<?, ?> m) throws IOException {
+            varLong(m == null ? 0 : m.size() + 1L);
+        }
+
+        void instant(Instant t) throws IOException {
+            bool(t != null);
+            if (t != null) {
+                sLong(t.getEpochSecond());
+                varLong(t.getNano());
+            }
+        }
+
+        // 0 = null, 1 = new string inline, n >= 2 = reference to string n - 2
+        void str(String s) throws IOException {
+            if (s == null) {
+                varLong(0);
+                return;
+            }
+            Integer ref = strings.get(s);
+            if (ref != null) {
+                varLong(ref + 2L);
+                return;
+            }
+            strings.put(s, strings.size());
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varLong(1);
+            varLong(bytes.length);
+            flush();
+            os.write(bytes);
+        }
+
+        void varLong(long v) throws IOException {
+            if (pos > buf.length - 10) {
+                flush();
+            }
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        private void rawByte(int b) throws IOException {
+            if (pos == buf.length) {
+                flush();
+            }
+            buf[pos++] = (byte) b;
+        }
+
+        void flush() throws IOException {
+            if (pos > 0) {
+                os.write(buf, 0, pos);
+                pos = 0;
+            }
+        }
+    }
+
+    private static final class In {
+        private final InputStream is;
+        private final List<String> strings = new ArrayList<>();
+        private final long limit;
+        private long consumed;
+
+        In(InputStream is, long limit) {
+            this.is = is;
+            this.limit = limit;
+        }
+
+        // Every counted item takes at least one byte
+        private long remaining() {
+            return limit - consumed;
+        }
+
+        boolean bool() throws IOException {
+            return read() != 0;
+        }
+
+        int sInt() throws IOException {
+            return (int) sLong();
+        }
+
+        long sLong() throws IOException {
+            long v = varLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        Integer nullableInt() throws IOException {
+            long v = varLong();
+            if (v == 0) {
+                return null;
+            }
+            v -= 1;
+            return (int) ((v >>> 1) ^ -(v & 1));
+        }
+
+        int count() throws IOException {
+            long v = varLong();
+            if (v - 1 > Math.min(MAX_COUNT, remaining())) {
+                throw new IOException("Invalid count " + (v - 1));
+            }
+            return (int) v - 1;
+        }
+
+        Instant instant() throws IOException {
+            if (!bool()) {
+                return null;
+            }
+            long seconds = sLong();
+            return Instant.ofEpochSecond(seconds, varLong());
+        }
+
+        String str() throws IOException {
+            long tag = varLong();
+            if (tag == 0) {
+                return null;
+            }
+            if (tag == 1) {
+                long len = varLong();
+                if (len > remaining()) {
+                    throw new IOException("Invalid string length " + len);
+                }
+                byte[] bytes = is.readNBytes((int) len);
+                if (bytes.length != len) {
+                    throw new EOFException();
+                }
+                consumed += len;
+                String s = new String(bytes, StandardCharsets.UTF_8);
+                strings.add(s);
+                return s;
+            }
+            long ref = tag - 2;
+            if (ref >= strings.size()) {
+                throw new IOException("Invalid string reference " + ref);
+            }
+            return strings.get((int) ref);
+        }
+
+        long varLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private int read() throws IOException {
+            if (consumed >= limit) {
+                throw new IOException("Snapshot body larger than " + limit + " bytes");
+            }
+            int b = is.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            consumed++;
+            return b;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.counter.service.snapshot;
+
+import com.example.counter.service.model.FreeGameTable;
+import com.example.counter.service.model.RegisterTable;
+import com.example.counter.service.snapshot.SnapshotService.DeltaData;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Remembers what the last written snapshot file (base or delta) held, so the
+ * next delta only carries what changed since.
+ * <p>
+ * Entries are kept as JSON trees and compared structurally; defeat lists are
+ * append-only between bases, so only their length and first and last entries
+ * are kept (compared by value: the log builds its entries on each read).
+ * Only sections whose service version moved since the last file are compared.
+ * Anything a delta cannot express (removed entries, a cleared or restored
+ * defeat list) asks for a new base instead. Not thread-safe:
+ * {@link SnapshotService} calls it under its own lock.
+ */
+final class DeltaTracker {
+
+    private final ObjectMapper mapper;
+
+    private String baseKey;
+    private long baseWrittenAt;
+    private int seq;
+    private boolean baseRequired;
+    private long[] versions;
+
+    private JsonNode counter;
+    private Map<String, JsonNode> registers;
+    private Map<String, JsonNode> freeGames;
+    private boolean qrEvent;
+    private boolean qrFreegame;
+    private Map<Integer, JsonNode> totals;
+    private int avatarCount;
+    private Object firstAvatar;
+    private Object lastAvatar;
+    private int specialCount;
+    private Object firstSpecial;
+    private Object lastSpecial;
+    private Map<Integer, JsonNode> sectors;
+
+    DeltaTracker(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    boolean hasBase() {
+        return baseKey != null;
+    }
+
+    long baseWrittenAt() {
+        return baseWrittenAt;
+    }
+
+    /** Whether the last written file already holds the state at {@code now}. */
+    boolean isCurrent(long[] now) {
+        return baseKey != null && Arrays.equals(versions, now);
+    }
+
+    /** Whether deltas were written on top of the tracked base. */
+    boolean hasDeltas() {
+        return baseKey != null && seq > 0;
+    }
+
+    /** Forget the base, e.g. after a failed write or a restore. */
+    void reset() {
+        baseKey = null;
+    }
+
+    /** Track {@code capture}, just written as the base {@code key}. */
+    void commitBase(String key, StateCapture capture, long now) {
+        versions = capture.versions;
+        counter = tree(capture.counter);
+        registers = trees(capture.registerTables, RegisterTable::id);
+        freeGames = trees(capture.freeGameTables, FreeGameTable::id);
+        qrEvent = capture.qrEventEnabled;
+        qrFreegame = capture.qrFreegameEnabled;
+        totals = trees(capture.mesaTotals);
+        trackAvatars(capture.avatarDefeats);
+        trackSpecials(capture.specialDefeats);
+        sectors = trees(capture.sectorStates);
+        baseKey = key;
+        baseWrittenAt = now;
+        seq = 0;
+        baseRequired = false;
+    }
+
+    /**
+     * Whether the last {@link #diff} met a change only a base can hold.
+     */
+    boolean baseRequired() {
+        return baseRequired;
+    }
+
+    /**
+     * Changes from the tracked state to {@code capture}, advancing the tracked
+     * state. Returns {@code null} when nothing changed or when
+     * {@link #baseRequired()}.
+     */
+    DeltaData diff(StateCapture capture) {
+        long[] now = capture.versions;
+        DeltaData d = new DeltaData();
+        boolean changed = false;
+        if (now[StateCapture.COUNTER] != versions[StateCapture.COUNTER]) {
+            JsonNode node = tree(capture.counter);
+            if (!node.equals(counter)) {
+                counter = node;
+                d.counter = capture.counter;
+                changed = true;
+            }
+        }
+        if (now[StateCapture.TABLES] != versions[StateCapture.TABLES]) {
+            changed |= diffTables(capture, d);
+        }
+        if (now[StateCapture.MESAS] != versions[StateCapture.MESAS]) {
+            changed |= diffMesas(capture, d);
+        }
+        if (now[StateCapture.SECTORS] != versions[StateCapture.SECTORS]) {
+            Map<Integer, JsonNode> next = trees(capture.sectorStates);
+            d.sectorStates = changedEntries(capture.sectorStates, next, sectors);
+            baseRequired |= !next.keySet().containsAll(sectors.keySet());
+            sectors = next;
+            changed |= d.sectorStates != null;
+        }
+        versions = now;
+        if (baseRequired || !changed) {
+            return null;
+        }
+        d.base = baseKey;
+        d.seq = ++seq;
+        d.ts = capture.ts;
+        return d;
+    }
+
+    private boolean diffTables(StateCapture capture, DeltaData d) {
+        boolean changed = false;
+        Map<String, JsonNode> nextReg = trees(capture.registerTables, RegisterTable::id);
+        List<RegisterTable> regChanged = new ArrayList<>();
+        for (RegisterTable t : capture.registerTables) {
+            if (!nextReg.get(t.id()).equals(registers.get(t.id()))) {
+                regChanged.add(t);
+            }
+        }
+        List<String> deleted = new ArrayList<>();
+        for (String id : registers.keySet()) {
+            if (!nextReg.containsKey(id)) {
+                deleted.add(id);
+            }
+        }
+        registers = nextReg;
+        if (!regChanged.isEmpty()) {
+            d.registerTables = regChanged;
+            changed = true;
+        }
+        if (!deleted.isEmpty()) {
+            d.deletedRegisterTables = deleted;
+            changed = true;
+        }
+
+        Map<String, JsonNode> nextFree = trees(capture.freeGameTables, FreeGameTable::id);
+        List<FreeGameTable> freeChanged = new ArrayList<>();
+        for (FreeGameTable t : capture.freeGameTables) {
+            if (!nextFree.get(t.id()).equals(freeGames.get(t.id()))) {
+                freeChanged.add(t);
+            }
+        }
+        baseRequired |= !nextFree.keySet().containsAll(freeGames.keySet());
+        freeGames = nextFree;
+        if (!freeChanged.isEmpty()) {
+            d.freeGameTables = freeChanged;
+            changed = true;
+        }
+
+        if (capture.qrEventEnabled != qrEvent || capture.qrFreegameEnabled != qrFreegame) {
+            qrEvent = capture.qrEventEnabled;
+            qrFreegame = capture.qrFreegameEnabled;
+            d.qrEventEnabled = qrEvent;
+            d.qrFreegameEnabled = qrFreegame;
+            changed = true;
+        }
+        return changed;
+    }
+
+    private boolean diffMesas(StateCapture capture, DeltaData d) {
+        Map<Integer, JsonNode> next = trees(capture.mesaTotals);
+        d.mesaTotals = changedEntries(capture.mesaTotals, next, totals);
+        baseRequired |= !next.keySet().containsAll(totals.keySet());
+        totals = next;
+
+        var avatars = capture.avatarDefeats;
+        if (!appendedTo(avatars, avatarCount, firstAvatar, lastAvatar)) {
+            baseRequired = true;
+        } else if (avatars.size() > avatarCount) {
+            d.avatarDefeats = avatars.subList(avatarCount, avatars.size());
+        }
+        trackAvatars(avatars);
+
+        var specials = capture.specialDefeats;
+        if (!appendedTo(specials, specialCount, firstSpecial, lastSpecial)) {
+            baseRequired = true;
+        } else if (specials.size() > specialCount) {
+            d.specialDefeats = specials.subList(specialCount, specials.size());
+        }
+        trackSpecials(specials);
+
+        return d.mesaTotals != null || d.avatarDefeats != null || d.specialDefeats != null;
+    }
+
+    private void trackAvatars(List<?> list) {
+        avatarCount = list.size();
+        firstAvatar = list.isEmpty() ? null : list.get(0);
+        lastAvatar = list.isEmpty() ? null : list.get(list.size() - 1);
+    }
+
+    private void trackSpecials(List<?> list) {
+        specialCount = list.size();
+        firstSpecial = list.isEmpty() ? null : list.get(0);
+        lastSpecial = list.isEmpty() ? null : list.get(list.size() - 1);
+    }
+
+    // The list still starts with what was tracked: same length or longer, and
+    // the entries tracked as first and last are still in their places.
+    private static boolean appendedTo(List<?> list, int count, Object first, Object last) {
+        if (list.size() < count) {
+            return false;
+        }
+        return count == 0 || (first.equals(list.get(0)) && last.equals(list.get(count - 1)));
+    }
+
+    private static <V> Map<Integer, V> changedEntries(Map<Integer, V> values, Map<Integer, JsonNode> next,
+            Map<Integer, JsonNode> previous) {
+        Map<Integer, V> changed = new HashMap<>();
+        for (var e : next.entrySet()) {
+            if (!e.getValue().equals(previous.get(e.getKey()))) {
+                changed.put(e.getKey(), values.get(e.getKey()));
+            }
+        }
+        return changed.isEmpty() ? null : changed;
+    }
+
+    private <T> Map<String, JsonNode> trees(List<T> values, Function<T, String> id) {
+        Map<String, JsonNode> out = new HashMap<>();
+        for (T v : values) {
+            out.put(id.apply(v), tree(v));
+        }
+        return out;
+    }
+
+    private Map<Integer, JsonNode> trees(Map<Integer, ?> values) {
+        Map<Integer, JsonNode> out = new HashMap<>();
+        for (var e : values.entrySet()) {
+            out.put(e.getKey(), tree(e.getValue()));
+        }
+        return out;
+    }
+
+    private JsonNode tree(Object value) {
+        return mapper.valueToTree(value);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.counter.service.snapshot;
+
+import com.example.counter.service.TablesService;
+import com.example.counter.service.journal.FileMutationJournal;
+import com.example.counter.service.journal.FileMutationJournal.Record;
+import com.example.counter.service.mesa.MesaCounterService;
+import com.example.counter.service.mesa.MesaCounterService.AvatarDefeat;
+import com.example.counter.service.mesa.MesaCounterService.SpecialDefeat;
+import com.example.counter.service.mesa.MesaCounterService.TotalesMesa;
+import com.example.counter.service.model.CounterState;
+import com.example.counter.service.model.FreeGameTable;
+import com.example.counter.service.model.RegisterTable;
+import com.example.counter.service.sector.SectorService;
+import com.example.counter.service.sector.SectorService.MesaIndicators;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Applies journal records on top of a restored snapshot.
+ * <p>
+ * State records simply overwrite. Defeat events are appends, and the first
+ * journal segment after a snapshot may repeat events the snapshot already
+ * holds, so those are matched against the restored lists (as a multiset) and
+ * skipped once each.
+ */
+final class JournalReplay implements Consumer<Record> {
+
+    private final ObjectMapper objectMapper;
+    private final MesaCounterService mesaService;
+    private final SectorService sectorService;
+    private final TablesService tablesService;
+    private final Consumer<CounterState> counterApplier;
+    private final Map<String, Integer> knownDefeats = new HashMap<>();
+    private int skipped;
+
+    JournalReplay(ObjectMapper objectMapper, MesaCounterService mesaService, SectorService sectorService,
+            TablesService tablesService, Consumer<CounterState> counterApplier) {
+        this.objectMapper = objectMapper;
+        this.mesaService = mesaService;
+        this.sectorService = sectorService;
+        this.tablesService = tablesService;
+        this.counterApplier = counterApplier;
+        for (AvatarDefeat d : mesaService.getAvatarDefeatsSnapshot()) {
+            knownDefeats.merge(key(d), 1, Integer::sum);
+        }
+        for (SpecialDefeat d : mesaService.getSpecialDefeatsSnapshot()) {
+            knownDefeats.merge(key(d), 1, Integer::sum);
+        }
+    }
+
+    int getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void accept(Record record) {
+        if (record.type == null) {
+            return;
+        }
+        try {
+            apply(record);
+        } catch (IOException | RuntimeException e) {
+            skipped++;
+        }
+    }
+
+    private void apply(Record r) throws IOException {
+        switch (r.type) {
+            case FileMutationJournal.COUNTER -> counterApplier.accept(read(r, CounterState.class));
+            case FileMutationJournal.MESA_TOTALS ->
+                mesaService.replayTotales(Integer.parseInt(r.key), read(r, TotalesMesa.class));
+            case FileMutationJournal.AVATAR_DEFEAT -> {
+                AvatarDefeat d = read(r, AvatarDefeat.class);
+                if (!consumeKnown(key(d))) {
+                    mesaService.replayAvatarDefeat(d);
+                }
+            }
+            case FileMutationJournal.SPECIAL_DEFEAT -> {
+                SpecialDefeat d = read(r, SpecialDefeat.class);
+                if (!consumeKnown(key(d))) {
+                    mesaService.replaySpecialDefeat(d);
+                }
+            }
+            case FileMutationJournal.MESA_CLEAR -> {
+                mesaService.clearAll();
+                knownDefeats.clear();
+            }
+            case FileMutationJournal.SECTOR ->
+                sectorService.replayMesa(Integer.parseInt(r.key), read(r, MesaIndicators.class));
+            case FileMutationJournal.REGISTER -> tablesService.replayRegister(read(r, RegisterTable.class));
+            case FileMutationJournal.REGISTER_DELETE -> tablesService.replayRegisterDelete(r.key);
+            case FileMutationJournal.FREEGAME -> tablesService.replayFreeGame(read(r, FreeGameTable.class));
+            case FileMutationJournal.QR -> {
+                if (r.value != null) {
+                    tablesService.setEventQrEnabled(r.value.path("event").asBoolean());
+                    tablesService.setFreegameQrEnabled(r.value.path("freegame").asBoolean());
+                }
+            }
+            default -> skipped++;
+        }
+    }
+
+    private <T> T read(Record r, Class<T> type) throws IOException {
+        if (r.value == null) {
+            throw new IOException("missing value for " + r.type);
+        }
+        return objectMapper.treeToValue(r.value, type);
+    }
+
+    private boolean consumeKnown(String key) {
+        Integer n = knownDefeats.get(key);
+        if (n == null) {
+            return false;
+        }
+        if (n <= 1) {
+            knownDefeats.remove(key);
+        } else {
+            knownDefeats.put(key, n - 1);
+        }
+        return true;
+    }
+
+    private static String key(AvatarDefeat d) {
+        return "a|" + d.avatarName + '|' + d.mesaId + '|' + d.rupturaAmount + '|' + d.timestamp;
+    }
+
+    private static String key(SpecialDefeat d) {
+        return "s|" + d.avatarName + '|' + d.mesaId + '|' + d.rupturaAmount + '|' + d.timestamp;
+    }
+}
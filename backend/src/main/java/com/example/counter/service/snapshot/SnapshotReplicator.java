@@ -0,0 +1,291 @@
+package com.example.counter.service.snapshot;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Copies snapshot files to an off-box directory (e.g. a synced drive) on its
+ * own thread, so a slow or unmounted target never delays local backups.
+ * <p>
+ * Jobs go through a small bounded queue; when it is full the oldest job is
+ * dropped, since a newer snapshot supersedes it. Each copy goes to a temp
+ * file that is read back and compared by CRC32C before being renamed into
+ * place. Failures are retried with exponential backoff until they succeed or
+ * a newer job is waiting. The target keeps the newest {@code drive.keep.copies}
+ * snapshots.
+ */
+@Service
+public class SnapshotReplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotReplicator.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    public static class Status {
+        public boolean enabled;
+        public String target;
+        public int queued;
+        public long replicated;
+        public long failures;
+        public int consecutiveFailures;
+        public long dropped;
+        public String lastReplicated;
+        public long lastReplicatedAt;
+        public long lastCopyMs;
+        public String lastError;
+        /** Age of the oldest job not yet replicated, 0 when idle. */
+        public long lagMs;
+    }
+
+    private record Job(Path file, long queuedAt) {
+    }
+
+    private final Path targetDir;
+    private final int keepCopies;
+    private final long retryInitialMs;
+    private final long retryMaxMs;
+    private final LinkedBlockingDeque<Job> queue;
+    private final BackupIndex targetIndex;
+
+    private final AtomicLong replicated = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile int consecutiveFailures;
+    private volatile Job inFlight;
+    private volatile String lastReplicated;
+    private volatile long lastReplicatedAt;
+    private volatile long lastCopyMs;
+    private volatile String lastError;
+
+    private Thread worker;
+    private volatile boolean running;
+
+    public SnapshotReplicator(@Value("${drive.backup.dir:}") String targetDir,
+            @Value("${drive.keep.copies:6}") int keepCopies,
+            @Value("${drive.queue.capacity:4}") int queueCapacity,
+            @Value("${drive.retry.initial.ms:1000}") long retryInitialMs,
+            @Value("${drive.retry.max.ms:60000}") long retryMaxMs) {
+        this.targetDir = (targetDir == null || targetDir.isBlank()) ? null : Paths.get(targetDir);
+        this.keepCopies = keepCopies;
+        this.retryInitialMs = Math.max(1, retryInitialMs);
+        this.retryMaxMs = Math.max(this.retryInitialMs, retryMaxMs);
+        this.queue = new LinkedBlockingDeque<>(Math.max(1, queueCapacity));
+        this.targetIndex = this.targetDir == null ? null
+                : new BackupIndex(this.targetDir, SnapshotService::isSnapshotFileName, name -> null);
+    }
+
+    public boolean isEnabled() {
+        return targetDir != null;
+    }
+
+    /**
+     * Queue {@code file} for replication. Never blocks and never touches the
+     * target directory.
+     */
+    public void submit(Path file) {
+        if (targetDir == null || file == null) {
+            return;
+        }
+        startWorker();
+        Job job = new Job(file, System.currentTimeMillis());
+        while (!queue.offerLast(job)) {
+            if (queue.pollFirst() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    public Status getStatus() {
+        Status s = new Status();
+        s.enabled = targetDir != null;
+        s.target = targetDir == null ? "" : targetDir.toString();
+        s.queued = queue.size();
+        s.replicated = replicated.get();
+        s.failures = failures.get();
+        s.consecutiveFailures = consecutiveFailures;
+        s.dropped = dropped.get();
+        s.lastReplicated = lastReplicated;
+        s.lastReplicatedAt = lastReplicatedAt;
+        s.lastCopyMs = lastCopyMs;
+        s.lastError = lastError;
+        Job oldest = inFlight;
+        Job head = queue.peekFirst();
+        if (oldest == null || (head != null && head.queuedAt() < oldest.queuedAt())) {
+            oldest = head;
+        }
+        s.lagMs = oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.queuedAt());
+        return s;
+    }
+
+    private synchronized void startWorker() {
+        if (worker != null) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::workLoop, "snapshot-replicator");
+        worker.setDaemon(true);
+        worker.start();
+        log.info("Snapshot replication to {} (keep {}, retry {}-{} ms)", targetDir, keepCopies, retryInitialMs,
+                retryMaxMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Thread w;
+        synchronized (this) {
+            running = false;
+            w = worker;
+        }
+        if (w != null) {
+            w.interrupt();
+            try {
+                w.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void workLoop() {
+        deleteTempFiles();
+        while (running) {
+            try {
+                Job job = queue.takeFirst();
+                inFlight = job;
+                try {
+                    replicateWithRetry(job);
+                } finally {
+                    inFlight = null;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void replicateWithRetry(Job job) throws InterruptedException {
+        long backoff = retryInitialMs;
+        while (running) {
+            try {
+                long start = System.nanoTime();
+                copyVerified(job.file());
+                lastCopyMs = (System.nanoTime() - start) / 1_000_000;
+                replicated.incrementAndGet();
+                consecutiveFailures = 0;
+                lastError = null;
+                lastReplicated = job.file().getFileName().toString();
+                lastReplicatedAt = System.currentTimeMillis();
+                prune();
+                return;
+            } catch (IOException | RuntimeException e) {
+                failures.incrementAndGet();
+                consecutiveFailures++;
+                lastError = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+                log.warn("Replication of {} failed (attempt {}), retrying in {} ms: {}",
+                        job.file().getFileName(), consecutiveFailures, backoff, lastError);
+            }
+            Thread.sleep(backoff);
+            backoff = Math.min(retryMaxMs, backoff * 2);
+            if (!queue.isEmpty()) {
+                // A newer snapshot is waiting; it supersedes this one
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void copyVerified(Path source) throws IOException {
+        if (!Files.exists(source)) {
+            throw new IOException("source vanished: " + source.getFileName());
+        }
+        Files.createDirectories(targetDir);
+        String name = source.getFileName().toString();
+        Path tmp = Files.createTempFile(targetDir, name + ".", TEMP_SUFFIX);
+        try {
+            long expected;
+            try (InputStream in = Files.newInputStream(source);
+                    FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                expected = copy(in, out);
+                channel.force(true);
+            }
+            long actual;
+            try (InputStream in = Files.newInputStream(tmp)) {
+                actual = copy(in, OutputStream.nullOutputStream());
+            }
+            if (actual != expected) {
+                throw new IOException("checksum mismatch for " + name);
+            }
+            Path dest = targetDir.resolve(name);
+            try {
+                Files.move(tmp, dest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING);
+            }
+            targetIndex.added(dest);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Copies in to out and returns the CRC32C of the bytes
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buf = new byte[BUFFER_BYTES];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            crc.update(buf, 0, n);
+            out.write(buf, 0, n);
+        }
+        return crc.getValue();
+    }
+
+    private void prune() throws IOException {
+        for (BackupIndex.Entry e : targetIndex.beyond(keepCopies)) {
+            try {
+                Files.deleteIfExists(targetDir.resolve(e.name()));
+                targetIndex.removed(e.name());
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Leftovers of copies interrupted by a crash
+    private void deleteTempFiles() {
+        if (!Files.isDirectory(targetDir)) {
+            return;
+        }
+        try (var s = Files.list(targetDir)) {
+            s.filter(p -> {
+                String n = p.getFileName().toString();
+                return n.startsWith("app-") && n.endsWith(TEMP_SUFFIX);
+            }).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) {
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Cannot clean temp files in {}: {}", targetDir, e.getMessage());
+        }
+    }
+}
@@ -2,81 +2,154 @@ package com.example.counter.service.snapshot;
 
 import com.example.counter.service.CounterService;
 import com.example.counter.service.TablesService;
+import com.example.counter.service.journal.FileMutationJournal;
+import com.example.counter.service.mesa.MesaBatchService;
 import com.example.counter.service.mesa.MesaCounterService;
 import com.example.counter.service.mesa.MesaCounterService.AvatarDefeat;
 import com.example.counter.service.mesa.MesaCounterService.SpecialDefeat;
 import com.example.counter.service.mesa.MesaCounterService.TotalesMesa;
+import com.example.counter.service.scheduling.ScheduledJobs;
 import com.example.counter.service.model.CounterState;
 import com.example.counter.service.model.FreeGameTable;
 import com.example.counter.service.model.RegisterTable;
 import com.example.counter.service.sector.SectorService;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.event.EventListener;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.boot.context.event.ApplicationReadyEvent;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
-public class SnapshotService {
+public class SnapshotService implements SmartLifecycle {
 
     private static final Logger log = LoggerFactory.getLogger(SnapshotService.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+    public static final String JSON_SUFFIX = ".json";
+    public static final String BINARY_SUFFIX = ".bin";
+    private static final String DELTA_PREFIX = "delta-";
+    // Names the snapshot written on a clean shutdown: "<file name> <size>"
+    private static final String WARM_MARKER = "shutdown.marker";
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
 
     private final CounterService counterService;
     private final TablesService tablesService;
     private final MesaCounterService mesaService;
     private final SectorService sectorService;
+    private final MesaBatchService batchService;
+    private final FileMutationJournal journal;
+    private final SnapshotReplicator replicator;
+    private final ScheduledJobs jobs;
     private final ObjectMapper objectMapper = new ObjectMapper()
             .registerModule(new JavaTimeModule())
             .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    // Leaves the stream open: uploads drain what the parser left unread
+    private final ObjectReader snapshotReader = objectMapper.readerFor(SnapshotData.class)
+            .without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    private final DeltaTracker deltas;
 
     private final Path backupDir;
     private final long backupEveryMs;
+    private final long fullEveryMs;
     private final int backupRetentionMin;
-    private final Path driveDir;
     private final long driveEveryMs;
-    private final int driveKeepCopies;
     private final boolean backupInitial;
+    private final boolean backupOnShutdown;
     private final boolean restoreOnStart;
+    private final boolean binaryFormat;
+    private final boolean compress;
+
+    private final BackupIndex localIndex;
 
     private volatile Path lastSnapshotPath = null;
+    // Set once startup restored the state; before that a snapshot would
+    // overwrite the latest backup with an empty state
+    private volatile boolean started;
+    // Set when startup could not restore the latest snapshot: its journal
+    // segments hold events no later snapshot has, so they are kept until a
+    // restore succeeds
+    private volatile boolean keepJournal;
+    // Kept softly: it is only a shortcut for a restore right after an upload
+    private volatile SoftReference<ParsedUpload> lastUpload = new SoftReference<>(null);
+
+    private record ParsedUpload(BackupIndex.Entry entry, BasicFileAttributes attrs, SnapshotData data) {
+    }
 
     public SnapshotService(CounterService counterService,
             TablesService tablesService,
             MesaCounterService mesaService,
             SectorService sectorService,
+            MesaBatchService batchService,
+            FileMutationJournal journal,
+            SnapshotReplicator replicator,
+            ScheduledJobs jobs,
             @Value("${backup.dir:backups}") String backupDir,
             @Value("${backup.every.ms:60000}") long backupEveryMs,
+            @Value("${backup.full.every.ms:300000}") long fullEveryMs,
             @Value("${backup.retention.min:60}") int backupRetentionMin,
-            @Value("${drive.backup.dir:}") String driveDir,
             @Value("${drive.every.ms:600000}") long driveEveryMs,
-            @Value("${drive.keep.copies:6}") int driveKeepCopies,
             @Value("${backup.initial:true}") boolean backupInitial,
-            @Value("${restore.onstart:true}") boolean restoreOnStart) {
+            @Value("${backup.on.shutdown:true}") boolean backupOnShutdown,
+            @Value("${restore.onstart:true}") boolean restoreOnStart,
+            @Value("${backup.format:binary}") String format,
+            @Value("${backup.compress:true}") boolean compress) {
         this.counterService = counterService;
         this.tablesService = tablesService;
         this.mesaService = mesaService;
         this.sectorService = sectorService;
+        this.batchService = batchService;
+        this.journal = journal;
+        this.replicator = replicator;
+        this.jobs = jobs;
         this.backupDir = resolveBackupDir(backupDir);
         this.backupEveryMs = backupEveryMs;
+        this.fullEveryMs = fullEveryMs;
         this.backupRetentionMin = backupRetentionMin;
-        this.driveDir = (driveDir == null || driveDir.isBlank()) ? null : Paths.get(driveDir);
         this.driveEveryMs = driveEveryMs;
-        this.driveKeepCopies = driveKeepCopies;
         this.backupInitial = backupInitial;
+        this.backupOnShutdown = backupOnShutdown;
         this.restoreOnStart = restoreOnStart;
+        this.binaryFormat = !"json".equalsIgnoreCase(format == null ? "" : format.trim());
+        this.compress = compress;
+        this.deltas = new DeltaTracker(objectMapper);
+        this.localIndex = new BackupIndex(this.backupDir, SnapshotService::isSnapshotFileName,
+                SnapshotService::deltaBaseKey);
+    }
+
+    /**
+     * Whether {@code name} looks like a snapshot file, in either format.
+     */
+    public static boolean isSnapshotFileName(String name) {
+        return name != null && name.startsWith("app-")
+                && (name.endsWith(JSON_SUFFIX) || name.endsWith(BINARY_SUFFIX));
     }
 
     public static class SnapshotData {
@@ -92,17 +165,65 @@ public class SnapshotService {
         public long ts;
     }
 
-    @EventListener(ApplicationReadyEvent.class)
+    /**
+     * What changed since the previous file of a base's chain. Null sections did
+     * not change; tables and mesas only list the entries that did, defeats only
+     * the new ones.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class DeltaData {
+        public String base;
+        public int seq;
+        public long ts;
+        public CounterState counter;
+        public List<RegisterTable> registerTables;
+        public List<String> deletedRegisterTables;
+        public List<FreeGameTable> freeGameTables;
+        public Boolean qrEventEnabled;
+        public Boolean qrFreegameEnabled;
+        public Map<Integer, TotalesMesa> mesaTotals;
+        public List<AvatarDefeat> avatarDefeats;
+        public List<SpecialDefeat> specialDefeats;
+        public Map<Integer, SectorService.MesaIndicators> sectorStates;
+    }
+
+    /**
+     * Restores before the web server starts, so the first request after a
+     * restart already sees the restored state.
+     */
+    @Override
+    public void start() {
+        onReady();
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public boolean isRunning() {
+        return started;
+    }
+
+    @Override
+    public int getPhase() {
+        // The web server starts at SMART_LIFECYCLE_PHASE - 1024
+        return WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 2048;
+    }
+
     public void onReady() {
         ensureDir(backupDir);
+        deleteTempFiles();
         log.info(
-                "Snapshot config -> backup.dir={}, backup.writable={}, user.dir={}, backup.every.ms={}, backup.retention.min={}, drive.dir={}, drive.every.ms={}, drive.keep.copies={}, backup.initial={}, restore.onstart={} ",
-                backupDir, isDirWritable(backupDir), Paths.get("").toAbsolutePath(), backupEveryMs, backupRetentionMin,
-                driveDir, driveEveryMs, driveKeepCopies, backupInitial,
-                restoreOnStart);
+                "Snapshot config -> backup.dir={}, backup.writable={}, user.dir={}, backup.every.ms={}, backup.full.every.ms={}, backup.retention.min={}, drive.replication={}, drive.every.ms={}, backup.initial={}, backup.on.shutdown={}, restore.onstart={}, backup.format={}, backup.compress={} ",
+                backupDir, isDirWritable(backupDir), Paths.get("").toAbsolutePath(), backupEveryMs, fullEveryMs, backupRetentionMin,
+                replicator.isEnabled(), driveEveryMs, backupInitial, backupOnShutdown,
+                restoreOnStart, binaryFormat ? "binary" : "json", compress);
+        long journalSegment = openJournal();
         if (restoreOnStart) {
-            restoreLatest();
+            restoreLatest(journalSegment);
         }
+        started = true;
         // Trigger an initial snapshot to have a base file, but do it async to avoid
         // blocking startup
         if (backupInitial) {
@@ -120,49 +241,360 @@ public class SnapshotService {
 
     @Scheduled(fixedDelayString = "${backup.every.ms:60000}")
     public void scheduledBackup() {
-        try {
-            writeSnapshot();
+        if (!started)
+            return;
+        jobs.run("backup", () -> {
+            writeScheduledSnapshot();
             pruneLocal();
-        } catch (Exception e) {
-            log.warn("Backup error: {}", e.getMessage());
-        }
+        });
     }
 
+    /**
+     * Hands the latest local base to the {@link SnapshotReplicator}; the copy
+     * itself happens on the replicator's thread.
+     */
     @Scheduled(fixedDelayString = "${drive.every.ms:600000}")
     public void scheduledDriveCopy() {
-        if (driveDir == null)
+        if (!started || !replicator.isEnabled())
             return;
-        try {
-            ensureDir(driveDir);
+        jobs.run("drive-copy", () -> {
             Path latest = getLatestLocalSnapshot();
-            if (latest == null)
-                return;
-            Path dest = driveDir.resolve(latest.getFileName());
-            Files.copy(latest, dest, StandardCopyOption.REPLACE_EXISTING);
-            pruneDrive();
+            if (latest != null)
+                replicator.submit(latest);
+        });
+    }
+
+    /**
+     * Writes a last full snapshot on shutdown (e.g. SIGTERM) when the state
+     * moved since the last file, so a restart loses nothing even without the
+     * journal. It is always uncompressed binary, the fastest format to load,
+     * and a marker names it so the next start can take it directly (see
+     * {@link #restoreWarm}). Runs before the journal closes.
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (!started || !backupOnShutdown)
+            return;
+        started = false;
+        try {
+            Path file;
+            synchronized (this) {
+                boolean current = deltas.isCurrent(StateCapture.versions(counterService, tablesService,
+                        mesaService, sectorService));
+                if (current && !deltas.hasDeltas() && lastSnapshotPath != null) {
+                    file = lastSnapshotPath;
+                } else {
+                    writeSnapshot(true, false);
+                    file = lastSnapshotPath;
+                    log.info("Shutdown snapshot written: {}", file);
+                }
+                Files.writeString(backupDir.resolve(WARM_MARKER),
+                        file.getFileName() + " " + Files.size(file));
+            }
         } catch (Exception e) {
-            log.warn("Drive copy error: {}", e.getMessage());
+            log.warn("Shutdown snapshot failed: {}", e.getMessage());
+        }
+    }
+
+    private long openJournal() {
+        try {
+            return journal.open(backupDir);
+        } catch (IOException e) {
+            log.warn("Journal disabled, cannot open in {}: {}", backupDir, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Write a full base every {@code backup.full.every.ms} and, in between, a
+     * delta with only what changed since the previous file (nothing at all
+     * when the state is unchanged).
+     */
+    private synchronized void writeScheduledSnapshot() throws IOException {
+        Path base = lastSnapshotPath;
+        if (!deltas.hasBase() || base == null || !Files.exists(base)
+                || System.currentTimeMillis() - deltas.baseWrittenAt() >= fullEveryMs) {
+            writeSnapshot();
+            return;
+        }
+        long sealedSegment = journal.rotate();
+        DeltaData delta;
+        try {
+            delta = deltas.diff(capture());
+        } catch (RuntimeException e) {
+            deltas.reset();
+            throw e;
+        }
+        if (deltas.baseRequired()) {
+            writeSnapshot();
+            return;
+        }
+        if (delta != null) {
+            Path out = backupDir.resolve(deltaFileName(delta.base, delta.seq));
+            try {
+                writeAtomically(out, os -> objectMapper.writer()
+                        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                        .writeValue(os, delta));
+                localIndex.added(out);
+            } catch (IOException | RuntimeException e) {
+                // The tracked state already moved past this delta
+                deltas.reset();
+                throw e;
+            }
         }
+        deleteJournalUpTo(sealedSegment);
     }
 
     private void writeSnapshot() throws IOException {
+        writeSnapshot(binaryFormat, compress);
+    }
+
+    private synchronized void writeSnapshot(boolean binary, boolean gzip) throws IOException {
+        // Everything journaled before the rotation is covered by the capture
+        // below, so those segments can go once the file is written.
+        long sealedSegment = journal.rotate();
         String ts = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneId.systemDefault())
                 .format(Instant.now());
-        String file = "app-" + ts + ".json";
+        String file = "app-" + ts + (binary ? BINARY_SUFFIX : JSON_SUFFIX);
         Path out = backupDir.resolve(file);
-        SnapshotData data = new SnapshotData();
-        data.counter = counterService.getState();
-        data.registerTables = tablesService.listRegister();
-        data.freeGameTables = tablesService.listFreeGame();
-        data.qrEventEnabled = tablesService.isEventQrEnabled();
-        data.qrFreegameEnabled = tablesService.isFreegameQrEnabled();
-        data.mesaTotals = mesaService.getTotalesSnapshot();
-        data.avatarDefeats = mesaService.getAvatarDefeatsSnapshot();
-        data.specialDefeats = mesaService.getSpecialDefeatsSnapshot();
-        data.sectorStates = sectorService.getSnapshot();
-        data.ts = System.currentTimeMillis();
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), data);
+        String key = baseKey(file);
+        StateCapture capture = capture();
+        deltas.reset();
+        writeAtomically(out, binary
+                ? os -> writeBinarySections(os, capture, gzip)
+                : os -> writeSections(os, capture));
+        localIndex.added(out);
+        // A base rewritten within the same second must not inherit the old chain
+        deleteDeltas(key);
+        deltas.commitBase(key, capture, System.currentTimeMillis());
         lastSnapshotPath = out;
+        deleteJournalUpTo(sealedSegment);
+    }
+
+    private void deleteJournalUpTo(long sealedSegment) {
+        if (!keepJournal) {
+            journal.deleteSegmentsUpTo(backupDir, sealedSegment);
+        }
+    }
+
+    // "app-20250101-120000.bin" -> "20250101-120000"
+    private static String baseKey(String fileName) {
+        String key = fileName.startsWith("app-") ? fileName.substring(4) : fileName;
+        int dot = key.lastIndexOf('.');
+        return dot < 0 ? key : key.substring(0, dot);
+    }
+
+    private static String deltaFileName(String baseKey, int seq) {
+        return DELTA_PREFIX + baseKey + "-" + String.format("%04d", seq) + JSON_SUFFIX;
+    }
+
+    // Base key of a delta file name, or null if it is not one
+    private static String deltaBaseKey(String fileName) {
+        int dash = fileName.lastIndexOf('-');
+        if (!fileName.startsWith(DELTA_PREFIX) || !fileName.endsWith(JSON_SUFFIX) || dash <= DELTA_PREFIX.length()) {
+            return null;
+        }
+        String seq = fileName.substring(dash + 1, fileName.length() - JSON_SUFFIX.length());
+        return !seq.isEmpty() && seq.chars().allMatch(Character::isDigit)
+                ? fileName.substring(DELTA_PREFIX.length(), dash)
+                : null;
+    }
+
+    // An inconsistent cut is never written: the backup is skipped and the
+    // journal segments it would have replaced stay until the next one
+    private StateCapture capture() throws IOException {
+        StateCapture capture = StateCapture.take(batchService.exclusiveLock(), counterService, tablesService,
+                mesaService, sectorService);
+        if (!capture.consistent) {
+            log.warn("State kept changing during capture; skipping this backup");
+            throw new IOException("state kept changing during capture");
+        }
+        return capture;
+    }
+
+    /**
+     * Stream a capture as compact JSON, one {@link SnapshotData} field at a
+     * time. No service lock is held while writing: the capture's lists are
+     * immutable views.
+     */
+    private void writeSections(OutputStream os, StateCapture c) throws IOException {
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(os)) {
+            gen.writeStartObject();
+            gen.writeFieldName("counter");
+            objectMapper.writeValue(gen, c.counter);
+            gen.writeFieldName("registerTables");
+            objectMapper.writeValue(gen, c.registerTables);
+            gen.writeFieldName("freeGameTables");
+            objectMapper.writeValue(gen, c.freeGameTables);
+            gen.writeBooleanField("qrEventEnabled", c.qrEventEnabled);
+            gen.writeBooleanField("qrFreegameEnabled", c.qrFreegameEnabled);
+            gen.writeFieldName("mesaTotals");
+            objectMapper.writeValue(gen, c.mesaTotals);
+            gen.writeFieldName("avatarDefeats");
+            objectMapper.writeValue(gen, c.avatarDefeats);
+            gen.writeFieldName("specialDefeats");
+            objectMapper.writeValue(gen, c.specialDefeats);
+            gen.writeFieldName("sectorStates");
+            objectMapper.writeValue(gen, c.sectorStates);
+            gen.writeNumberField("ts", c.ts);
+            gen.writeEndObject();
+        }
+    }
+
+    private void writeBinarySections(OutputStream os, StateCapture c, boolean gzip) throws IOException {
+        try (BinarySnapshotCodec.Writer w = new BinarySnapshotCodec.Writer(os, gzip)) {
+            w.header(c.ts, c.qrEventEnabled, c.qrFreegameEnabled);
+            w.counter(c.counter);
+            w.registerTables(c.registerTables);
+            w.freeGameTables(c.freeGameTables);
+            w.mesaTotals(c.mesaTotals);
+            w.avatarDefeats(c.avatarDefeats);
+            w.specialDefeats(c.specialDefeats);
+            w.sectorStates(c.sectorStates);
+        }
+    }
+
+    /**
+     * Read a snapshot in either format, detected from its first bytes rather
+     * than its name so renamed or uploaded files still load.
+     */
+    private SnapshotData readSnapshot(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), WRITE_BUFFER_BYTES)) {
+            return readSnapshot(in, Files.size(file));
+        }
+    }
+
+    // in must support mark/reset; length is its size, -1 if unknown
+    private SnapshotData readSnapshot(InputStream in, long length) throws IOException {
+        in.mark(BinarySnapshotCodec.MAGIC.length);
+        byte[] head = in.readNBytes(BinarySnapshotCodec.MAGIC.length);
+        in.reset();
+        if (BinarySnapshotCodec.isBinary(head, head.length)) {
+            return BinarySnapshotCodec.read(in, length);
+        }
+        return snapshotReader.readValue(in);
+    }
+
+    /**
+     * Whether the file content is already gzip-compressed, so compressing it
+     * again for transfer would only cost CPU.
+     */
+    public static boolean isCompressedSnapshot(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(BinarySnapshotCodec.MAGIC.length + 2);
+            return BinarySnapshotCodec.isCompressed(head, head.length);
+        }
+    }
+
+    /**
+     * Write any snapshot file as pretty JSON, for download and inspection.
+     */
+    public void exportAsJson(Path file, OutputStream out) throws IOException {
+        SnapshotData data = readSnapshot(file);
+        objectMapper.writerWithDefaultPrettyPrinter()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValue(out, data);
+    }
+
+    private interface SnapshotBody {
+        void writeTo(OutputStream os) throws IOException;
+    }
+
+    /**
+     * Write to a temp file in the same directory, fsync it and rename it over
+     * {@code target}, so readers see either the old file or the complete new
+     * one, never a partial write.
+     */
+    private void writeAtomically(Path target, SnapshotBody body) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString() + ".", TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_BYTES);
+                body.writeTo(new NonClosingOutputStream(os));
+                os.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(dir);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Makes the rename itself durable. Not supported on every platform
+    // (Windows), where the rename is still atomic but may be lost on power cut.
+    private void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException ignored) {
+        }
+    }
+
+    // Copies everything read from in to out; closing it leaves both open
+    private static final class TeeInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                copy.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buf = new byte[(int) Math.min(n, 8192)];
+            int read = read(buf, 0, buf.length);
+            return Math.max(0, read);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Lets the body close its own streams without closing the channel early
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
     }
 
     // --- Public helpers for admin/ops use ---
@@ -183,59 +615,256 @@ public class SnapshotService {
         }
     }
 
-    private void restoreLatest() {
+    /**
+     * Restore the newest snapshot and its deltas, then replay the journal segments written
+     * after it (those below {@code journalSegment}, the one just opened) and
+     * fold the result into a fresh snapshot.
+     */
+    private void restoreLatest(long journalSegment) {
         try {
             Path latest = getLatestLocalSnapshot();
-            if (latest == null)
-                return;
-            SnapshotData data = objectMapper.readValue(latest.toFile(), SnapshotData.class);
-            applySnapshot(data);
+            if (latest != null && !restoreWarm(latest)) {
+                SnapshotData data = readSnapshot(latest);
+                applySnapshot(data);
+                applyDeltas(latest);
+            }
         } catch (Exception e) {
-            log.warn("Restore failed: {}", e.getMessage());
+            // Keep the journal: replaying it over empty state would lose the
+            // events that only the unreadable snapshot has.
+            keepJournal = true;
+            log.warn("Restore failed, journal segments are kept until a restore succeeds: {}", e.getMessage());
+            return;
+        }
+        if (journalSegment < 0) {
+            return;
+        }
+        JournalReplay replay = new JournalReplay(objectMapper, mesaService, sectorService, tablesService,
+                this::applyCounter);
+        int[] replayed = new int[1];
+        journal.withoutRecording(() -> replayed[0] = journal.replay(backupDir, journalSegment, replay));
+        if (replayed[0] == 0) {
+            return;
+        }
+        log.info("Replayed {} journal entries ({} skipped)", replayed[0], replay.getSkipped());
+        try {
+            writeSnapshot();
+        } catch (Exception e) {
+            log.warn("Snapshot after journal replay failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Fast path after a clean shutdown: if the marker names {@code latest}
+     * with its size unchanged, it holds the whole state (no deltas were
+     * written on top) and is read from a memory mapping. The marker is
+     * consumed either way, so a later crash falls back to the normal path.
+     */
+    private boolean restoreWarm(Path latest) {
+        Path marker = backupDir.resolve(WARM_MARKER);
+        if (!Files.exists(marker))
+            return false;
+        try {
+            String[] parts = Files.readString(marker).trim().split(" ");
+            Files.deleteIfExists(marker);
+            if (parts.length != 2 || !parts[0].equals(latest.getFileName().toString())
+                    || Long.parseLong(parts[1]) != Files.size(latest)
+                    || !localIndex.deltasOf(baseKey(parts[0])).isEmpty()) {
+                return false;
+            }
+            long start = System.nanoTime();
+            applySnapshot(readMapped(latest));
+            // The file is the current state: later backups can chain deltas on it
+            deltas.commitBase(baseKey(latest.getFileName().toString()), capture(), System.currentTimeMillis());
+            lastSnapshotPath = latest;
+            log.info("Warm restart from {} in {} ms", latest.getFileName(), (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (Exception e) {
+            log.warn("Warm restart failed, using the normal restore: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private SnapshotData readMapped(Path file) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        return readSnapshot(new ByteBufferInputStream(buf), buf.capacity());
+    }
+
+    // Reads a buffer in place; mark/reset use the buffer's own mark
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            buf.mark();
+        }
+
+        @Override
+        public synchronized void reset() {
+            buf.reset();
         }
     }
 
     private void applySnapshot(SnapshotData data) {
         if (data == null)
             return;
-        if (data.counter != null) {
-            Integer rawPrimaryMax = data.counter.primaryMax;
+        deltas.reset();
+        journal.withoutRecording(() -> {
+            applyCounter(data.counter);
+            mesaService.restore(data.mesaTotals, data.avatarDefeats, data.specialDefeats);
+            sectorService.restore(data.sectorStates);
+            tablesService.restore(data.registerTables, data.freeGameTables);
+            tablesService.setEventQrEnabled(data.qrEventEnabled);
+            tablesService.setFreegameQrEnabled(data.qrFreegameEnabled);
+        });
+    }
+
+    /**
+     * Apply the deltas written on top of {@code base}, in order, stopping at
+     * the first gap or unreadable file: later ones depend on it.
+     */
+    private void applyDeltas(Path base) throws IOException {
+        String key = baseKey(base.getFileName().toString());
+        TreeMap<Integer, Path> chain = new TreeMap<>();
+        for (String name : localIndex.deltasOf(key)) {
+            int dash = name.lastIndexOf('-');
+            chain.put(Integer.parseInt(name.substring(dash + 1, name.length() - JSON_SUFFIX.length())),
+                    backupDir.resolve(name));
+        }
+        int expected = 1;
+        for (var e : chain.entrySet()) {
+            if (e.getKey() != expected) {
+                log.warn("Delta chain of {} has a gap before {}", base.getFileName(), e.getValue().getFileName());
+                break;
+            }
+            DeltaData delta;
+            try {
+                delta = objectMapper.readValue(e.getValue().toFile(), DeltaData.class);
+            } catch (IOException ex) {
+                log.warn("Cannot read delta {}: {}", e.getValue().getFileName(), ex.getMessage());
+                break;
+            }
+            applyDelta(delta);
+            expected++;
+        }
+        if (expected > 1) {
+            log.info("Applied {} deltas over {}", expected - 1, base.getFileName());
+        }
+    }
+
+    private void applyDelta(DeltaData d) {
+        journal.withoutRecording(() -> {
+            applyCounter(d.counter);
+            if (d.registerTables != null) {
+                d.registerTables.forEach(tablesService::replayRegister);
+            }
+            if (d.deletedRegisterTables != null) {
+                d.deletedRegisterTables.forEach(tablesService::replayRegisterDelete);
+            }
+            if (d.freeGameTables != null) {
+                d.freeGameTables.forEach(tablesService::replayFreeGame);
+            }
+            if (d.qrEventEnabled != null) {
+                tablesService.setEventQrEnabled(d.qrEventEnabled);
+            }
+            if (d.qrFreegameEnabled != null) {
+                tablesService.setFreegameQrEnabled(d.qrFreegameEnabled);
+            }
+            if (d.mesaTotals != null) {
+                d.mesaTotals.forEach(mesaService::replayTotales);
+            }
+            if (d.avatarDefeats != null) {
+                d.avatarDefeats.forEach(mesaService::replayAvatarDefeat);
+            }
+            if (d.specialDefeats != null) {
+                d.specialDefeats.forEach(mesaService::replaySpecialDefeat);
+            }
+            if (d.sectorStates != null) {
+                d.sectorStates.forEach(sectorService::replayMesa);
+            }
+        });
+    }
+
+    private void applyCounter(CounterState counter) {
+        if (counter != null) {
+            Integer rawPrimaryMax = counter.primaryMax;
             if (rawPrimaryMax != null) {
                 counterService.setPrimaryMax(Math.max(0, rawPrimaryMax));
             }
-            counterService.setPrimary(Math.max(0, data.counter.primary));
-            counterService.setTertiary(Math.max(0, data.counter.tertiary));
-            Integer rawMax = data.counter.tertiaryMax;
+            counterService.setPrimary(Math.max(0, counter.primary));
+            counterService.setTertiary(Math.max(0, counter.tertiary));
+            Integer rawMax = counter.tertiaryMax;
             int normalizedMax = rawMax == null ? CounterService.TERTIARY_MAX_DEFAULT_VALUE : Math.max(0, rawMax);
             counterService.setTertiaryMax(normalizedMax);
-            Integer secondaryHeroes = data.counter.secondaryHeroes;
+            Integer secondaryHeroes = counter.secondaryHeroes;
             if (secondaryHeroes != null) {
                 counterService.setSecondaryHeroes(Math.max(0, secondaryHeroes));
             }
-            Integer secondaryPlan = data.counter.secondaryPlan;
+            Integer secondaryPlan = counter.secondaryPlan;
             if (secondaryPlan != null) {
                 counterService.setSecondaryPlan(Math.max(0, secondaryPlan));
             }
         }
-        mesaService.restore(data.mesaTotals, data.avatarDefeats, data.specialDefeats);
-        sectorService.restore(data.sectorStates);
-        tablesService.restore(data.registerTables, data.freeGameTables);
-        tablesService.setEventQrEnabled(data.qrEventEnabled);
-        tablesService.setFreegameQrEnabled(data.qrFreegameEnabled);
     }
 
     public synchronized boolean restoreFromFileName(String name) {
         try {
             if (name == null || name.isBlank())
                 return false;
-            if (!name.startsWith("app-") || !name.endsWith(".json"))
+            if (!isSnapshotFileName(name))
                 return false;
             Path file = backupDir.resolve(name).normalize();
             if (!file.startsWith(backupDir.normalize()) || !Files.exists(file))
                 return false;
-            SnapshotData data = objectMapper.readValue(file.toFile(), SnapshotData.class);
+            SnapshotData data = takeUploaded(name, file);
+            if (data == null) {
+                data = readSnapshot(file);
+            }
             applySnapshot(data);
+            applyDeltas(file);
             lastSnapshotPath = file;
+            keepJournal = false;
+            // Restores are not journaled: persist the restored state right away
+            // so the journal tail never replays over the previous snapshot.
+            try {
+                writeSnapshot();
+            } catch (IOException e) {
+                log.warn("Snapshot after manual restore failed: {}", e.getMessage());
+            }
             return true;
         } catch (Exception e) {
             log.warn("Manual restore failed: {}", e.getMessage());
@@ -243,71 +872,219 @@ public class SnapshotService {
         }
     }
 
+    /**
+     * Store an uploaded snapshot under {@code name} in the backup dir, keeping
+     * it only if it reads as a valid snapshot.
+     */
+    public BackupIndex.Entry importBackup(String name, InputStream in) throws IOException {
+        Files.createDirectories(backupDir);
+        Path target = backupDir.resolve(name).normalize();
+        if (!target.startsWith(backupDir.normalize()) || !isSnapshotFileName(name)) {
+            throw new IOException("Ruta invalida");
+        }
+        SnapshotData[] parsed = new SnapshotData[1];
+        writeAtomically(target, os -> parsed[0] = parseWhileCopying(in, os));
+        localIndex.added(target);
+        BackupIndex.Entry entry = localIndex.find(name);
+        if (entry != null) {
+            BasicFileAttributes attrs = Files.readAttributes(target, BasicFileAttributes.class);
+            lastUpload = new SoftReference<>(new ParsedUpload(entry, attrs, parsed[0]));
+        }
+        return entry;
+    }
+
+    /**
+     * Copy {@code in} to {@code out} while parsing and checking it, in one
+     * pass. The parser reads through a tee, and whatever it leaves unread is
+     * drained so the copy is complete.
+     */
+    private SnapshotData parseWhileCopying(InputStream in, OutputStream out) throws IOException {
+        InputStream tee = new BufferedInputStream(new TeeInputStream(in, out), WRITE_BUFFER_BYTES);
+        SnapshotData data;
+        try {
+            data = readSnapshot(tee, -1);
+            checkBounds(data);
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("El archivo no tiene un formato de backup válido", e);
+        }
+        tee.transferTo(OutputStream.nullOutputStream());
+        return data;
+    }
+
+    private static void checkBounds(SnapshotData data) throws IOException {
+        if (data == null) {
+            throw new IOException("Backup vacío");
+        }
+        if (data.counter != null && (data.counter.primary < 0 || data.counter.tertiary < 0)) {
+            throw new IOException("Contadores negativos");
+        }
+        if (data.mesaTotals != null) {
+            for (var e : data.mesaTotals.entrySet()) {
+                if (e.getKey() == null || e.getKey() < 0 || e.getValue() == null) {
+                    throw new IOException("Totales de mesa inválidos: " + e.getKey());
+                }
+            }
+        }
+        if (data.sectorStates != null) {
+            for (var e : data.sectorStates.entrySet()) {
+                if (e.getKey() == null || e.getKey() < 0 || e.getValue() == null) {
+                    throw new IOException("Indicadores de sector inválidos: " + e.getKey());
+                }
+            }
+        }
+        if (data.registerTables != null) {
+            for (RegisterTable t : data.registerTables) {
+                if (t == null || t.id() == null || t.tableNumber() < 0) {
+                    throw new IOException("Mesa registrada inválida");
+                }
+            }
+        }
+        if (data.freeGameTables != null) {
+            for (FreeGameTable t : data.freeGameTables) {
+                if (t == null || t.id() == null || t.tableNumber() < 0) {
+                    throw new IOException("Partida libre inválida");
+                }
+            }
+        }
+    }
+
+    /**
+     * The parsed content of the last upload, if {@code name} is that upload and
+     * the file is unchanged since. Handed out once: restoring takes ownership
+     * of the objects.
+     */
+    private SnapshotData takeUploaded(String name, Path file) throws IOException {
+        ParsedUpload upload = lastUpload.get();
+        if (upload == null || !upload.entry().name().equals(name)) {
+            return null;
+        }
+        lastUpload = new SoftReference<>(null);
+        // Checked on disk, not in the index: the file may have been replaced
+        // behind the service's back
+        BasicFileAttributes now = Files.readAttributes(file, BasicFileAttributes.class);
+        return now.size() == upload.attrs().size()
+                && now.lastModifiedTime().equals(upload.attrs().lastModifiedTime()) ? upload.data() : null;
+    }
+
     public void validateSnapshotFile(Path file) throws IOException {
         if (file == null || !Files.exists(file)) {
             throw new IOException("Archivo de backup no encontrado");
         }
         try {
-            objectMapper.readValue(file.toFile(), SnapshotData.class);
+            readSnapshot(file);
         } catch (Exception e) {
             throw new IOException("El archivo no tiene un formato de backup válido", e);
         }
     }
 
     private Path getLatestLocalSnapshot() throws IOException {
-        if (!Files.exists(backupDir))
-            return null;
-        try (var s = Files.list(backupDir)) {
-            List<Path> files = s.filter(
-                    p -> p.getFileName().toString().startsWith("app-") && p.getFileName().toString().endsWith(".json"))
-                    .sorted(Comparator.comparingLong(this::safeMtime).reversed())
-                    .collect(Collectors.toList());
-            return files.isEmpty() ? null : files.get(0);
+        BackupIndex.Entry latest = localIndex.latest();
+        return latest == null ? null : backupDir.resolve(latest.name());
+    }
+
+    private void pruneLocal() throws IOException {
+        long cutoff = System.currentTimeMillis() - (backupRetentionMin * 60L * 1000L);
+        Path current = lastSnapshotPath;
+        for (BackupIndex.Entry e : localIndex.olderThan(cutoff)) {
+            // The current base stays while its deltas are being written
+            if (!backupDir.resolve(e.name()).equals(current)) {
+                deleteLocal(e.name());
+            }
+        }
+        deleteOrphanDeltas();
+    }
+
+    /**
+     * Snapshot files in the backup dir, newest first. {@code refresh} lists the
+     * directory again, to pick up files copied in by hand.
+     */
+    public List<BackupIndex.Entry> listBackups(boolean refresh) throws IOException {
+        if (refresh) {
+            localIndex.rescan();
+        }
+        return localIndex.list();
+    }
+
+    public BackupIndex.Entry findBackup(String name) throws IOException {
+        return localIndex.find(name);
+    }
+
+    /**
+     * Delete one snapshot file and its deltas. Returns false if it is not in
+     * the index.
+     */
+    public boolean deleteBackup(String name) throws IOException {
+        if (localIndex.find(name) == null) {
+            return false;
+        }
+        Files.deleteIfExists(backupDir.resolve(name));
+        localIndex.removed(name);
+        deleteOrphanDeltas();
+        return true;
+    }
+
+    public int purgeOlderThan(long minutes) throws IOException {
+        int deleted = 0;
+        for (BackupIndex.Entry e : localIndex.olderThan(System.currentTimeMillis() - minutes * 60L * 1000L)) {
+            deleted += deleteLocal(e.name()) ? 1 : 0;
+        }
+        deleteOrphanDeltas();
+        return deleted;
+    }
+
+    public int purgeKeepLatest(int keep) throws IOException {
+        int deleted = 0;
+        for (BackupIndex.Entry e : localIndex.beyond(keep)) {
+            deleted += deleteLocal(e.name()) ? 1 : 0;
         }
+        deleteOrphanDeltas();
+        return deleted;
     }
 
-    private long safeMtime(Path p) {
+    private boolean deleteLocal(String name) {
         try {
-            return Files.getLastModifiedTime(p).toMillis();
+            Files.deleteIfExists(backupDir.resolve(name));
+            localIndex.removed(name);
+            return true;
         } catch (IOException e) {
-            return 0L;
+            return false;
         }
     }
 
-    private void pruneLocal() throws IOException {
-        long cutoff = System.currentTimeMillis() - (backupRetentionMin * 60L * 1000L);
-        if (!Files.exists(backupDir))
-            return;
-        try (var s = Files.list(backupDir)) {
-            List<Path> files = s.filter(
-                    p -> p.getFileName().toString().startsWith("app-") && p.getFileName().toString().endsWith(".json"))
-                    .sorted(Comparator.comparingLong(this::safeMtime).reversed())
-                    .collect(Collectors.toList());
-            for (Path p : files) {
-                if (safeMtime(p) < cutoff) {
-                    try {
-                        Files.deleteIfExists(p);
-                    } catch (Exception ignored) {
-                    }
-                }
+    private void deleteOrphanDeltas() throws IOException {
+        Set<String> bases = new HashSet<>();
+        for (BackupIndex.Entry e : localIndex.list()) {
+            bases.add(baseKey(e.name()));
+        }
+        for (String key : localIndex.deltaBaseKeys()) {
+            if (!bases.contains(key)) {
+                deleteDeltas(key);
             }
         }
     }
 
-    private void pruneDrive() throws IOException {
-        if (driveDir == null || !Files.exists(driveDir))
+    private void deleteDeltas(String baseKey) throws IOException {
+        for (String name : localIndex.deltasOf(baseKey)) {
+            deleteLocal(name);
+        }
+    }
+
+    // Leftovers of writes interrupted by a crash; never valid snapshots
+    private void deleteTempFiles() {
+        if (!Files.exists(backupDir))
             return;
-        try (var s = Files.list(driveDir)) {
-            List<Path> files = s.filter(
-                    p -> p.getFileName().toString().startsWith("app-") && p.getFileName().toString().endsWith(".json"))
-                    .sorted(Comparator.comparingLong(this::safeMtime).reversed())
-                    .collect(Collectors.toList());
-            for (int i = driveKeepCopies; i < files.size(); i++) {
+        try (var s = Files.list(backupDir)) {
+            s.filter(p -> {
+                String n = p.getFileName().toString();
+                return (n.startsWith("app-") || n.startsWith(DELTA_PREFIX)) && n.endsWith(TEMP_SUFFIX);
+            }).forEach(p -> {
                 try {
-                    Files.deleteIfExists(files.get(i));
-                } catch (Exception ignored) {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) {
                 }
-            }
+            });
+        } catch (IOException e) {
+            log.warn("Cannot clean temp files in {}: {}", backupDir, e.getMessage());
         }
     }
 
@@ -0,0 +1,106 @@
+package com.example.counter.service.snapshot;
+
+import com.example.counter.service.CounterService;
+import com.example.counter.service.TablesService;
+import com.example.counter.service.mesa.MesaCounterService;
+import com.example.counter.service.mesa.MesaCounterService.AvatarDefeat;
+import com.example.counter.service.mesa.MesaCounterService.SpecialDefeat;
+import com.example.counter.service.mesa.MesaCounterService.TotalesMesa;
+import com.example.counter.service.model.CounterState;
+import com.example.counter.service.model.FreeGameTable;
+import com.example.counter.service.model.RegisterTable;
+import com.example.counter.service.sector.SectorService;
+import com.example.counter.service.sector.SectorService.MesaIndicators;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Point-in-time view of the four services, taken without a global lock.
+ * <p>
+ * Works like a seqlock: read every service version, take the sections, read
+ * the versions again, and retry if any moved. Taking the sections is cheap
+ * (table lists and defeat logs are immutable views, totals and indicators are
+ * small copies), so a retry rarely fails twice and writers are only held for
+ * those short copies, never while the file is serialized. After a few quick
+ * retries it keeps trying with short pauses for up to {@link #MAX_WAIT_MS};
+ * if the state never holds still the capture is returned with
+ * {@link #consistent} false and must not be persisted.
+ * <p>
+ * The versions only show that no single write was missed; a mesa batch is
+ * several writes, so each attempt also holds the batch service's exclusive
+ * lock while taking the sections and never sees half of one.
+ */
+final class StateCapture {
+    static final int COUNTER = 0;
+    static final int TABLES = 1;
+    static final int MESAS = 2;
+    static final int SECTORS = 3;
+    private static final int SPIN_ATTEMPTS = 5;
+    private static final long MAX_WAIT_MS = 500;
+
+    final long[] versions;
+    final boolean consistent;
+    final long ts;
+    final CounterState counter;
+    final List<RegisterTable> registerTables;
+    final List<FreeGameTable> freeGameTables;
+    final boolean qrEventEnabled;
+    final boolean qrFreegameEnabled;
+    final Map<Integer, TotalesMesa> mesaTotals;
+    final List<AvatarDefeat> avatarDefeats;
+    final List<SpecialDefeat> specialDefeats;
+    final Map<Integer, MesaIndicators> sectorStates;
+
+    private StateCapture(long[] versions, CounterService counter, TablesService tables,
+            MesaCounterService mesas, SectorService sectors) {
+        this.versions = versions;
+        this.ts = System.currentTimeMillis();
+        this.counter = counter.getState();
+        this.registerTables = tables.listRegister();
+        this.freeGameTables = tables.listFreeGame();
+        this.qrEventEnabled = tables.isEventQrEnabled();
+        this.qrFreegameEnabled = tables.isFreegameQrEnabled();
+        this.mesaTotals = mesas.getTotalesSnapshot();
+        this.avatarDefeats = mesas.getAvatarDefeatsSnapshot();
+        this.specialDefeats = mesas.getSpecialDefeatsSnapshot();
+        this.sectorStates = sectors.getSnapshot();
+        this.consistent = Arrays.equals(versions, versions(counter, tables, mesas, sectors));
+    }
+
+    static StateCapture take(Lock batches, CounterService counter, TablesService tables, MesaCounterService mesas,
+            SectorService sectors) {
+        long deadline = System.nanoTime() + MAX_WAIT_MS * 1_000_000;
+        for (int attempt = 1;; attempt++) {
+            StateCapture capture;
+            batches.lock();
+            try {
+                capture = new StateCapture(versions(counter, tables, mesas, sectors), counter, tables, mesas,
+                        sectors);
+            } finally {
+                batches.unlock();
+            }
+            if (capture.consistent || System.nanoTime() >= deadline) {
+                return capture;
+            }
+            if (attempt < SPIN_ATTEMPTS) {
+                Thread.onSpinWait();
+            } else {
+                // A burst of writes: give it a moment to pass
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return capture;
+                }
+            }
+        }
+    }
+
+    static long[] versions(CounterService counter, TablesService tables, MesaCounterService mesas,
+            SectorService sectors) {
+        return new long[] { counter.getVersion(), tables.getVersion(), mesas.getVersion(), sectors.getVersion() };
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.counter.service.stream;
+
+import com.example.counter.service.CounterService;
+import com.example.counter.service.model.CounterState;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pushes {@link CounterState} changes to Server-Sent Events subscribers.
+ * <p>
+ * Mutations only record the latest state; a single background thread flushes
+ * it after a short coalescing window, so a burst of updates results in one
+ * event per subscriber, and a window that ends where the last event left off
+ * sends nothing. Idle connections receive periodic heartbeat comments
+ * to keep proxies from closing them.
+ */
+@Service
+public class CounterStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(CounterStreamService.class);
+
+    private final CounterService counterService;
+    private final long coalesceMs;
+    private final long timeoutMs;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final AtomicReference<CounterState> pending = new AtomicReference<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService executor;
+    // Last state flushed, only touched by the executor thread
+    private CounterState lastSent;
+
+    public CounterStreamService(CounterService counterService,
+            @Value("${counter.stream.coalesce.ms:100}") long coalesceMs,
+            @Value("${counter.stream.heartbeat.ms:15000}") long heartbeatMs,
+            @Value("${counter.stream.timeout.ms:1800000}") long timeoutMs) {
+        this.counterService = counterService;
+        this.coalesceMs = Math.max(0, coalesceMs);
+        this.timeoutMs = timeoutMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "counter-stream");
+            t.setDaemon(true);
+            return t;
+        });
+        long heartbeat = Math.max(1000, heartbeatMs);
+        executor.scheduleWithFixedDelay(this::heartbeat, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+        lastSent = counterService.getState();
+        counterService.addListener(this::onStateChanged);
+    }
+
+    public SseEmitter subscribe(CounterState initial) {
+        SseEmitter emitter = newEmitter();
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        CounterState state = initial != null ? initial : counterService.getState();
+        if (!send(emitter, SseEmitter.event().name("state").data(state, MediaType.APPLICATION_JSON))) {
+            emitters.remove(emitter);
+        }
+        return emitter;
+    }
+
+    protected SseEmitter newEmitter() {
+        return new SseEmitter(timeoutMs);
+    }
+
+    public int getSubscriberCount() {
+        return emitters.size();
+    }
+
+    private void onStateChanged(CounterState state) {
+        pending.set(state);
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::flush, coalesceMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        CounterState state = pending.getAndSet(null);
+        if (state == null || state.equals(lastSent)) {
+            return;
+        }
+        // Kept even without subscribers, so a later one is not skipped as a repeat
+        lastSent = state;
+        for (SseEmitter emitter : emitters) {
+            if (!send(emitter, SseEmitter.event().name("state").data(state, MediaType.APPLICATION_JSON))) {
+                emitters.remove(emitter);
+            }
+        }
+    }
+
+    private void heartbeat() {
+        for (SseEmitter emitter : emitters) {
+            if (!send(emitter, SseEmitter.event().comment("keep-alive"))) {
+                emitters.remove(emitter);
+            }
+        }
+    }
+
+    private boolean send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping counter stream subscriber: {}", e.getMessage());
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        for (SseEmitter emitter : emitters) {
+            emitter.complete();
+        }
+        emitters.clear();
+    }
+}
@@ -1,10 +1,16 @@
 package com.example.counter;
 
 import com.example.counter.service.CounterService;
+import com.example.counter.service.journal.MutationJournal;
 import com.example.counter.service.model.CounterState;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class CounterServiceTest {
@@ -13,7 +19,7 @@ class CounterServiceTest {
 
     @BeforeEach
     void setUp() {
-        counterService = new CounterService();
+        counterService = new CounterService(MutationJournal.NOOP);
     }
 
     @Test
@@ -43,4 +49,51 @@ class CounterServiceTest {
 
         assertThat(updated.tertiaryMax).isEqualTo(250);
     }
+
+    @Test
+    void primaryIsClampedToZeroAndMax() {
+        counterService.setPrimaryMax(100);
+        assertThat(counterService.setPrimary(500).primary).isEqualTo(100);
+        assertThat(counterService.reducePrimary(250).primary).isZero();
+        assertThat(counterService.setPrimary(-5).primary).isZero();
+    }
+
+    @Test
+    void tertiaryIncrementIsClampedToMax() {
+        counterService.setTertiaryMax(10);
+        counterService.setTertiary(8);
+        assertThat(counterService.incrementTertiary(5).tertiary).isEqualTo(10);
+        assertThat(counterService.incrementTertiary(-3).tertiary).isEqualTo(10);
+    }
+
+    @Test
+    void concurrentUpdatesAreNotLost() throws Exception {
+        int threads = 8;
+        int perThread = 5_000;
+        counterService.setPrimaryMaxAndCurrent(threads * perThread * 2);
+        counterService.setTertiaryMax(0);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < threads; i++) {
+                pool.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < perThread; j++) {
+                        counterService.reducePrimary(1);
+                        counterService.incrementTertiary(1);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            pool.shutdown();
+            assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        CounterState end = counterService.getState();
+        assertThat(end.primary).isEqualTo(threads * perThread);
+        assertThat(end.tertiary).isEqualTo(threads * perThread);
+    }
 }
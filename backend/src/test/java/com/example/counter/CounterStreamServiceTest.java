@@ -0,0 +1,89 @@
+package com.example.counter;
+
+import com.example.counter.service.CounterService;
+import com.example.counter.service.journal.MutationJournal;
+import com.example.counter.service.stream.CounterStreamService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CounterStreamServiceTest {
+
+    private CounterService counterService;
+    private CounterStreamService streamService;
+    // Each event sent to the subscriber, as the text of its parts
+    private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() {
+        counterService = new CounterService(MutationJournal.NOOP);
+        streamService = new CounterStreamService(counterService, 200, 1000, 60_000) {
+            @Override
+            protected SseEmitter newEmitter() {
+                return new SseEmitter() {
+                    @Override
+                    public void send(SseEventBuilder builder) {
+                        StringBuilder text = new StringBuilder();
+                        builder.build().forEach(part -> text.append(part.getData()));
+                        sent.add(text.toString());
+                    }
+                };
+            }
+        };
+        streamService.subscribe(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        streamService.shutdown();
+    }
+
+    @Test
+    void aBurstOfMutationsIsSentAsOneEvent() throws Exception {
+        assertThat(nextState(1000)).contains("primary=4000");
+        for (int i = 0; i < 10; i++) {
+            counterService.reducePrimary(1);
+        }
+
+        assertThat(nextState(2000)).contains("primary=3990");
+        assertThat(nextState(500)).isNull();
+    }
+
+    @Test
+    void mutationsThatChangeNothingAreNotSent() throws Exception {
+        nextState(1000);
+        // Already at the maximum: clamped to the same state
+        counterService.setPrimary(5000);
+        // Back where the last event left off within one window
+        counterService.reducePrimary(1);
+        counterService.setPrimary(4000);
+
+        assertThat(nextState(500)).isNull();
+        counterService.reducePrimary(1);
+        assertThat(nextState(2000)).contains("primary=3999");
+    }
+
+    @Test
+    void idleSubscribersGetAHeartbeat() throws Exception {
+        nextState(1000);
+
+        assertThat(sent.poll(3, TimeUnit.SECONDS)).contains("keep-alive");
+    }
+
+    // The next state event, skipping heartbeats, or null if none comes in time
+    private String nextState(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        String event;
+        do {
+            event = sent.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } while (event != null && !event.startsWith("event:state"));
+        return event;
+    }
+}
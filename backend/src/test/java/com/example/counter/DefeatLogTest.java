@@ -0,0 +1,113 @@
+package com.example.counter;
+
+import com.example.counter.service.mesa.DefeatLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DefeatLogTest {
+
+    // Decodes an entry to its mesa id, enough to check ordering
+    private static DefeatLog<Integer> newLog() {
+        return new DefeatLog<>(1, (mesaId, mesaNumber, name, key, ruptura, timestamp) -> mesaId);
+    }
+
+    @Test
+    void viewsAreStableAcrossLaterAppendsAndChunks() {
+        DefeatLog<Integer> log = newLog();
+        for (int i = 0; i < 1500; i++) {
+            log.add(i, i, 0, -1, 1, i);
+        }
+        List<Integer> view = log.view();
+        for (int i = 1500; i < 10_000; i++) {
+            log.add(i, i, 0, -1, 1, i);
+        }
+
+        assertThat(view).hasSize(1500);
+        assertThat(view.get(1499)).isEqualTo(1499);
+        assertThat(log.view()).hasSize(10_000);
+        assertThat(log.view().get(9_999)).isEqualTo(9_999);
+        assertThat(log.viewLatestFirst().get(0)).isEqualTo(9_999);
+        assertThat(log.viewLatestFirst().get(9_999)).isEqualTo(0);
+        assertThat(log.after(1500, 2)).containsExactly(1500, 1501);
+        assertThatThrownBy(() -> view.add(1)).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> view.get(1500)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void columnsRoundTrip() {
+        DefeatLog<String> log = new DefeatLog<>(1, (mesaId, mesaNumber, name, key, ruptura, timestamp) ->
+                mesaId + "/" + mesaNumber + "/" + name + "/" + key + "/" + ruptura + "/" + timestamp);
+        log.add(7, 8, 3, -1, 2, 1_700_000_000_000L);
+
+        assertThat(log.view()).containsExactly("7/8/3/-1/2/1700000000000");
+    }
+
+    @Test
+    void readersNeverSeeMissingElements() throws Exception {
+        DefeatLog<Integer> log = newLog();
+        int total = 200_000;
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (log.size() < total && failure.get() == null) {
+                List<Integer> view = log.view();
+                int last = view.size() - 1;
+                if (last >= 0 && view.get(last) != last) {
+                    failure.set("bad element at " + last);
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < total; i++) {
+            log.add(i, i, 0, -1, 1, i);
+        }
+        reader.join();
+
+        assertThat(failure.get()).isNull();
+    }
+
+    @Test
+    void concurrentWritersPublishACompletePrefix() throws Exception {
+        DefeatLog<Integer> log = newLog();
+        int writers = 4;
+        int perWriter = 50_000;
+        int total = writers * (perWriter - 1);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (log.size() < total && failure.get() == null) {
+                List<Integer> view = log.view();
+                // Each writer tags its entries with 1..perWriter; 0 would be an unwritten slot
+                for (int i = Math.max(0, view.size() - 64); i < view.size(); i++) {
+                    if (view.get(i) % perWriter == 0) {
+                        failure.set("unwritten element at " + i);
+                    }
+                }
+            }
+        });
+        reader.start();
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            int base = w * perWriter;
+            threads[w] = new Thread(() -> {
+                for (int i = 1; i < perWriter; i++) {
+                    log.add(base + i, 0, 0, -1, 1, 0);
+                }
+            });
+            threads[w].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        reader.join();
+
+        List<Integer> all = log.view();
+        assertThat(failure.get()).isNull();
+        assertThat(all).hasSize(total);
+        assertThat(all.stream().distinct().count()).isEqualTo(all.size());
+        assertThat(log.lastSeq()).isEqualTo(all.size());
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.counter;
+
+import com.example.counter.service.journal.FileMutationJournal;
+import com.example.counter.service.journal.FileMutationJournal.Record;
+import com.example.counter.service.mesa.MesaCounterService.TotalesMesa;
+import com.example.counter.service.model.CounterState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileMutationJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsSurviveReopenAndReplayInOrder() throws Exception {
+        FileMutationJournal journal = new FileMutationJournal(true, 0);
+        long first = journal.open(dir);
+        AtomicReference<CounterState> counter = new AtomicReference<>(new CounterState(10, 10, 0, 5, 0, 0));
+        journal.counterChanged(counter::get);
+        TotalesMesa totals = new TotalesMesa();
+        totals.avatar0 = 3;
+        journal.mesaTotalsChanged(7, totals);
+        counter.set(new CounterState(8, 10, 1, 5, 0, 0));
+        journal.counterChanged(counter::get);
+        journal.shutdown();
+
+        FileMutationJournal reopened = new FileMutationJournal(true, 0);
+        long second = reopened.open(dir);
+        assertThat(second).isGreaterThan(first);
+        List<Record> records = new ArrayList<>();
+        reopened.replay(dir, second, records::add);
+        reopened.shutdown();
+
+        assertThat(records).extracting(r -> r.type)
+                .containsSubsequence(FileMutationJournal.COUNTER, FileMutationJournal.MESA_TOTALS);
+        Record lastCounter = records.stream().filter(r -> r.type.equals(FileMutationJournal.COUNTER))
+                .reduce((a, b) -> b).orElseThrow();
+        assertThat(lastCounter.value.get("primary").asInt()).isEqualTo(8);
+        Record mesa = records.stream().filter(r -> r.type.equals(FileMutationJournal.MESA_TOTALS)).findFirst()
+                .orElseThrow();
+        assertThat(mesa.key).isEqualTo("7");
+        assertThat(mesa.value.get("avatar0").asInt()).isEqualTo(3);
+    }
+
+    @Test
+    void rotatedSegmentsCanBeDeletedAndTornTailIsIgnored() throws Exception {
+        FileMutationJournal journal = new FileMutationJournal(true, 0);
+        journal.open(dir);
+        journal.registerTableDeleted("a");
+        long sealed = journal.rotate();
+        journal.registerTableDeleted("b");
+        journal.deleteSegmentsUpTo(dir, sealed);
+        journal.shutdown();
+
+        try (var files = Files.list(dir)) {
+            Path last = files.filter(p -> p.getFileName().toString().startsWith("journal-")).findFirst()
+                    .orElseThrow();
+            Files.writeString(last, "{\"seq\":99,\"t\":\"regis", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+
+        List<Record> records = new ArrayList<>();
+        journal.replay(dir, -1, records::add);
+        assertThat(records).extracting(r -> r.key).containsExactly("b");
+    }
+
+    @Test
+    void suppressedMutationsAreNotRecorded() throws Exception {
+        FileMutationJournal journal = new FileMutationJournal(true, 0);
+        journal.open(dir);
+        journal.withoutRecording(() -> journal.registerTableDeleted("hidden"));
+        journal.registerTableDeleted("kept");
+        journal.shutdown();
+
+        List<Record> records = new ArrayList<>();
+        journal.replay(dir, -1, records::add);
+        assertThat(records).extracting(r -> r.key).containsExactly("kept");
+    }
+}
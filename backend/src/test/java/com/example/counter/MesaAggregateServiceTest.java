@@ -0,0 +1,133 @@
+package com.example.counter;
+
+import com.example.counter.service.TablesService;
+import com.example.counter.service.journal.MutationJournal;
+import com.example.counter.service.mesa.MesaAggregateService;
+import com.example.counter.service.mesa.MesaAggregateService.Aggregates;
+import com.example.counter.service.mesa.MesaCounterService;
+import com.example.counter.service.model.RegisterTable;
+import com.example.counter.service.sector.SectorTopology;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MesaAggregateServiceTest {
+
+    private MesaCounterService mesas;
+    private TablesService tables;
+    private MesaAggregateService aggregates;
+
+    @BeforeEach
+    void setUp() {
+        mesas = new MesaCounterService(MutationJournal.NOOP);
+        tables = new TablesService(MutationJournal.NOOP);
+        tables.createRegister(1, "Uno", "Normal", 2, List.of(), "r1", "Tierra-616");
+        tables.createRegister(2, "Dos", "Normal", 2, List.of(), "r2", "Tierra-1610");
+        aggregates = new MesaAggregateService(mesas, tables, SectorTopology.defaults());
+    }
+
+    @Test
+    void totalsFollowEachRecordedEvent() {
+        mesas.recordAvatarDefeat(1, 0, 3);
+        mesas.recordAvatarDefeat(2, 2, 1);
+        mesas.recordHeroDefeat(1, "Thor", 5);
+        mesas.recordHeroDefeat(9, "Thor", 2);
+        mesas.recordHeroDefeat(9, "Hulk", 2);
+        mesas.recordPlanCompletion(2, 4);
+
+        Aggregates a = aggregates.get();
+        assertThat(a.global.mesas).isEqualTo(3);
+        assertThat(a.global.avatar0).isEqualTo(1);
+        assertThat(a.global.avatar2).isEqualTo(1);
+        assertThat(a.global.rupturaTotal).isEqualTo(4);
+        assertThat(a.global.threatFromHeroes).isEqualTo(9);
+        assertThat(a.global.threatFromPlan).isEqualTo(4);
+        assertThat(a.global.heroDefeats).isEqualTo(3);
+        assertThat(a.sectors.get(1).mesas).isEqualTo(2);
+        assertThat(a.sectors.get(SectorTopology.defaults().sectorOf(9)).threatFromHeroes).isEqualTo(4);
+        assertThat(a.realities.keySet()).containsExactly("Tierra-1610", "Tierra-616");
+        assertThat(a.realities.get("Tierra-616").threatFromHeroes).isEqualTo(5);
+        assertThat(a.heroLeaderboard).extracting(h -> h.hero).containsExactly("Thor", "Hulk");
+        assertThat(a.heroLeaderboard.get(0).defeats).isEqualTo(2);
+        assertThat(a.mesas.get(1).tableName).isEqualTo("Uno");
+        assertThat(a.mesas.get(9).realityName).isNull();
+        assertThat(a.mesas.get(9).sectorId).isEqualTo(SectorTopology.defaults().sectorOf(9));
+    }
+
+    @Test
+    void unchangedAggregatesAreSharedAndUnchangedMesasReused() {
+        mesas.recordAvatarDefeat(1, 0, 1);
+        mesas.recordAvatarDefeat(2, 0, 1);
+        Aggregates first = aggregates.get();
+        assertThat(aggregates.get()).isSameAs(first);
+
+        mesas.recordAvatarDefeat(2, 1, 1);
+        Aggregates second = aggregates.get();
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.version).isGreaterThan(first.version);
+        assertThat(second.mesas.get(1)).isSameAs(first.mesas.get(1));
+        assertThat(second.mesas.get(2).avatar1).isEqualTo(1);
+        assertThat(first.mesas.get(2).avatar1).isZero();
+
+        // Every rebuild gets its own version, so two bodies never share an ETag
+        mesas.clearAll();
+        Aggregates third = aggregates.get();
+        assertThat(third.version).isGreaterThan(second.version);
+        assertThat(aggregates.get().version).isEqualTo(third.version);
+    }
+
+    @Test
+    void changingATablesRealityMovesItsTotals() {
+        mesas.recordPlanCompletion(1, 7);
+        RegisterTable uno = tables.findRegisterByNumber(1);
+        tables.updateRegisterTable(uno.id(), 1, "Uno bis", "Normal", 2, List.of(), "r2", "Tierra-1610", false);
+
+        Aggregates a = aggregates.get();
+        assertThat(a.realities).containsOnlyKeys("Tierra-1610");
+        assertThat(a.realities.get("Tierra-1610").threatFromPlan).isEqualTo(7);
+        assertThat(a.mesas.get(1).tableName).isEqualTo("Uno bis");
+
+        tables.deleteRegisterTable(uno.id());
+        assertThat(aggregates.get().realities).isEmpty();
+        assertThat(aggregates.get().global.threatFromPlan).isEqualTo(7);
+    }
+
+    @Test
+    void incrementalTotalsMatchARecountAfterClearAndRestore() {
+        Random random = new Random(23);
+        for (int i = 0; i < 2_000; i++) {
+            int mesa = 1 + random.nextInt(40);
+            switch (random.nextInt(3)) {
+                case 0 -> mesas.recordAvatarDefeat(mesa, random.nextInt(4), random.nextInt(3));
+                case 1 -> mesas.recordHeroDefeat(mesa, "Heroe " + random.nextInt(10), 1 + random.nextInt(3));
+                default -> mesas.recordPlanCompletion(mesa, 1 + random.nextInt(3));
+            }
+        }
+        assertMatchesRecount();
+
+        Map<Integer, MesaCounterService.TotalesMesa> saved = mesas.getTotalesSnapshot();
+        mesas.clearAll();
+        assertThat(aggregates.get().global.mesas).isZero();
+        assertThat(aggregates.get().heroLeaderboard).isEmpty();
+
+        mesas.restore(saved, List.of(), List.of());
+        assertMatchesRecount();
+    }
+
+    private void assertMatchesRecount() {
+        Aggregates a = aggregates.get();
+        Map<Integer, MesaCounterService.TotalesMesa> all = mesas.getTotalesSnapshot();
+        assertThat(a.mesas).hasSize(all.size());
+        assertThat(a.global.mesas).isEqualTo(all.size());
+        assertThat(a.global.rupturaTotal).isEqualTo(all.values().stream().mapToInt(t -> t.rupturaTotal).sum());
+        assertThat(a.global.threatFromHeroes).isEqualTo(all.values().stream().mapToInt(t -> t.threatFromHeroes).sum());
+        assertThat(a.global.threatFromPlan).isEqualTo(all.values().stream().mapToInt(t -> t.threatFromPlan).sum());
+        assertThat(a.heroLeaderboard.stream().mapToInt(h -> h.defeats).sum()).isEqualTo(a.global.heroDefeats);
+        assertThat(a.sectors.values().stream().mapToInt(t -> t.avatar3).sum()).isEqualTo(a.global.avatar3);
+    }
+}
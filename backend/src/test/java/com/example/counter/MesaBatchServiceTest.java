@@ -0,0 +1,165 @@
+package com.example.counter;
+
+import com.example.counter.service.CounterService;
+import com.example.counter.service.TablesService;
+import com.example.counter.service.dedup.RequestDeduplicator;
+import com.example.counter.service.journal.MutationJournal;
+import com.example.counter.service.mesa.MesaBatchService.BatchRequest;
+import com.example.counter.service.mesa.MesaBatchService.BatchResult;
+import com.example.counter.service.mesa.MesaBatchService.Operation;
+import com.example.counter.service.mesa.MesaBatchService;
+import com.example.counter.service.mesa.MesaCounterService;
+import com.example.counter.service.sector.SectorService;
+import com.example.counter.service.sector.SectorTopology;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MesaBatchServiceTest {
+
+    private CounterService counterService;
+    private MesaCounterService mesaService;
+    private TablesService tablesService;
+    private SectorService sectorService;
+    private MesaBatchService batchService;
+
+    @BeforeEach
+    void setUp() {
+        counterService = new CounterService(MutationJournal.NOOP);
+        mesaService = new MesaCounterService(MutationJournal.NOOP);
+        tablesService = new TablesService(MutationJournal.NOOP);
+        sectorService = new SectorService(tablesService, mesaService, SectorTopology.defaults(),
+                MutationJournal.NOOP);
+        batchService = new MesaBatchService(mesaService, counterService, sectorService, tablesService,
+                new RequestDeduplicator(60_000, 256));
+    }
+
+    @Test
+    void avatarDefeatAndPrimaryReduceAreAppliedTogether() {
+        BatchResult result = batchService.apply(5, request("r1",
+                avatarDefeat(2, 30), primaryReduce(30)));
+
+        assertThat(result.applied).isTrue();
+        assertThat(result.counter.primary).isEqualTo(3970);
+        assertThat(result.totals.avatar2).isEqualTo(1);
+        assertThat(result.totals.rupturaTotal).isEqualTo(30);
+    }
+
+    @Test
+    void invalidOperationAppliesNothing() {
+        assertThatThrownBy(() -> batchService.apply(5, request("r2", primaryReduce(30), avatarDefeat(7, 1))))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(counterService.getState().primary).isEqualTo(4000);
+        assertThat(mesaService.getTotalesSnapshot()).isEmpty();
+    }
+
+    @Test
+    void retriedBatchIsAppliedOnce() {
+        batchService.apply(5, request("r3", primaryReduce(10)));
+        BatchResult retry = batchService.apply(5, request("r3", primaryReduce(10)));
+
+        assertThat(retry.duplicate).isTrue();
+        assertThat(retry.counter.primary).isEqualTo(3990);
+    }
+
+    @Test
+    void rejectedSecondSectorDeltaAppliesNothing() {
+        tablesService.createRegister(5, "Cinco", "Normal", 2, List.of(), null, null);
+        sectorService.setIndicatorActive(5, "mangog", true);
+
+        assertThatThrownBy(() -> batchService.apply(5, request("r4",
+                primaryReduce(30), sectorDelta("mangog", -4), sectorDelta("gate", 2))))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(mangog(5)).isEqualTo(10);
+        assertThat(counterService.getState().primary).isEqualTo(4000);
+
+        // The rejected uuid can be sent again once the batch is fixed
+        BatchResult retry = batchService.apply(5, request("r4", primaryReduce(30), sectorDelta("mangog", -4)));
+        assertThat(retry.applied).isTrue();
+        assertThat(mangog(5)).isEqualTo(6);
+    }
+
+    @Test
+    void laterSectorDeltaSeesTheEarlierOne() {
+        tablesService.createRegister(5, "Cinco", "Normal", 2, List.of(), null, null);
+        sectorService.setIndicatorActive(5, "mangog", true);
+
+        // The first delta defeats Mangog, so the second one is rejected
+        assertThatThrownBy(() -> batchService.apply(5, request("r5",
+                sectorDelta("mangog", -10), sectorDelta("mangog", -1))))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("indicator defeated");
+
+        assertThat(mangog(5)).isEqualTo(10);
+        assertThat(mesaService.getSpecialDefeatsSnapshot()).isEmpty();
+    }
+
+    private int mangog(int mesaId) {
+        return sectorService.getStatusForMesa(mesaId).indicatorsByMesa.get(mesaId).get("mangog").value;
+    }
+
+    @Test
+    void theExclusiveLockNeverSeesHalfABatch() throws Exception {
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < 2_000; i++) {
+                batchService.exclusiveLock().lock();
+                try {
+                    int ruptura = mesaService.getTotalesSnapshot().values().stream()
+                            .mapToInt(t -> t.rupturaTotal).sum();
+                    // Each batch defeats an avatar for 1 ruptura and reduces the primary by 1
+                    assertThat(4000 - counterService.getState().primary).isEqualTo(ruptura);
+                } finally {
+                    batchService.exclusiveLock().unlock();
+                }
+            }
+        });
+        Throwable[] failure = new Throwable[1];
+        reader.setUncaughtExceptionHandler((t, e) -> failure[0] = e);
+        reader.start();
+        Concurrently.run(4, t -> {
+            for (int j = 0; j < 500; j++) {
+                batchService.apply(1 + t, request("b" + t + "-" + j, avatarDefeat(j % 4, 1), primaryReduce(1)));
+            }
+        });
+        reader.join();
+
+        assertThat(failure[0]).isNull();
+        assertThat(counterService.getState().primary).isEqualTo(2000);
+    }
+
+    private static BatchRequest request(String uuid, Operation... ops) {
+        BatchRequest request = new BatchRequest();
+        request.uuid = uuid;
+        request.operations = List.of(ops);
+        return request;
+    }
+
+    private static Operation avatarDefeat(int avatarIndex, int ruptura) {
+        Operation op = new Operation();
+        op.type = MesaBatchService.AVATAR_DEFEAT;
+        op.avatarIndex = avatarIndex;
+        op.rupturaAmount = ruptura;
+        return op;
+    }
+
+    private static Operation sectorDelta(String indicator, int delta) {
+        Operation op = new Operation();
+        op.type = MesaBatchService.SECTOR_DELTA;
+        op.indicator = indicator;
+        op.delta = delta;
+        return op;
+    }
+
+    private static Operation primaryReduce(int delta) {
+        Operation op = new Operation();
+        op.type = MesaBatchService.PRIMARY_REDUCE;
+        op.delta = delta;
+        return op;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.counter;
+
+import com.example.counter.service.TablesService;
+import com.example.counter.service.journal.MutationJournal;
+import com.example.counter.service.mesa.MesaAggregateService;
+import com.example.counter.service.mesa.MesaCounterService;
+import com.example.counter.service.mesa.MesaCounterService.TotalesMesa;
+import com.example.counter.service.sector.SectorTopology;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class MesaCounterServiceStressTest {
+    private static final int MESAS = 50;
+
+    private MesaCounterService mesaService;
+
+    @BeforeEach
+    void setUp() {
+        mesaService = new MesaCounterService(MutationJournal.NOOP);
+    }
+
+    @Test
+    void concurrentEventsOnManyMesasAreNotLost() throws Exception {
+        int threads = 8;
+        int perThread = 5_000;
+        Concurrently.run(threads, t -> {
+            for (int j = 0; j < perThread; j++) {
+                int mesa = 1 + (t + j * threads) % MESAS;
+                mesaService.recordAvatarDefeat(mesa, j % 4, 1);
+                mesaService.recordHeroDefeat(mesa, "Heroe " + (j % 7), 2);
+                if (j % 100 == 0) {
+                    mesaService.recordNamedAvatarDefeat(mesa, "Mangog", 1);
+                }
+            }
+        });
+
+        Map<Integer, TotalesMesa> totals = mesaService.getTotalesSnapshot();
+        assertThat(totals).hasSize(MESAS);
+        assertThat(totals.values().stream().mapToInt(t -> t.rupturaTotal).sum()).isEqualTo(threads * perThread);
+        assertThat(totals.values().stream().mapToInt(t -> t.threatFromHeroes).sum()).isEqualTo(2 * threads * perThread);
+        assertThat(totals.values().stream()
+                .mapToInt(t -> t.getDefeatedHeroes().values().stream().mapToInt(Integer::intValue).sum())
+                .sum()).isEqualTo(threads * perThread);
+        assertThat(mesaService.getAvatarDefeatsSnapshot()).hasSize(threads * perThread)
+                .allSatisfy(d -> assertThat(d.avatarName).isNotNull());
+        assertThat(mesaService.getSpecialDefeatsSnapshot()).hasSize(threads * perThread / 100);
+    }
+
+    @Test
+    void snapshotsAndRestoresStayConsistentUnderLoad() throws Exception {
+        MesaAggregateService aggregates = new MesaAggregateService(mesaService,
+                new TablesService(MutationJournal.NOOP), SectorTopology.defaults());
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread admin = new Thread(() -> {
+            while (!stop.get()) {
+                Map<Integer, TotalesMesa> snapshot = mesaService.getTotalesSnapshot();
+                // Every event adds one avatar and two ruptura: a half-applied one would show
+                snapshot.forEach((mesa, t) -> {
+                    if (t.rupturaTotal != 2 * (t.avatar0 + t.avatar1 + t.avatar2 + t.avatar3)) {
+                        failure.compareAndSet(null, "mesa " + mesa + " half applied");
+                    }
+                });
+                mesaService.restore(snapshot, mesaService.getAvatarDefeatsSnapshot(), List.of());
+                aggregates.get();
+            }
+        });
+        admin.start();
+        try {
+            Concurrently.run(4, t -> {
+                for (int j = 0; j < 20_000; j++) {
+                    mesaService.recordAvatarDefeat(1 + (t + j * 4) % MESAS, j % 4, 2);
+                }
+            });
+        } finally {
+            stop.set(true);
+            admin.join();
+        }
+
+        assertThat(failure.get()).isNull();
+        Map<Integer, TotalesMesa> totals = mesaService.getTotalesSnapshot();
+        MesaAggregateService.Aggregates a = aggregates.get();
+        assertThat(a.global.mesas).isEqualTo(totals.size());
+        assertThat(a.global.rupturaTotal).isEqualTo(totals.values().stream().mapToInt(t -> t.rupturaTotal).sum());
+        assertThat(a.global.avatar2).isEqualTo(totals.values().stream().mapToInt(t -> t.avatar2).sum());
+    }
+
+    // Timing depends on the machine: run with -Dbenchmark=true on 4+ CPUs
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void throughputScalesAcrossMesas() throws Exception {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        assumeTrue(cpus >= 4, "needs 4+ CPUs");
+        int perThread = 50_000;
+        // Warm-up so the first measurement is not dominated by JIT
+        measure(4, perThread);
+
+        double single = measure(1, perThread);
+        int threads = Math.min(MESAS, cpus);
+        double parallel = measure(threads, perThread);
+        // Mesas on different stripes: at least half the ideal speed-up
+        assertThat(parallel / single).isGreaterThan(threads / 2.0);
+
+        assertThat(mesaService.getTotalesSnapshot()).isNotEmpty();
+    }
+
+    // Each thread plays its own mesa, as the tables of an event do
+    private double measure(int threads, int perThread) throws Exception {
+        mesaService.clearAll();
+        long start = System.nanoTime();
+        Concurrently.run(threads, t -> {
+            int mesa = 1 + t % MESAS;
+            for (int j = 0; j < perThread; j++) {
+                if ((j & 1) == 0) {
+                    mesaService.recordAvatarDefeat(mesa, j & 3, 1);
+                } else {
+                    mesaService.recordPlanCompletion(mesa, 1);
+                }
+            }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return threads * (double) perThread / seconds;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.counter;
+
+import com.example.counter.service.journal.MutationJournal;
+import com.example.counter.service.mesa.MesaCounterService;
+import com.example.counter.service.mesa.MesaCounterService.AvatarDefeat;
+import com.example.counter.service.mesa.MesaCounterService.DefeatPage;
+import com.example.counter.service.mesa.MesaCounterService.TotalesMesa;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MesaCounterServiceTest {
+
+    @Test
+    void defeatCursorPagesOnlyNewEventsAndResetsAfterClear() {
+        MesaCounterService mesas = new MesaCounterService(MutationJournal.NOOP);
+        for (int mesa = 1; mesa <= 5; mesa++) {
+            mesas.recordAvatarDefeat(mesa, 0, 1);
+        }
+
+        DefeatPage<AvatarDefeat> first = mesas.getAvatarDefeatsSince(0, 3);
+        assertThat(first.reset).isTrue();
+        assertThat(first.events).extracting(d -> d.mesaId).containsExactly(1, 2, 3);
+
+        DefeatPage<AvatarDefeat> second = mesas.getAvatarDefeatsSince(first.next, 3);
+        assertThat(second.reset).isFalse();
+        assertThat(second.events).extracting(d -> d.mesaId).containsExactly(4, 5);
+
+        DefeatPage<AvatarDefeat> idle = mesas.getAvatarDefeatsSince(second.next, 3);
+        assertThat(idle.events).isEmpty();
+        assertThat(idle.next).isEqualTo(second.next);
+
+        mesas.recordNamedAvatarDefeat(6, "Mangog", 2);
+        assertThat(mesas.getAvatarDefeatsSince(second.next, 3).events).isEmpty();
+        assertThat(mesas.getSpecialDefeatsSince(0, 10).events).hasSize(1);
+
+        mesas.clearAll();
+        mesas.recordAvatarDefeat(7, 1, 1);
+        DefeatPage<AvatarDefeat> afterClear = mesas.getAvatarDefeatsSince(second.next, 3);
+        assertThat(afterClear.reset).isTrue();
+        assertThat(afterClear.events).extracting(d -> d.mesaId).containsExactly(7);
+        assertThat(afterClear.next).isGreaterThan(second.next);
+    }
+
+    @Test
+    void namesAreInternedAndSpecialsSplitAtIngestion() {
+        MesaCounterService mesas = new MesaCounterService(MutationJournal.NOOP);
+        mesas.recordNamedAvatarDefeat(1, new String("Ultron"), 1);
+        mesas.recordNamedAvatarDefeat(2, " Ultron ", 3);
+        mesas.recordNamedAvatarDefeat(3, "  MANGOG", 2);
+        mesas.recordNamedAvatarDefeat(4, "Portal entre dos mundos", 1);
+        mesas.recordAvatarDefeat(5, 2, 0);
+
+        List<AvatarDefeat> latestFirst = mesas.getAvatarDefeatsLatestFirst();
+        assertThat(latestFirst).extracting(d -> d.avatarName).containsExactly("Bellaco", "Ultron", "Ultron");
+        assertThat(latestFirst.get(1).avatarName).isSameAs(latestFirst.get(2).avatarName);
+        assertThat(latestFirst.get(0).rupturaAmount).isEqualTo(1);
+        assertThat(mesas.getSpecialDefeatsSnapshot()).extracting(d -> d.key).containsExactly("mangog", "portal");
+        assertThat(mesas.getSpecialDefeatsSnapshot().get(0).avatarName).isEqualTo("MANGOG");
+    }
+
+    @Test
+    void heroCountsKeepTheDefeatedHeroesJson() throws Exception {
+        MesaCounterService mesas = new MesaCounterService(MutationJournal.NOOP);
+        mesas.recordHeroDefeat(3, "Thor", 1);
+        mesas.recordHeroDefeat(3, "Thor", 1);
+        mesas.recordHeroDefeat(3, "Heroe casero", 1);
+        TotalesMesa copy = mesas.getTotalesForMesa(3);
+        mesas.recordHeroDefeat(3, "Hulk", 1);
+
+        assertThat(copy.getDefeatedHeroes()).containsExactly(Map.entry("Thor", 2), Map.entry("Heroe casero", 1));
+        assertThat(copy.heroDefeats("Hulk")).isZero();
+        assertThat(mesas.getTotalesForMesa(3).heroDefeats("Hulk")).isEqualTo(1);
+
+        ObjectMapper mapper = new ObjectMapper();
+        String json = mapper.writeValueAsString(copy);
+        assertThat(mapper.readTree(json).get("defeatedHeroes").toString())
+                .isEqualTo("{\"Thor\":2,\"Heroe casero\":1}");
+        TotalesMesa read = mapper.readValue(json, TotalesMesa.class);
+        assertThat(read.getDefeatedHeroes()).isEqualTo(copy.getDefeatedHeroes());
+        assertThat(mapper.readValue("{\"defeatedHeroes\":{\"Groot\":4}}", TotalesMesa.class).heroDefeats("Groot"))
+                .isEqualTo(4);
+    }
+}
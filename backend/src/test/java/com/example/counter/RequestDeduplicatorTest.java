@@ -0,0 +1,39 @@
+package com.example.counter;
+
+import com.example.counter.service.dedup.RequestDeduplicator;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestDeduplicatorTest {
+
+    @Test
+    void retriedRequestIsAppliedOnce() {
+        RequestDeduplicator dedup = new RequestDeduplicator(60_000, 256);
+
+        assertThat(dedup.firstSeen(3, "avatar-defeat", "abc")).isTrue();
+        assertThat(dedup.firstSeen(3, "avatar-defeat", "abc")).isFalse();
+        // Same id on another operation or mesa is a different request
+        assertThat(dedup.firstSeen(3, "primary-reduce", "abc")).isTrue();
+        assertThat(dedup.firstSeen(4, "avatar-defeat", "abc")).isTrue();
+    }
+
+    @Test
+    void requestsWithoutIdAreAlwaysApplied() {
+        RequestDeduplicator dedup = new RequestDeduplicator(60_000, 256);
+
+        assertThat(dedup.firstSeen(1, "hero-defeat", null)).isTrue();
+        assertThat(dedup.firstSeen(1, "hero-defeat", null)).isTrue();
+    }
+
+    @Test
+    void windowIsBoundedBySize() {
+        RequestDeduplicator dedup = new RequestDeduplicator(60_000, 16);
+        for (int i = 0; i < 17; i++) {
+            assertThat(dedup.firstSeen(1, "op", "id-" + i)).isTrue();
+        }
+        // Oldest id was evicted, newest is still remembered
+        assertThat(dedup.firstSeen(1, "op", "id-0")).isTrue();
+        assertThat(dedup.firstSeen(1, "op", "id-16")).isFalse();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.counter;
+
+import com.example.counter.service.scheduling.ScheduledJobs;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScheduledJobsTest {
+
+    @Test
+    void overlappingRunIsSkippedAndFailuresAreCounted() throws Exception {
+        ScheduledJobs jobs = new ScheduledJobs();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread slow = new Thread(() -> jobs.run("backup", () -> {
+            started.countDown();
+            release.await();
+        }));
+        slow.start();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(jobs.run("backup", () -> { })).isFalse();
+        assertThat(jobs.run("drive-copy", () -> { })).isTrue();
+        assertThat(jobs.getStats().get("backup").running).isTrue();
+
+        release.countDown();
+        slow.join();
+        assertThat(jobs.run("backup", () -> {
+            throw new IllegalStateException("disk full");
+        })).isTrue();
+
+        ScheduledJobs.JobStats backup = jobs.getStats().get("backup");
+        assertThat(backup.runs).isEqualTo(2);
+        assertThat(backup.skipped).isEqualTo(1);
+        assertThat(backup.failures).isEqualTo(1);
+        assertThat(backup.lastError).isEqualTo("disk full");
+        assertThat(backup.running).isFalse();
+        assertThat(jobs.getStats()).containsOnlyKeys("backup", "drive-copy");
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.counter;
+
+import com.example.counter.service.TablesService;
+import com.example.counter.service.journal.MutationJournal;
+import com.example.counter.service.mesa.MesaCounterService;
+import com.example.counter.service.sector.SectorService.IndicatorState;
+import com.example.counter.service.sector.SectorService;
+import com.example.counter.service.sector.SectorTopology;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SectorServiceStressTest {
+    private static final int SECTORS = 16;
+    private static final int FIRST_GROUP_MESA = SectorTopology.MESA_GROUP_START;
+
+    private SectorService sectorService;
+
+    @BeforeEach
+    void setUp() {
+        TablesService tablesService = new TablesService(MutationJournal.NOOP);
+        for (int mesa = FIRST_GROUP_MESA; mesa < FIRST_GROUP_MESA + SECTORS * SectorTopology.MESA_GROUP_SIZE; mesa++) {
+            tablesService.createRegister(mesa, "Mesa " + mesa, "Normal", 2, List.of(), null, null);
+        }
+        sectorService = new SectorService(tablesService, new MesaCounterService(MutationJournal.NOOP),
+                SectorTopology.defaults(), MutationJournal.NOOP);
+        for (int s = 0; s < SECTORS; s++) {
+            sectorService.setIndicatorActive(ownerMesa(s), "mangog", true);
+        }
+    }
+
+    @Test
+    void concurrentDeltasWithinOneSectorAreNotLost() throws Exception {
+        int threads = 8;
+        int perThread = 2_000;
+        int mesa = ownerMesa(0);
+        Concurrently.run(threads, t -> {
+            for (int j = 0; j < perThread; j++) {
+                sectorService.applyDelta(mesa + (j % SectorTopology.MESA_GROUP_SIZE), mesa, "mangog", 1);
+            }
+        });
+
+        assertThat(mangog(0).value).isEqualTo(30 + threads * perThread);
+    }
+
+    // Timing depends on the machine: run with -Dbenchmark=true on 4+ CPUs
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void throughputScalesAcrossSectors() throws Exception {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        assumeTrue(cpus >= 4, "needs 4+ CPUs");
+        int perThread = 20_000;
+        // Warm-up so the first measurement is not dominated by JIT
+        measure(4, perThread);
+
+        double single = measure(1, perThread);
+        int threads = Math.min(SECTORS, cpus);
+        double parallel = measure(threads, perThread);
+        // Independent sectors: at least half the ideal speed-up
+        assertThat(parallel / single).isGreaterThan(threads / 2.0);
+
+        for (int s = 0; s < SECTORS; s++) {
+            assertThat(mangog(s).value).isEqualTo(30);
+            assertThat(mangog(s).defeated).isFalse();
+        }
+    }
+
+    // Each thread owns one sector and alternates +1/-1 so values return to start
+    private double measure(int threads, int perThread) throws Exception {
+        long start = System.nanoTime();
+        Concurrently.run(threads, t -> {
+            int mesa = ownerMesa(t % SECTORS);
+            for (int j = 0; j < perThread; j++) {
+                sectorService.applyDelta(mesa, mesa, "mangog", (j & 1) == 0 ? 1 : -1);
+            }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return threads * (double) perThread / seconds;
+    }
+
+    private IndicatorState mangog(int sector) {
+        int mesa = ownerMesa(sector);
+        return sectorService.getStatusForMesa(mesa).indicatorsByMesa.get(mesa).get("mangog");
+    }
+
+    private static int ownerMesa(int sector) {
+        return FIRST_GROUP_MESA + sector * SectorTopology.MESA_GROUP_SIZE;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.counter;
+
+import com.example.counter.service.TablesService;
+import com.example.counter.service.journal.MutationJournal;
+import com.example.counter.service.mesa.MesaCounterService;
+import com.example.counter.service.model.RegisterTable;
+import com.example.counter.service.sector.SectorService;
+import com.example.counter.service.sector.SectorTopology;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SectorTopologyTest {
+
+    @Test
+    void defaultLayoutMatchesFixedRangesAndGroupsOfThree() {
+        SectorTopology topology = SectorTopology.defaults();
+
+        assertThat(topology.sectorOf(0)).isEqualTo(1);
+        assertThat(topology.sectorOf(4)).isEqualTo(1);
+        assertThat(topology.sectorOf(5)).isEqualTo(2);
+        assertThat(topology.sectorOf(8)).isEqualTo(2);
+        assertThat(topology.sectorOf(9)).isEqualTo(3);
+        assertThat(topology.sectorOf(11)).isEqualTo(3);
+        assertThat(topology.sectorOf(12)).isEqualTo(4);
+        assertThat(topology.members(1)).containsExactly(1, 2, 3, 4);
+        assertThat(topology.members(4)).containsExactly(12, 13, 14);
+    }
+
+    @Test
+    void mesasBeyondPrecomputedRangeUseSameArithmetic() {
+        SectorTopology topology = new SectorTopology("1-4,5-8", 9, 3, 20);
+
+        assertThat(topology.sectorOf(1000)).isEqualTo(SectorTopology.defaults().sectorOf(1000));
+        int sector = topology.sectorOf(1000);
+        assertThat(topology.members(sector)).contains(1000);
+    }
+
+    @Test
+    void customLayoutIsValidated() {
+        SectorTopology topology = new SectorTopology("1-6", 7, 4, 50);
+        assertThat(topology.sectorOf(6)).isEqualTo(1);
+        assertThat(topology.sectorOf(7)).isEqualTo(2);
+        assertThat(topology.members(2)).containsExactly(7, 8, 9, 10);
+
+        assertThatThrownBy(() -> new SectorTopology("1-4", 9, 3, 50))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void activeTableCountsFollowRegisterChanges() {
+        TablesService tables = new TablesService(MutationJournal.NOOP);
+        RegisterTable first = tables.createRegister(9, "A", "Normal", 1, List.of(), null, null);
+        SectorService sectors = new SectorService(tables, new MesaCounterService(MutationJournal.NOOP),
+                SectorTopology.defaults(), MutationJournal.NOOP);
+        tables.createRegister(10, "B", "Normal", 1, List.of(), null, null);
+
+        assertThat(sectors.setIndicatorActive(9, "mangog", true).indicatorsByMesa.get(9).get("mangog").value)
+                .isEqualTo(20);
+        sectors.setIndicatorActive(9, "mangog", false);
+
+        tables.updateRegisterTable(first.id(), 9, "A", "Normal", 1, List.of(), null, null, true);
+        tables.createRegister(11, "C", "Normal", 1, List.of(), null, null);
+        assertThat(sectors.setIndicatorActive(10, "gate", true).indicatorsByMesa.get(10).get("gate").value)
+                .isEqualTo(14);
+
+        tables.restore(List.of(), List.of());
+        tables.createRegister(11, "D", "Normal", 1, List.of(), null, null);
+        sectors.setIndicatorActive(10, "gate", false);
+        assertThat(sectors.setIndicatorActive(11, "mangog", true).indicatorsByMesa.get(11).get("mangog").value)
+                .isEqualTo(10);
+    }
+}
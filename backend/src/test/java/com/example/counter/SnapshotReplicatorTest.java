@@ -0,0 +1,80 @@
+package com.example.counter;
+
+import com.example.counter.service.snapshot.SnapshotReplicator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotReplicatorTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void copiesInBackgroundAndKeepsNewestCopies() throws Exception {
+        Path local = Files.createDirectories(tmp.resolve("local"));
+        Path drive = tmp.resolve("drive");
+        SnapshotReplicator replicator = new SnapshotReplicator(drive.toString(), 2, 4, 10, 100);
+        try {
+            for (int i = 0; i < 4; i++) {
+                Path f = local.resolve("app-2024010" + i + "-000000.json");
+                Files.writeString(f, "{\"n\":" + i + "}");
+                Files.setLastModifiedTime(f, FileTime.fromMillis(1_000_000L * (i + 1)));
+                replicator.submit(f);
+                long done = i + 1;
+                await(() -> replicator.getStatus().replicated + replicator.getStatus().dropped == done);
+            }
+
+            SnapshotReplicator.Status status = replicator.getStatus();
+            assertThat(status.lastReplicated).isEqualTo("app-20240103-000000.json");
+            assertThat(status.lagMs).isZero();
+            assertThat(Files.readString(drive.resolve("app-20240103-000000.json"))).isEqualTo("{\"n\":3}");
+            try (Stream<Path> s = Files.list(drive)) {
+                assertThat(s.map(p -> p.getFileName().toString()))
+                        .containsExactlyInAnyOrder("app-20240102-000000.json", "app-20240103-000000.json");
+            }
+        } finally {
+            replicator.shutdown();
+        }
+    }
+
+    @Test
+    void retriesWithBackoffUntilTargetIsUsable() throws Exception {
+        Path src = Files.writeString(tmp.resolve("app-20240101-000000.json"), "{}");
+        // A plain file where the target directory should be makes every copy fail
+        Path drive = Files.writeString(tmp.resolve("drive"), "");
+        SnapshotReplicator replicator = new SnapshotReplicator(drive.toString(), 6, 4, 10, 40);
+        try {
+            replicator.submit(src);
+            await(() -> replicator.getStatus().consecutiveFailures >= 2);
+            assertThat(replicator.getStatus().lastError).isNotNull();
+            assertThat(replicator.getStatus().replicated).isZero();
+
+            Files.delete(drive);
+            await(() -> replicator.getStatus().replicated == 1);
+
+            SnapshotReplicator.Status status = replicator.getStatus();
+            assertThat(status.consecutiveFailures).isZero();
+            assertThat(status.failures).isGreaterThanOrEqualTo(2);
+            assertThat(status.lastError).isNull();
+            assertThat(drive.resolve("app-20240101-000000.json")).hasContent("{}");
+        } finally {
+            replicator.shutdown();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
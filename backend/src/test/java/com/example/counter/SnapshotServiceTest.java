@@ -0,0 +1,327 @@
+package com.example.counter;
+
+import com.example.counter.service.CounterService;
+import com.example.counter.service.TablesService;
+import com.example.counter.service.dedup.RequestDeduplicator;
+import com.example.counter.service.journal.FileMutationJournal;
+import com.example.counter.service.journal.MutationJournal;
+import com.example.counter.service.mesa.MesaBatchService;
+import com.example.counter.service.mesa.MesaCounterService;
+import com.example.counter.service.scheduling.ScheduledJobs;
+import com.example.counter.service.sector.SectorService;
+import com.example.counter.service.sector.SectorTopology;
+import com.example.counter.service.snapshot.SnapshotReplicator;
+import com.example.counter.service.snapshot.SnapshotService;
+import com.example.counter.service.snapshot.SnapshotService.SnapshotData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private static final class Services {
+        final CounterService counter = new CounterService(MutationJournal.NOOP);
+        final TablesService tables = new TablesService(MutationJournal.NOOP);
+        final MesaCounterService mesas = new MesaCounterService(MutationJournal.NOOP);
+        final SectorService sectors = new SectorService(tables, mesas, SectorTopology.defaults(),
+                MutationJournal.NOOP);
+        final SnapshotService snapshots;
+
+        Services(Path dir, String format) {
+            this(dir, format, false, false);
+        }
+
+        Services(Path dir, String format, boolean backupOnShutdown, boolean restoreOnStart) {
+            this(dir, format, backupOnShutdown, restoreOnStart, new FileMutationJournal(false, 0));
+        }
+
+        Services(Path dir, String format, boolean backupOnShutdown, boolean restoreOnStart,
+                FileMutationJournal journal) {
+            snapshots = new SnapshotService(counter, tables, mesas, sectors,
+                    new MesaBatchService(mesas, counter, sectors, tables, new RequestDeduplicator(60_000, 256)), journal,
+                    new SnapshotReplicator("", 6, 4, 1000, 60000), new ScheduledJobs(), dir.toString(), 60000, 300000,
+                    60, 600000, false, backupOnShutdown, restoreOnStart, format, true);
+            snapshots.onReady();
+        }
+
+        void populate() {
+            counter.reducePrimary(25);
+            counter.setSecondaryHeroes(3);
+            for (int mesa = 1; mesa <= 40; mesa++) {
+                tables.createRegister(mesa, "Mesa " + mesa, "Normal", 3, List.of(), null, null);
+                mesas.recordAvatarDefeat(mesa, mesa % 4, 2);
+                mesas.recordHeroDefeat(mesa, "Thor", 1);
+            }
+            mesas.recordNamedAvatarDefeat(9, "Mangog", 0);
+            tables.createFreeGame(3, "Libre", "Experto", "(Ninguno)", 2, List.of(), false);
+            tables.setEventQrEnabled(true);
+            sectors.setIndicatorActive(9, "mangog", true);
+        }
+    }
+
+    private static void assertRestored(Services source, Services target) {
+        assertThat(target.counter.getState().primary).isEqualTo(source.counter.getState().primary);
+        assertThat(target.counter.getState().secondaryHeroes).isEqualTo(3);
+        assertThat(target.tables.listRegister()).isEqualTo(source.tables.listRegister());
+        assertThat(target.tables.listFreeGame()).isEqualTo(source.tables.listFreeGame());
+        assertThat(target.tables.isEventQrEnabled()).isTrue();
+        assertThat(target.mesas.getAvatarDefeatsSnapshot()).hasSize(40);
+        assertThat(target.mesas.getAvatarDefeatsSnapshot().get(39).timestamp)
+                .isEqualTo(source.mesas.getAvatarDefeatsSnapshot().get(39).timestamp);
+        assertThat(target.mesas.getSpecialDefeatsSnapshot()).hasSize(1);
+        assertThat(target.mesas.getTotalesForMesa(12).getDefeatedHeroes()).containsEntry("Thor", 1);
+        assertThat(target.sectors.getStatusForMesa(9).indicatorsByMesa.get(9).get("mangog").activeMesaId)
+                .isEqualTo(9);
+    }
+
+    @Test
+    void snapshotIsCompactAtomicAndRestorable() throws Exception {
+        Services source = new Services(dir, "json");
+        source.populate();
+
+        Path file = source.snapshots.createSnapshotNow();
+
+        try (var files = Files.list(dir)) {
+            assertThat(files.map(p -> p.getFileName().toString())).allMatch(n -> n.endsWith(".json"));
+        }
+        String json = Files.readString(file);
+        assertThat(json).doesNotContain("\n");
+        ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        SnapshotData data = mapper.readValue(json, SnapshotData.class);
+        String pretty = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(data);
+        assertThat(json.length()).isLessThan(pretty.length());
+
+        Services target = new Services(dir, "json");
+        assertThat(target.snapshots.restoreFromFileName(file.getFileName().toString())).isTrue();
+        assertRestored(source, target);
+    }
+
+    @Test
+    void binarySnapshotIsSmallerAndDetectedOnRestore() throws Exception {
+        Services source = new Services(dir, "binary");
+        source.populate();
+
+        Path binary = source.snapshots.createSnapshotNow();
+        assertThat(binary.getFileName().toString()).endsWith(SnapshotService.BINARY_SUFFIX);
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        source.snapshots.exportAsJson(binary, json);
+        assertThat(Files.size(binary)).isLessThan(json.size() / 4);
+
+        // Content decides the format, not the extension
+        Path renamed = dir.resolve("app-renamed.json");
+        Files.copy(binary, renamed);
+        source.snapshots.validateSnapshotFile(renamed);
+
+        Services target = new Services(dir, "json");
+        assertThat(target.snapshots.restoreFromFileName(binary.getFileName().toString())).isTrue();
+        assertRestored(source, target);
+    }
+
+    @Test
+    void deltasHoldOnlyChangesAndChainOnRestore() throws Exception {
+        Services source = new Services(dir, "binary");
+        Path base = source.snapshots.createSnapshotNow();
+        source.populate();
+        source.snapshots.scheduledBackup();
+        String firstDelta = deltaNames().get(0);
+
+        // Nothing changed: no file at all
+        source.snapshots.scheduledBackup();
+        assertThat(deltaNames()).hasSize(1);
+
+        source.mesas.recordAvatarDefeat(5, 1, 1);
+        String removed = source.tables.listRegister().get(0).id();
+        source.tables.deleteRegisterTable(removed);
+        source.snapshots.scheduledBackup();
+        List<String> names = deltaNames();
+        assertThat(names).hasSize(2);
+        String second = Files.readString(dir.resolve(names.get(1)));
+        assertThat(second).contains(removed).doesNotContain("Mesa 12").doesNotContain("counter");
+        assertThat(names.get(0)).isEqualTo(firstDelta);
+
+        Services target = new Services(dir, "json");
+        assertThat(target.snapshots.restoreFromFileName(base.getFileName().toString())).isTrue();
+        assertThat(target.tables.listRegister()).isEqualTo(source.tables.listRegister());
+        assertThat(target.mesas.getAvatarDefeatsSnapshot()).hasSize(41);
+        assertThat(target.mesas.getTotalesForMesa(5).avatar1).isEqualTo(source.mesas.getTotalesForMesa(5).avatar1);
+        assertThat(target.counter.getState().primary).isEqualTo(source.counter.getState().primary);
+        assertThat(target.sectors.getStatusForMesa(9).indicatorsByMesa.get(9).get("mangog").activeMesaId)
+                .isEqualTo(9);
+    }
+
+    @Test
+    void backupIndexFollowsWritesDeletesAndRescans() throws Exception {
+        Services source = new Services(dir, "binary");
+        Path base = source.snapshots.createSnapshotNow();
+        source.populate();
+        source.snapshots.scheduledBackup();
+        assertThat(deltaNames()).hasSize(1);
+
+        Path old = dir.resolve("app-20200101-000000.bin");
+        Files.copy(base, old);
+        Files.setLastModifiedTime(old, FileTime.fromMillis(1_000L));
+        assertThat(source.snapshots.listBackups(false)).extracting(e -> e.name())
+                .containsExactly(base.getFileName().toString());
+        assertThat(source.snapshots.listBackups(true)).extracting(e -> e.name())
+                .containsExactly(base.getFileName().toString(), old.getFileName().toString());
+
+        assertThat(source.snapshots.purgeOlderThan(60)).isEqualTo(1);
+        assertThat(old).doesNotExist();
+        assertThat(source.snapshots.deleteBackup(base.getFileName().toString())).isTrue();
+        assertThat(source.snapshots.listBackups(false)).isEmpty();
+        assertThat(deltaNames()).isEmpty();
+        assertThat(source.snapshots.deleteBackup(base.getFileName().toString())).isFalse();
+    }
+
+    @Test
+    void uploadIsValidatedInOnePassAndRestoredWithoutReparsing() throws Exception {
+        Services source = new Services(dir.resolve("source"), "binary");
+        source.populate();
+        byte[] upload = Files.readAllBytes(source.snapshots.createSnapshotNow());
+
+        Services target = new Services(dir, "json");
+        var entry = target.snapshots.importBackup("app-uploaded.bin", new ByteArrayInputStream(upload));
+        assertThat(entry.size()).isEqualTo(upload.length);
+        assertThat(Files.readAllBytes(dir.resolve("app-uploaded.bin"))).isEqualTo(upload);
+
+        // The restore right after the upload uses the parse done while uploading
+        assertThat(target.snapshots.restoreFromFileName("app-uploaded.bin")).isTrue();
+        assertRestored(source, target);
+
+        // JSON uploads, like the baseline backups and the JSON export, load too
+        Services jsonSource = new Services(dir.resolve("json-source"), "json");
+        jsonSource.populate();
+        byte[] jsonUpload = Files.readAllBytes(jsonSource.snapshots.createSnapshotNow());
+        Services jsonTarget = new Services(dir, "binary");
+        jsonTarget.snapshots.importBackup("app-uploaded.json", new ByteArrayInputStream(jsonUpload));
+        assertThat(Files.readAllBytes(dir.resolve("app-uploaded.json"))).isEqualTo(jsonUpload);
+        assertThat(jsonTarget.snapshots.restoreFromFileName("app-uploaded.json")).isTrue();
+        assertRestored(jsonSource, jsonTarget);
+
+        // A file changed after the upload is read again, not taken from the cache
+        Services other = new Services(dir, "json");
+        other.snapshots.importBackup("app-changed.bin", new ByteArrayInputStream(upload));
+        Path changed = dir.resolve("app-changed.bin");
+        FileTime uploadedAt = Files.getLastModifiedTime(changed);
+        Files.write(changed, new byte[upload.length]);
+        Files.setLastModifiedTime(changed, FileTime.fromMillis(uploadedAt.toMillis() + 2000));
+        assertThat(other.snapshots.restoreFromFileName("app-changed.bin")).isFalse();
+        assertThat(other.mesas.getTotalesSnapshot()).isEmpty();
+
+        byte[] broken = "{\"mesaTotals\":{\"-1\":{}}}".getBytes();
+        assertThatThrownBy(() -> target.snapshots.importBackup("app-bad.json",
+                new ByteArrayInputStream(broken))).isInstanceOf(IOException.class);
+        assertThat(dir.resolve("app-bad.json")).doesNotExist();
+    }
+
+    @Test
+    void truncatedOrHugeCountBinarySnapshotsAreRejected() throws Exception {
+        Services source = new Services(dir.resolve("source"), "binary");
+        source.populate();
+        byte[] full = Files.readAllBytes(source.snapshots.createSnapshotNow());
+        Services target = new Services(dir, "json");
+
+        byte[] truncated = Arrays.copyOf(full, full.length / 2);
+        assertThatThrownBy(() -> target.snapshots.importBackup("app-truncated.bin",
+                new ByteArrayInputStream(truncated))).isInstanceOf(IOException.class);
+
+        // Header, ts 0, both QR flags off, no counter, then ~2^31 register tables
+        byte[] huge = { 'L', 'K', 'S', 'N', 1, 0, 0, 0, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 };
+        assertThatThrownBy(() -> target.snapshots.importBackup("app-huge.bin",
+                new ByteArrayInputStream(huge))).isInstanceOf(IOException.class);
+        Path hugeFile = dir.resolve("huge.bin");
+        Files.write(hugeFile, huge);
+        assertThatThrownBy(() -> target.snapshots.validateSnapshotFile(hugeFile)).isInstanceOf(IOException.class);
+        assertThat(dir.resolve("app-truncated.bin")).doesNotExist();
+        assertThat(dir.resolve("app-huge.bin")).doesNotExist();
+    }
+
+    private List<String> deltaNames() throws Exception {
+        try (var files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString()).filter(n -> n.startsWith("delta-")).sorted().toList();
+        }
+    }
+
+    @Test
+    void shutdownWritesAFinalSnapshotOnlyWhenStateMoved() throws Exception {
+        Services source = new Services(dir, "binary", true, false);
+        source.populate();
+        Path base = source.snapshots.createSnapshotNow();
+
+        source.snapshots.flushOnShutdown();
+        assertThat(source.snapshots.listBackups(true)).hasSize(1);
+
+        source = new Services(dir, "binary", true, false);
+        assertThat(source.snapshots.restoreFromFileName(base.getFileName().toString())).isTrue();
+        source.counter.reducePrimary(5);
+        Thread.sleep(1100);
+        source.snapshots.flushOnShutdown();
+
+        Services target = new Services(dir, "binary");
+        Path latest = target.snapshots.getLatestSnapshotPathOrNull();
+        assertThat(latest).isNotEqualTo(base);
+        assertThat(target.snapshots.restoreFromFileName(latest.getFileName().toString())).isTrue();
+        assertThat(target.counter.getState().primary).isEqualTo(source.counter.getState().primary);
+    }
+
+    @Test
+    void cleanShutdownLeavesAWarmSnapshotThatLoadsFirst() throws Exception {
+        Services source = new Services(dir, "json", true, false);
+        source.populate();
+        source.snapshots.createSnapshotNow();
+        Thread.sleep(1100);
+        source.counter.reducePrimary(4);
+        source.snapshots.scheduledBackup();
+        assertThat(deltaNames()).hasSize(1);
+
+        source.snapshots.flushOnShutdown();
+        Path warm = source.snapshots.getLatestSnapshotPathOrNull();
+        assertThat(warm.getFileName().toString()).endsWith(SnapshotService.BINARY_SUFFIX);
+        assertThat(SnapshotService.isCompressedSnapshot(warm)).isFalse();
+        assertThat(dir.resolve("shutdown.marker")).exists();
+
+        Services target = new Services(dir, "json", false, true);
+        assertRestored(source, target);
+        assertThat(dir.resolve("shutdown.marker")).doesNotExist();
+
+        // A marker that no longer matches the latest file is ignored
+        Files.writeString(dir.resolve("shutdown.marker"), warm.getFileName() + " 1");
+        Services again = new Services(dir, "json", false, true);
+        assertRestored(source, again);
+    }
+
+    @Test
+    void journalIsKeptUntilARestoreSucceeds() throws Exception {
+        Files.write(dir.resolve("app-20990101-000000.bin"), new byte[] {1, 2, 3});
+        Path segment = dir.resolve("journal-000001.log");
+        Files.writeString(segment, "{\"seq\":1,\"t\":\"qr\",\"v\":{\"event\":true,\"freegame\":false}}\n");
+        FileMutationJournal journal = new FileMutationJournal(true, 0);
+        try {
+            Services services = new Services(dir, "binary", false, true, journal);
+            Path written = services.snapshots.createSnapshotNow();
+            assertThat(segment).exists();
+
+            assertThat(services.snapshots.restoreFromFileName(written.getFileName().toString())).isTrue();
+            services.snapshots.createSnapshotNow();
+            assertThat(segment).doesNotExist();
+        } finally {
+            journal.shutdown();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.counter;
+
+import com.example.counter.service.TablesService;
+import com.example.counter.service.journal.MutationJournal;
+import com.example.counter.service.model.FreeGameTable;
+import com.example.counter.service.model.RegisterTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TablesServiceTest {
+
+    private TablesService tablesService;
+
+    @BeforeEach
+    void setUp() {
+        tablesService = new TablesService(MutationJournal.NOOP);
+    }
+
+    @Test
+    void lookupsFollowCreateUpdateAndDelete() {
+        RegisterTable t = tablesService.createRegister(7, "Mesa 7", "Normal", 3, List.of(), null, null);
+
+        assertThat(tablesService.findRegisterByNumber(7)).isEqualTo(t);
+        assertThat(tablesService.findRegisterById(t.id())).isEqualTo(t);
+        assertThat(tablesService.joinRegister(t.code().toLowerCase())).isTrue();
+        assertThat(tablesService.isRegisterTableNumberUsed(7)).isTrue();
+
+        tablesService.updateRegisterTable(t.id(), 12, "Mesa 12", "Normal", 3, List.of(), null, null, true);
+
+        assertThat(tablesService.findRegisterByNumber(7)).isNull();
+        assertThat(tablesService.isRegisterTableNumberUsed(12)).isTrue();
+        assertThat(tablesService.isRegisterTableDisconnected(12)).isTrue();
+        assertThat(tablesService.findRegisterById(t.id()).tableName()).isEqualTo("Mesa 12");
+
+        tablesService.deleteRegisterTable(t.id());
+
+        assertThat(tablesService.findRegisterById(t.id())).isNull();
+        assertThat(tablesService.isRegisterTableNumberUsed(12)).isFalse();
+        assertThat(tablesService.joinRegister(t.code())).isFalse();
+    }
+
+    @Test
+    void restoreRebuildsIndexes() {
+        RegisterTable a = tablesService.createRegister(1, "A", "Normal", 2, List.of(), null, null);
+        List<RegisterTable> restored = new ArrayList<>(tablesService.listRegister());
+        tablesService.deleteRegisterTable(a.id());
+
+        tablesService.restore(restored, List.of());
+
+        assertThat(tablesService.findRegisterByNumber(1)).isEqualTo(a);
+        assertThat(tablesService.joinRegister(a.code())).isTrue();
+    }
+
+    @Test
+    void lookupsStayCorrectWithManyTables() {
+        int tables = 600;
+        List<RegisterTable> created = new ArrayList<>();
+        for (int i = 1; i <= tables; i++) {
+            created.add(tablesService.createRegister(i, "Mesa " + i, "Normal", 4, List.of(), null, null));
+        }
+        // Remove from the middle so positions shift
+        tablesService.deleteRegisterTable(created.get(299).id());
+
+        tablesService.updateRegisterTable(created.get(449).id(), 450, "Mesa 450", "Normal", 4, List.of(), null,
+                null, true);
+
+        for (int i = 1; i <= tables; i++) {
+            RegisterTable expected = i == 300 ? null : created.get(i - 1);
+            assertThat(tablesService.findRegisterByNumber(i) == null).isEqualTo(expected == null);
+            assertThat(tablesService.isRegisterTableDisconnected(i)).isEqualTo(i == 450);
+            if (expected != null) {
+                assertThat(tablesService.findRegisterById(expected.id()).tableNumber()).isEqualTo(i);
+                assertThat(tablesService.joinRegister(expected.code())).isTrue();
+            }
+        }
+        assertThat(tablesService.joinRegister(created.get(299).code())).isFalse();
+        assertThat(tablesService.listRegister()).hasSize(tables - 1);
+
+        for (int i = 1; i <= tables; i++) {
+            FreeGameTable free = tablesService.createFreeGame(i, "Libre " + i, "Normal", "(Ninguno)", 2, List.of(),
+                    false);
+            assertThat(tablesService.joinFreeGame(free.code())).isTrue();
+        }
+        assertThat(tablesService.findFreeGameByNumber(tables).name()).isEqualTo("Libre " + tables);
+        assertThat(tablesService.isFreeGameTableNumberUsed(tables + 1)).isFalse();
+    }
+
+    // Timing depends on the machine: run with -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void lookupCostDoesNotGrowWithTableCount() {
+        double few = nanosPerLookup(10);
+        double many = nanosPerLookup(600);
+        // Indexed lookups: 60x the tables must not cost several times more
+        assertThat(many).isLessThan(few * 3);
+    }
+
+    private double nanosPerLookup(int tables) {
+        TablesService service = new TablesService(MutationJournal.NOOP);
+        List<String> codes = new ArrayList<>();
+        for (int i = 1; i <= tables; i++) {
+            codes.add(service.createRegister(i, "Mesa " + i, "Normal", 4, List.of(), null, null).code());
+        }
+        int rounds = 2_000_000;
+        int found = 0;
+        // Warm-up so the measurement is not dominated by JIT
+        for (int i = 0; i < rounds; i++) {
+            found += service.isRegisterTableDisconnected(1 + i % tables) ? 1 : 0;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            int n = i % tables;
+            found += service.isRegisterTableDisconnected(n + 1) ? 1 : 0;
+            found += service.joinRegister(codes.get(n)) ? 1 : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        assertThat(found).isEqualTo(rounds);
+        return elapsed / (double) rounds;
+    }
+
+    @Test
+    void listedSnapshotIsUnaffectedByLaterWrites() {
+        RegisterTable a = tablesService.createRegister(1, "A", "Normal", 2, List.of(), null, null);
+        List<RegisterTable> before = tablesService.listRegister();
+
+        tablesService.createRegister(2, "B", "Normal", 2, List.of(), null, null);
+        tablesService.updateRegisterTable(a.id(), 1, "A2", "Normal", 2, List.of(), null, null, false);
+
+        assertThat(before).containsExactly(a);
+        assertThat(tablesService.listRegister()).hasSize(2);
+        assertThatThrownBy(() -> before.add(a)).isInstanceOf(UnsupportedOperationException.class);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.counter.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ETagSupportTest {
+
+    @Test
+    void sameVersionsMatchWithinTheProcess() {
+        String etag = ETagSupport.etag("counter", 3, 7);
+
+        assertThat(ETagSupport.etag("counter", 3, 7)).isEqualTo(etag);
+        assertThat(ETagSupport.matches(etag, etag)).isTrue();
+        assertThat(ETagSupport.matches("\"x\", W/" + etag, etag)).isTrue();
+        assertThat(ETagSupport.matches(ETagSupport.etag("counter", 3, 8), etag)).isFalse();
+    }
+
+    @Test
+    void aTagFromAPreviousInstanceNeverMatches() {
+        // Counters restart from zero, so the old process reached the same numbers
+        String current = ETagSupport.etag("tables", 1);
+        Set<String> epochs = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            String previous = ETagSupport.etagOf(ETagSupport.newEpoch(), "tables", 1);
+            assertThat(ETagSupport.matches(previous, current)).isFalse();
+            assertThat(ETagSupport.matches("W/" + previous, current)).isFalse();
+            epochs.add(previous);
+        }
+        assertThat(epochs).hasSize(1_000);
+    }
+}
@@ -2,6 +2,14 @@ import { useCallback, useEffect, useRef, useState } from 'react';
 
 const API_BASE = '/api/counter';
 
+// Id sent with every mesa action so the server can ignore retried requests
+const newRequestId = () => {
+  if (typeof crypto !== 'undefined' && typeof crypto.randomUUID === 'function') {
+    return crypto.randomUUID();
+  }
+  return `${Date.now().toString(36)}-${Math.random().toString(36).slice(2, 10)}`;
+};
+
 const initialState = {
   primary: 4000,
   primaryMax: 4000,
@@ -305,6 +313,22 @@ export function EventView({ mesaId = null } = {}) {
     }
   }, [mesaAvatar, getRandomAvatarExcluding]);
 
+  // Sends several mesa actions in one request; the server applies all or none
+  const postMesaBatch = useCallback(
+    (operations) =>
+      fetch(`/api/mesas/${mesaId}/batch`, {
+        method: 'POST',
+        headers: { 'Content-Type': 'application/json' },
+        body: JSON.stringify({ uuid: newRequestId(), ts: Date.now(), operations })
+      }).then((response) => {
+        if (!response.ok) {
+          throw new Error('Error al registrar la acción de la mesa');
+        }
+        return response.json();
+      }),
+    [mesaId]
+  );
+
   const handleAvatarDefeatSubmit = useCallback(() => {
     if (!mesaId || mesaAvatar === null) {
       closeAvatarDefeatModal();
@@ -314,47 +338,21 @@ export function EventView({ mesaId = null } = {}) {
     // Convert empty string to 0 for ruptura value
     const rupturaAmount = defeatRupturaValue === '' ? 0 : parseInt(defeatRupturaValue, 10);
 
-    // First, record the avatar defeat in mesa statistics
-    fetch(`/api/mesas/${mesaId}/avatar-defeat`, {
-      method: 'POST',
-      headers: { 'Content-Type': 'application/json' },
-      body: JSON.stringify({
-        avatarIndex: mesaAvatar,
-        rupturaAmount: rupturaAmount
-      })
-    })
-      .then((response) => {
-        if (!response.ok) {
-          throw new Error('Error al registrar derrota del avatar');
-        }
-        return response.json();
-      })
-      .then(() => {
-        // Then reduce primary counter by rupture amount
-        if (rupturaAmount > 0) {
-          return fetch(`${API_BASE}/primary/reduce`, {
-            method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({ delta: rupturaAmount, mesaId })
-          });
-        }
-        return Promise.resolve({ ok: true, json: () => Promise.resolve(state) });
-      })
-      .then((response) => {
-        if (response && !response.ok) {
-          throw new Error('Error al actualizar el contador');
-        }
-        return response && typeof response.json === 'function' ? response.json() : state;
-      })
+    // Record the avatar defeat and reduce the primary counter in one request
+    const operations = [{ type: 'avatarDefeat', avatarIndex: mesaAvatar, rupturaAmount }];
+    if (rupturaAmount > 0) {
+      operations.push({ type: 'primaryReduce', delta: rupturaAmount });
+    }
+    postMesaBatch(operations)
       .then((data) => {
-        setState(normalizeState(data));
+        setState(normalizeState(data.counter));
         closeAvatarDefeatModal();
       })
       .catch((err) => {
         console.error(err);
         setError('No se pudo registrar la derrota del avatar');
       });
-  }, [mesaId, mesaAvatar, defeatRupturaValue, normalizeState, state]);
+  }, [mesaId, mesaAvatar, defeatRupturaValue, normalizeState, postMesaBatch]);
 
   // Hero Defeat Modal Functions
   const openHeroDefeatModal = useCallback(() => {
@@ -373,44 +371,20 @@ export function EventView({ mesaId = null } = {}) {
       return;
     }
 
-    // Record hero defeat (1 threat automatically)
-    fetch(`/api/mesas/${mesaId}/hero-defeat`, {
-      method: 'POST',
-      headers: { 'Content-Type': 'application/json' },
-      body: JSON.stringify({
-        heroName: selectedHero,
-        threatAmount: 1
-      })
-    })
-      .then((response) => {
-        if (!response.ok) {
-          throw new Error('Error al registrar derrota del héroe');
-        }
-        return response.json();
-      })
-      .then(() => {
-        // Increment tertiary counter (Mundos en Colisión)
-        return fetch(`${API_BASE}/tertiary/increment`, {
-          method: 'POST',
-          headers: { 'Content-Type': 'application/json' },
-          body: JSON.stringify({ delta: 1, mesaId })
-        });
-      })
-      .then((response) => {
-        if (!response.ok) {
-          throw new Error('Error al actualizar Mundos en Colisión');
-        }
-        return response.json();
-      })
+    // Record hero defeat (1 threat) and increment Mundos en Colisión together
+    postMesaBatch([
+      { type: 'heroDefeat', heroName: selectedHero, threatAmount: 1 },
+      { type: 'tertiaryIncrement', delta: 1 }
+    ])
       .then((data) => {
-        setState(normalizeState(data));
+        setState(normalizeState(data.counter));
         closeHeroDefeatModal();
       })
       .catch((err) => {
         console.error(err);
         setError('No se pudo registrar la derrota del héroe');
       });
-  }, [mesaId, selectedHero, normalizeState]);
+  }, [mesaId, selectedHero, normalizeState, postMesaBatch]);
 
   // Plan Completion Modal Functions
   const openPlanCompletionModal = useCallback(() => {
@@ -424,41 +398,20 @@ export function EventView({ mesaId = null } = {}) {
   const handlePlanCompletionSubmit = useCallback(() => {
     if (!mesaId) return;
 
-    // Record plan completion (1 threat automatically)
-    fetch(`/api/mesas/${mesaId}/plan-completion`, {
-      method: 'POST',
-      headers: { 'Content-Type': 'application/json' },
-      body: JSON.stringify({ threatAmount: 1 })
-    })
-      .then((response) => {
-        if (!response.ok) {
-          throw new Error('Error al registrar completación del plan');
-        }
-        return response.json();
-      })
-      .then(() => {
-        // Increment tertiary counter (Mundos en Colisión)
-        return fetch(`${API_BASE}/tertiary/increment`, {
-          method: 'POST',
-          headers: { 'Content-Type': 'application/json' },
-          body: JSON.stringify({ delta: 1, mesaId })
-        });
-      })
-      .then((response) => {
-        if (!response.ok) {
-          throw new Error('Error al actualizar Mundos en Colisión');
-        }
-        return response.json();
-      })
+    // Record plan completion (1 threat) and increment Mundos en Colisión together
+    postMesaBatch([
+      { type: 'planCompletion', threatAmount: 1 },
+      { type: 'tertiaryIncrement', delta: 1 }
+    ])
       .then((data) => {
-        setState(normalizeState(data));
+        setState(normalizeState(data.counter));
         closePlanCompletionModal();
       })
       .catch((err) => {
         console.error(err);
         setError('No se pudo registrar la completación del plan');
       });
-  }, [mesaId, normalizeState]);
+  }, [mesaId, normalizeState, postMesaBatch]);
 
   const previousDefeated = useRef({});
 
@@ -126,6 +126,7 @@ export default function AdminPage() {
   const [backendHeroes, setBackendHeroes] = useState([]);
   const [qrFlags, setQrFlags] = useState({ event: false });
   const [mesaSummary, setMesaSummary] = useState({});
+  const [mesaGlobalTotals, setMesaGlobalTotals] = useState(null);
   const [avatarDefeats, setAvatarDefeats] = useState([]);
   const [specialAvatarDefeats, setSpecialAvatarDefeats] = useState([]);
   const [tab, setTab] = useState('mod');
@@ -153,25 +154,26 @@ export default function AdminPage() {
   const mesaSummaryRows = useMemo(() => (
     Object.entries(mesaSummary || {}).sort((a, b) => Number(a[0]) - Number(b[0]))
   ), [mesaSummary]);
-  const mesaSummaryTotals = useMemo(() => (
-    mesaSummaryRows.reduce((acc, [, row]) => ({
-      avatar0: acc.avatar0 + (row?.avatar0 ?? 0),
-      avatar1: acc.avatar1 + (row?.avatar1 ?? 0),
-      avatar2: acc.avatar2 + (row?.avatar2 ?? 0),
-      avatar3: acc.avatar3 + (row?.avatar3 ?? 0),
-      rupturaTotal: acc.rupturaTotal + (row?.rupturaTotal ?? 0),
-      threatFromHeroes: acc.threatFromHeroes + (row?.threatFromHeroes ?? 0),
-      threatFromPlan: acc.threatFromPlan + (row?.threatFromPlan ?? 0)
-    }), {
-      avatar0: 0,
-      avatar1: 0,
-      avatar2: 0,
-      avatar3: 0,
-      rupturaTotal: 0,
-      threatFromHeroes: 0,
-      threatFromPlan: 0
-    })
-  ), [mesaSummaryRows]);
+  // Summed on the server, kept up to date as events arrive
+  const mesaSummaryTotals = {
+    avatar0: mesaGlobalTotals?.avatar0 ?? 0,
+    avatar1: mesaGlobalTotals?.avatar1 ?? 0,
+    avatar2: mesaGlobalTotals?.avatar2 ?? 0,
+    avatar3: mesaGlobalTotals?.avatar3 ?? 0,
+    rupturaTotal: mesaGlobalTotals?.rupturaTotal ?? 0,
+    threatFromHeroes: mesaGlobalTotals?.threatFromHeroes ?? 0,
+    threatFromPlan: mesaGlobalTotals?.threatFromPlan ?? 0
+  };
+  const fetchMesaAggregates = useCallback(() => {
+    fetch('/api/mesas/aggregates')
+      .then(r => r.ok ? r.json() : null)
+      .then((agg) => {
+        if (!agg) return;
+        setMesaSummary(agg.mesas || {});
+        setMesaGlobalTotals(agg.global || null);
+      })
+      .catch(() => { });
+  }, []);
   const topAvatarDefeats = useMemo(() => (
     (avatarDefeats || []).slice(0, 10)
   ), [avatarDefeats]);
@@ -326,20 +328,42 @@ export default function AdminPage() {
 
   useEffect(() => {
     if (!isAuthed) return;
+    // Defeats are fetched incrementally: each poll only brings the ones after
+    // the last cursor and prepends them (lists are kept latest first)
+    const cursors = { avatar: 0, special: 0 };
+    const pending = { avatar: false, special: false };
+    const loadDefeats = (kind, url, setter) => {
+      if (pending[kind]) return;
+      pending[kind] = true;
+      fetch(`${url}?since=${cursors[kind]}&limit=2000`)
+        .then(r => r.ok ? r.json() : Promise.reject(new Error('defeats')))
+        .then((page) => {
+          const events = Array.isArray(page.events) ? page.events.slice().reverse() : [];
+          cursors[kind] = page.next || 0;
+          if (page.reset) {
+            setter(events);
+          } else if (events.length > 0) {
+            setter((prev) => events.concat(prev || []));
+          }
+        })
+        .catch(() => { })
+        .finally(() => { pending[kind] = false; });
+    };
     const load = () => {
-      fetch('/api/mesas/summary').then(r => r.ok ? r.json() : {}).then(setMesaSummary).catch(() => { });
-      fetch('/api/mesas/avatar-defeats').then(r => r.ok ? r.json() : []).then(setAvatarDefeats).catch(() => { });
-      fetch('/api/mesas/special-defeats').then(r => r.ok ? r.json() : []).then(setSpecialAvatarDefeats).catch(() => setSpecialAvatarDefeats([]));
+      fetchMesaAggregates();
+      loadDefeats('avatar', '/api/mesas/avatar-defeats', setAvatarDefeats);
+      loadDefeats('special', '/api/mesas/special-defeats', setSpecialAvatarDefeats);
     };
     load();
     const id = setInterval(load, 3000);
     return () => clearInterval(id);
-  }, [isAuthed]);
+  }, [isAuthed, fetchMesaAggregates]);
 
-  const fetchBackups = useCallback(() => {
+  const fetchBackups = useCallback((rescan) => {
     if (!isAuthed) return;
     setBackupsLoading(true);
-    fetch('/api/admin/backup/list', { headers: { 'X-Admin-Secret': adminKey } })
+    const url = rescan === true ? '/api/admin/backup/list?refresh=true' : '/api/admin/backup/list';
+    fetch(url, { headers: { 'X-Admin-Secret': adminKey } })
       .then((r) => r.ok ? r.json() : Promise.reject(new Error('No autorizado')))
       .then((data) => setBackups({
         dir: data.dir || '',
@@ -1042,7 +1066,7 @@ export default function AdminPage() {
                       .then(() => fetchBackups())
                       .catch((e) => alert(e.message));
                   }}>Crear snapshot ahora</button>
-                  <button onClick={fetchBackups}>Refrescar</button>
+                  <button onClick={() => fetchBackups(true)}>Refrescar</button>
                   <button
                     onClick={() => backupFileInputRef.current?.click()}
                     disabled={uploadingBackup}
@@ -1052,7 +1076,7 @@ export default function AdminPage() {
                   <input
                     ref={backupFileInputRef}
                     type="file"
-                    accept="application/json,.json"
+                    accept="application/json,.json,.bin"
                     style={{ display: 'none' }}
                     onChange={handleBackupImport}
                   />
@@ -1111,6 +1135,9 @@ export default function AdminPage() {
                           <td>{dt}</td>
                           <td>
                             <button onClick={() => download(`/api/admin/backup/download/${encodeURIComponent(name)}`, name)}>Descargar</button>
+                            {name.endsWith('.bin') && (
+                              <button onClick={() => download(`/api/admin/backup/download/${encodeURIComponent(name)}?format=json`, name.replace(/\.bin$/, '.json'))}>Exportar JSON</button>
+                            )}
                             <button onClick={() => {
                               if (!confirm(`Restaurar desde ${name}? Esto sobreescribir? el estado en memoria.`)) return;
                               fetch(`/api/admin/backup/restore/${encodeURIComponent(name)}`, { method: 'POST', headers: { 'X-Admin-Secret': adminKey } })
@@ -1120,7 +1147,7 @@ export default function AdminPage() {
                                   fetchBackups();
                                   fetchTables();
                                   fetchState();
-                                  fetch('/api/mesas/summary').then(r => r.ok ? r.json() : {}).then(setMesaSummary).catch(() => { });
+                                  fetchMesaAggregates();
                                 })
                                 .catch((e) => alert(e.message));
                             }}>Restaurar</button>
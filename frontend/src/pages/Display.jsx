@@ -55,9 +55,43 @@ export default function DisplayPage() {
 
   useEffect(() => {
     fetchState();
-    const id = setInterval(fetchState, 3000);
-    return () => clearInterval(id);
-  }, [fetchState]);
+    // Prefer server push; fall back to polling if the stream is unavailable
+    let pollId = null;
+    const startPolling = () => {
+      if (pollId === null) {
+        pollId = setInterval(fetchState, 3000);
+      }
+    };
+    if (typeof EventSource === 'undefined') {
+      startPolling();
+      return () => clearInterval(pollId);
+    }
+    const source = new EventSource(`${API_BASE}/stream`);
+    source.addEventListener('state', (event) => {
+      try {
+        setState(normalizeState(JSON.parse(event.data)));
+        setError(null);
+        setInitialLoading(false);
+        if (pollId !== null) {
+          clearInterval(pollId);
+          pollId = null;
+        }
+      } catch (err) {
+        console.error(err);
+      }
+    });
+    source.onerror = () => {
+      if (source.readyState === EventSource.CLOSED) {
+        startPolling();
+      }
+    };
+    return () => {
+      source.close();
+      if (pollId !== null) {
+        clearInterval(pollId);
+      }
+    };
+  }, [fetchState, normalizeState]);
 
   useEffect(() => {
     const primaryHalf = Math.floor(initialState.primary / 2);